@@ -7,12 +7,21 @@ package envi4j;
 
 import envi4j.core.FileUtils;
 import envi4j.dataset.AbstractDataset;
+import envi4j.dataset.Overviews;
+import envi4j.dataset.Resampling;
+import envi4j.dataset.TiledRenderer;
 import envi4j.header.Header;
+import envi4j.header.HeaderField;
+import envi4j.storage.ChunkCodec;
+import envi4j.storage.ChunkedStorage;
+import envi4j.storage.StorageType;
 
 import javax.imageio.ImageIO;
 import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Reads datasets.
@@ -57,15 +66,51 @@ public class ENVI {
    * @return		the dataset, null if failed to load
    */
   public static AbstractDataset load(File hdrFile, boolean quiet, String[] extensions) {
-    Header	header;
-    File	datFile;
+    return load(hdrFile, quiet, extensions, StorageType.ARRAY);
+  }
+
+  /**
+   * Loads the ENVI dataset from the specified file.
+   * Uses default extensions, or the chunk file extension when reading from
+   * a chunk file.
+   *
+   * @param hdrFile	the .hdr file of the dataset to load
+   * @param quiet 	whether to suppress warnings/errors
+   * @param type 	how to access the data file
+   * @return		the dataset, null if failed to load
+   * @see		#EXTENSIONS
+   * @see		ChunkedStorage#EXTENSION
+   */
+  public static AbstractDataset load(File hdrFile, boolean quiet, StorageType type) {
+    if (type == StorageType.CHUNKED)
+      return load(hdrFile, quiet, new String[]{ChunkedStorage.EXTENSION}, type);
+    return load(hdrFile, quiet, EXTENSIONS, type);
+  }
+
+  /**
+   * Loads the ENVI dataset from the specified file.
+   *
+   * @param hdrFile	the .hdr file of the dataset to load
+   * @param quiet 	whether to suppress warnings/errors
+   * @param extensions  the extensions of the data files to look for
+   * @param type 	how to access the data file
+   * @return		the dataset, null if failed to load
+   */
+  public static AbstractDataset load(File hdrFile, boolean quiet, String[] extensions, StorageType type) {
+    Header		header;
+    File		datFile;
+    AbstractDataset	result;
 
     header = Header.read(hdrFile);
     if (header != null) {
       for (String ext: extensions) {
 	datFile = FileUtils.replaceExtension(hdrFile, ext);
-	if (datFile.exists())
-	  return AbstractDataset.read(header, datFile, quiet);
+	if (datFile.exists()) {
+	  result = AbstractDataset.read(header, datFile, quiet, type);
+	  if (result != null)
+	    attachOverviews(result, hdrFile, quiet);
+	  return result;
+	}
       }
       if (!quiet)
 	System.err.println("Failed to locate corresponding data file, looked for: " + Arrays.asList(EXTENSIONS));
@@ -74,6 +119,96 @@ public class ENVI {
     return null;
   }
 
+  /**
+   * Saves the dataset in ENVI format, i.e., the .hdr file and the data file
+   * (.dat) next to it. The files must not be the ones the dataset was
+   * loaded from.
+   *
+   * @param dataset	the dataset to save
+   * @param hdrFile	the .hdr file to write
+   * @throws IOException	if writing fails
+   * @see		ENVIWriter
+   */
+  public static void save(AbstractDataset dataset, File hdrFile) throws IOException {
+    ENVIWriter.write(dataset, hdrFile);
+  }
+
+  /**
+   * Saves the dataset as .hdr file and compressed chunk file (.chk) next to
+   * it, which can be loaded with {@link StorageType#CHUNKED}. The tile
+   * geometry determines which reads are cheap, e.g., 1 x 256 x 256 for
+   * band-wise access or (all bands) x 16 x 16 for spectra. The .hdr file and
+   * the chunk file must not be the ones the dataset was loaded from.
+   *
+   * @param dataset	the dataset to save
+   * @param hdrFile	the .hdr file to write
+   * @param tileBands	the bands per tile
+   * @param tileLines	the lines per tile
+   * @param tileSamples	the samples per tile
+   * @param codec	the compression to use
+   * @throws IOException	if writing fails
+   * @see		ChunkedStorage
+   */
+  public static void saveChunked(AbstractDataset dataset, File hdrFile, int tileBands, int tileLines, int tileSamples, ChunkCodec codec) throws IOException {
+    Map<HeaderField,String>	values;
+    File			chkFile;
+
+    chkFile = FileUtils.replaceExtension(hdrFile, ChunkedStorage.EXTENSION);
+    if (FileUtils.isSameFile(hdrFile, dataset.getHeader().getFile()))
+      throw new IllegalArgumentException("Cannot overwrite the header of the dataset: " + hdrFile);
+    if (FileUtils.isSameFile(chkFile, dataset.getFile()))
+      throw new IllegalArgumentException("Cannot overwrite the data file of the dataset: " + chkFile);
+
+    values = new HashMap<>();
+    values.put(HeaderField.HEADER_OFFSET, "0");
+    ChunkedStorage.write(dataset.getStorage(), dataset.getLayout(), chkFile, tileBands, tileLines, tileSamples, codec);
+    dataset.getHeader().derive(values).write(hdrFile);
+  }
+
+  /**
+   * Attaches the overviews from the sidecar file of the .hdr file, if present.
+   * Overviews that don't match the data file of the dataset are ignored.
+   *
+   * @param dataset	the dataset to attach the overviews to
+   * @param hdrFile	the .hdr file of the dataset
+   * @param quiet 	whether to suppress warnings/errors
+   * @see		Overviews#sidecar(File)
+   */
+  protected static void attachOverviews(AbstractDataset dataset, File hdrFile, boolean quiet) {
+    File	ovrFile;
+
+    ovrFile = Overviews.sidecar(hdrFile);
+    if (!ovrFile.exists())
+      return;
+
+    try {
+      dataset.setOverviews(Overviews.read(ovrFile, dataset.getFile()));
+    }
+    catch (Exception e) {
+      if (!quiet) {
+	System.err.println("Failed to load overviews from: " + ovrFile);
+	e.printStackTrace();
+      }
+    }
+  }
+
+  /**
+   * Generates overviews for the specified bands and stores them in the sidecar
+   * file next to the .hdr file. The overviews get attached to the dataset.
+   *
+   * @param dataset	the dataset to generate the overviews for
+   * @param hdrFile	the .hdr file of the dataset
+   * @param bands	the bands to generate the overviews for
+   * @param levels	the number of power-of-two levels to generate
+   * @param resampling	how to reduce the 2x2 blocks
+   * @throws IOException	if writing of the sidecar file fails
+   */
+  public static void buildOverviews(AbstractDataset dataset, File hdrFile, int[] bands, int levels, Resampling resampling) throws IOException {
+    if (dataset.getOverviews() != null)
+      dataset.getOverviews().close();
+    dataset.setOverviews(Overviews.build(dataset, bands, levels, resampling, Overviews.sidecar(hdrFile)));
+  }
+
   /**
    * Determines the image type based on the file's extension.
    *
@@ -93,18 +228,20 @@ public class ENVI {
   /**
    * Saves the default bands as RGB image. Uses the file's extension to determine
    * whether to save as JPG (.jpg/.jpeg) or PNG (.png).
+   * The image gets rendered tile by tile in parallel.
    *
    * @param dataset	the dataset to use
    * @param output	the output file
    * @throws IOException	if unsupported extension or failed to output
    */
   public static void saveRGB(AbstractDataset dataset, File output) throws IOException {
-    ImageIO.write(dataset.toRGB(), determineImageType(output), output);
+    ImageIO.write(new TiledRenderer(dataset).toRGB(), determineImageType(output), output);
   }
 
   /**
    * Saves the specified bands as RGB image. Uses the file's extension to determine
    * whether to save as JPG (.jpg/.jpeg) or PNG (.png).
+   * The image gets rendered tile by tile in parallel.
    *
    * @param dataset	the dataset to use
    * @param r		the band to act as red channel
@@ -114,12 +251,13 @@ public class ENVI {
    * @throws IOException	if unsupported extension or failed to output
    */
   public static void saveRGB(AbstractDataset dataset, int r, int g, int b, File output) throws IOException {
-    ImageIO.write(dataset.toRGB(r, g, b), determineImageType(output), output);
+    ImageIO.write(new TiledRenderer(dataset).toRGB(r, g, b), determineImageType(output), output);
   }
 
   /**
    * Saves the specified bands as grayscale image. Uses the file's extension to determine
    * whether to save as JPG (.jpg/.jpeg) or PNG (.png).
+   * The image gets rendered tile by tile in parallel.
    *
    * @param dataset	the dataset to use
    * @param band	the band to use
@@ -127,6 +265,6 @@ public class ENVI {
    * @throws IOException	if unsupported extension or failed to output
    */
   public static void saveGray(AbstractDataset dataset, int band, File output) throws IOException {
-    ImageIO.write(dataset.toGray(band), determineImageType(output), output);
+    ImageIO.write(new TiledRenderer(dataset).toGray(band), determineImageType(output), output);
   }
 }
@@ -0,0 +1,565 @@
+/*
+ * ENVIWriter.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package envi4j;
+
+import envi4j.core.FileUtils;
+import envi4j.dataset.AbstractDataset;
+import envi4j.header.DataType;
+import envi4j.header.Header;
+import envi4j.header.HeaderField;
+import envi4j.header.Interleave;
+import envi4j.layout.AbstractLayout;
+import envi4j.layout.Layout;
+import envi4j.storage.Storage;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes datasets in ENVI format: the header to the .hdr file and the values
+ * to the data file (.dat). The values get written incrementally (per band,
+ * line or pixel) at their position within the interleave defined by the
+ * header, so the data never has to be fully in memory.
+ * <br>
+ * The values get staged in a cache of pages of the data file (least recently
+ * used pages get written out first), so that the file channel only sees
+ * large blocks, even if the order of writing doesn't match the interleave,
+ * e.g., bands into BIP or pixels into BSQ. Pages that already hold data in
+ * the file get read back before being modified. Writing in the order of the
+ * interleave remains the most efficient, as no data has to be read back. For
+ * writing pixels into BSQ/BIL, the cache should hold at least one page per
+ * band, see {@link #setCacheSize(long)}.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class ENVIWriter
+  implements Closeable {
+
+  /** the default extension for the data file. */
+  public final static String EXTENSION = ".dat";
+
+  /** the size of the buffer for copying raw data. */
+  public final static int BUFFER_SIZE = 1024 * 1024;
+
+  /** the size of a page of the data file (multiple of the largest data type). */
+  public final static int PAGE_SIZE = 64 * 1024;
+
+  /** the default memory budget for the cached pages (16MB). */
+  public final static long DEFAULT_CACHE_SIZE = 16L * 1024 * 1024;
+
+  /**
+   * A page of the data file.
+   */
+  protected static class Page {
+
+    /** the index of the page. */
+    protected long m_Index;
+
+    /** the bytes of the page. */
+    protected ByteBuffer m_Data;
+
+    /** the first modified byte (incl). */
+    protected int m_DirtyStart;
+
+    /** the last modified byte (excl). */
+    protected int m_DirtyEnd;
+  }
+
+  /** the header. */
+  protected Header m_Header;
+
+  /** the data file. */
+  protected File m_DataFile;
+
+  /** the layout of the data file. */
+  protected Layout m_Layout;
+
+  /** the data type. */
+  protected DataType m_DataType;
+
+  /** the offset of the data in the file. */
+  protected long m_Offset;
+
+  /** the channel to write to. */
+  protected FileChannel m_Channel;
+
+  /** the byte order of the data. */
+  protected ByteOrder m_ByteOrder;
+
+  /** the cached pages (in order of access). */
+  protected LinkedHashMap<Long,Page> m_Pages;
+
+  /** the maximum number of pages to cache. */
+  protected int m_MaxPages;
+
+  /** the page that was accessed last. */
+  protected Page m_Current;
+
+  /** the number of bytes of the data that have been written to the file so far. */
+  protected long m_Extent;
+
+  /**
+   * Writes the header to the .hdr file and creates the data file (.dat)
+   * next to it.
+   *
+   * @param hdrFile	the .hdr file to write
+   * @param header	the header describing the data to write
+   * @throws IOException	if writing fails
+   */
+  public ENVIWriter(File hdrFile, Header header) throws IOException {
+    this(hdrFile, FileUtils.replaceExtension(hdrFile, EXTENSION), header);
+  }
+
+  /**
+   * Writes the header to the .hdr file and creates the data file.
+   *
+   * @param hdrFile	the .hdr file to write
+   * @param dataFile	the data file to write
+   * @param header	the header describing the data to write
+   * @throws IOException	if writing fails
+   */
+  public ENVIWriter(File hdrFile, File dataFile, Header header) throws IOException {
+    if (header == null)
+      throw new IllegalArgumentException("Header cannot be null!");
+
+    m_Header      = header;
+    m_DataFile    = dataFile;
+    m_DataType    = header.getDataType();
+    m_Offset      = header.getHeaderOffset();
+    m_Layout      = AbstractLayout.forInterleave(header.getInterleave(), header.getBands(), header.getLines(), header.getSamples(), m_DataType.getSize());
+    m_ByteOrder   = header.getByteOrder().toNioByteOrder();
+    m_Pages       = new LinkedHashMap<>(16, 0.75f, true);
+    m_Current     = null;
+    m_Extent      = 0;
+    setCacheSize(DEFAULT_CACHE_SIZE);
+
+    header.write(hdrFile);
+    m_Channel = FileChannel.open(dataFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+  }
+
+  /**
+   * Returns the header.
+   *
+   * @return		the header
+   */
+  public Header getHeader() {
+    return m_Header;
+  }
+
+  /**
+   * Returns the data file.
+   *
+   * @return		the file
+   */
+  public File getDataFile() {
+    return m_DataFile;
+  }
+
+  /**
+   * Returns the layout of the data file.
+   *
+   * @return		the layout
+   */
+  public Layout getLayout() {
+    return m_Layout;
+  }
+
+  /**
+   * Sets the memory budget for the cached pages.
+   *
+   * @param bytes	the budget in bytes, at least one page gets cached
+   */
+  public void setCacheSize(long bytes) {
+    m_MaxPages = (int) Math.max(1, Math.min(Integer.MAX_VALUE, bytes / PAGE_SIZE));
+  }
+
+  /**
+   * Returns the maximum number of pages that get cached.
+   *
+   * @return		the number of pages
+   */
+  public int getCachePages() {
+    return m_MaxPages;
+  }
+
+  /**
+   * Writes the modified bytes of all cached pages to the file, in the order
+   * of the pages.
+   *
+   * @throws IOException	if writing fails
+   */
+  public void flush() throws IOException {
+    List<Page>	pages;
+
+    if (m_Channel == null)
+      throw new IllegalStateException("Writer has been closed already!");
+
+    pages = new ArrayList<>(m_Pages.values());
+    pages.sort((p1, p2) -> Long.compare(p1.m_Index, p2.m_Index));
+    for (Page page: pages)
+      writePage(page);
+  }
+
+  /**
+   * Writes the modified bytes of the page to the file.
+   *
+   * @param page	the page to write
+   * @throws IOException	if writing fails
+   */
+  protected void writePage(Page page) throws IOException {
+    ByteBuffer	bb;
+    long	start;
+    long	pos;
+
+    if (page.m_DirtyStart >= page.m_DirtyEnd)
+      return;
+
+    start = page.m_Index * PAGE_SIZE;
+    bb    = page.m_Data.duplicate();
+    bb.limit(page.m_DirtyEnd).position(page.m_DirtyStart);
+    pos   = m_Offset + start + page.m_DirtyStart;
+    while (bb.hasRemaining())
+      pos += m_Channel.write(bb, pos);
+    m_Extent          = Math.max(m_Extent, start + page.m_DirtyEnd);
+    page.m_DirtyStart = PAGE_SIZE;
+    page.m_DirtyEnd   = 0;
+  }
+
+  /**
+   * Returns the page containing the specified position in the data, writing
+   * out the least recently used page if the cache is full. Reads the bytes
+   * of the page from the file if they were written before.
+   *
+   * @param pos		the position in the data
+   * @return		the page
+   * @throws IOException	if reading or writing fails
+   */
+  protected Page page(long pos) throws IOException {
+    Page		result;
+    Iterator<Page>	iter;
+    ByteBuffer		bb;
+    long		index;
+    long		start;
+    long		filePos;
+
+    index = pos / PAGE_SIZE;
+    if ((m_Current != null) && (m_Current.m_Index == index))
+      return m_Current;
+
+    if (m_Channel == null)
+      throw new IllegalStateException("Writer has been closed already!");
+
+    result = m_Pages.get(index);
+    if (result == null) {
+      if (m_Pages.size() >= m_MaxPages) {
+	iter   = m_Pages.values().iterator();
+	result = iter.next();
+	iter.remove();
+	writePage(result);
+	Arrays.fill(result.m_Data.array(), (byte) 0);
+      }
+      else {
+	result        = new Page();
+	result.m_Data = ByteBuffer.allocate(PAGE_SIZE).order(m_ByteOrder);
+      }
+      result.m_Index      = index;
+      result.m_DirtyStart = PAGE_SIZE;
+      result.m_DirtyEnd   = 0;
+
+      // read back previously written bytes
+      start = index * PAGE_SIZE;
+      if (start < m_Extent) {
+	bb      = result.m_Data.duplicate();
+	bb.clear().limit((int) Math.min(PAGE_SIZE, m_Extent - start));
+	filePos = m_Offset + start;
+	while (bb.hasRemaining()) {
+	  if (m_Channel.read(bb, filePos + bb.position()) < 0)
+	    break;
+	}
+      }
+      m_Pages.put(index, result);
+    }
+    m_Current = result;
+
+    return result;
+  }
+
+  /**
+   * Checks whether the bytes fit within the data.
+   *
+   * @param pos		the position in the data
+   * @param length	the number of bytes
+   */
+  protected void checkPosition(long pos, int length) {
+    if ((pos < 0) || (pos + length > m_Layout.length()))
+      throw new IllegalArgumentException("Position out of range: " + pos + " (+" + length + ")");
+  }
+
+  /**
+   * Writes the value at the specified position, encoded using the data type.
+   * For complex data, the value becomes the real part (imaginary part 0).
+   *
+   * @param pos		the position in the data
+   * @param value	the value to write
+   * @throws IOException	if writing fails
+   */
+  protected void put(long pos, double value) throws IOException {
+    Page	page;
+    ByteBuffer	bb;
+    int		size;
+    int		i;
+
+    size = m_DataType.getSize();
+    checkPosition(pos, size);
+    page = page(pos);
+    bb   = page.m_Data;
+    i    = (int) (pos % PAGE_SIZE);
+    switch (m_DataType) {
+      case UINT8:
+	bb.put(i, (byte) (int) value);
+	break;
+      case INT16:
+      case UINT16:
+	bb.putShort(i, (short) (int) value);
+	break;
+      case INT32:
+	bb.putInt(i, (int) value);
+	break;
+      case UINT32:
+	bb.putInt(i, (int) (long) value);
+	break;
+      case INT64:
+	bb.putLong(i, (long) value);
+	break;
+      case UINT64:
+	if (value >= 0x1p63)
+	  bb.putLong(i, (long) (value - 0x1p63) | Long.MIN_VALUE);
+	else
+	  bb.putLong(i, (long) value);
+	break;
+      case FLOAT32:
+	bb.putFloat(i, (float) value);
+	break;
+      case FLOAT64:
+	bb.putDouble(i, value);
+	break;
+      case COMPLEX32:
+	bb.putFloat(i, (float) value);
+	bb.putFloat(i + 4, 0);
+	break;
+      case COMPLEX64:
+	bb.putDouble(i, value);
+	bb.putDouble(i + 8, 0);
+	break;
+      default:
+	throw new IllegalStateException("Unsupported data type for writing values: " + m_DataType);
+    }
+    if (i < page.m_DirtyStart)
+      page.m_DirtyStart = i;
+    if (i + size > page.m_DirtyEnd)
+      page.m_DirtyEnd = i + size;
+  }
+
+  /**
+   * Writes the raw bytes (already encoded with data type and byte order of
+   * the header) at the specified position.
+   *
+   * @param pos		the position in the data
+   * @param bytes	the bytes to write
+   * @param offset	the offset in the bytes
+   * @param length	the number of bytes to write
+   * @throws IOException	if writing fails
+   */
+  public void writeRaw(long pos, byte[] bytes, int offset, int length) throws IOException {
+    Page	page;
+    int		start;
+    int		chunk;
+
+    checkPosition(pos, length);
+    while (length > 0) {
+      page  = page(pos);
+      start = (int) (pos % PAGE_SIZE);
+      chunk = Math.min(length, PAGE_SIZE - start);
+      page.m_Data.duplicate().position(start).put(bytes, offset, chunk);
+      page.m_DirtyStart = Math.min(page.m_DirtyStart, start);
+      page.m_DirtyEnd   = Math.max(page.m_DirtyEnd, start + chunk);
+      pos    += chunk;
+      offset += chunk;
+      length -= chunk;
+    }
+  }
+
+  /**
+   * Writes the values of the band.
+   *
+   * @param band	the band to write
+   * @param values	the values in row-major order (line -> sample)
+   * @throws IOException	if writing fails
+   */
+  public void writeBand(int band, double[] values) throws IOException {
+    int		l;
+
+    if (values.length != m_Layout.getLines() * m_Layout.getSamples())
+      throw new IllegalArgumentException("Expected " + (m_Layout.getLines() * m_Layout.getSamples()) + " values, but got: " + values.length);
+
+    for (l = 0; l < m_Layout.getLines(); l++)
+      writeLine(band, l, values, l * m_Layout.getSamples());
+  }
+
+  /**
+   * Writes the values of the line of the band.
+   *
+   * @param band	the band to write
+   * @param line	the line to write
+   * @param values	the values of the samples
+   * @throws IOException	if writing fails
+   */
+  public void writeLine(int band, int line, double[] values) throws IOException {
+    if (values.length != m_Layout.getSamples())
+      throw new IllegalArgumentException("Expected " + m_Layout.getSamples() + " values, but got: " + values.length);
+
+    writeLine(band, line, values, 0);
+  }
+
+  /**
+   * Writes the values of the line of the band.
+   *
+   * @param band	the band to write
+   * @param line	the line to write
+   * @param values	the values
+   * @param offset	the offset of the first sample in the values
+   * @throws IOException	if writing fails
+   */
+  protected void writeLine(int band, int line, double[] values, int offset) throws IOException {
+    int		s;
+
+    for (s = 0; s < m_Layout.getSamples(); s++)
+      put(m_Layout.offset(band, line, s), values[offset + s]);
+  }
+
+  /**
+   * Writes the values of all bands of the line, e.g., as obtained from a
+   * {@link envi4j.dataset.LineIterator}.
+   *
+   * @param line	the line to write
+   * @param values	the values (band -> sample)
+   * @throws IOException	if writing fails
+   */
+  public void writeLine(int line, float[][] values) throws IOException {
+    int		b;
+    int		s;
+
+    if (values.length != m_Layout.getBands())
+      throw new IllegalArgumentException("Expected " + m_Layout.getBands() + " bands, but got: " + values.length);
+
+    if (m_Header.getInterleave() == Interleave.BAND_INTERLEAVED_BY_PIXEL) {
+      for (s = 0; s < m_Layout.getSamples(); s++) {
+	for (b = 0; b < m_Layout.getBands(); b++)
+	  put(m_Layout.offset(b, line, s), values[b][s]);
+      }
+    }
+    else {
+      for (b = 0; b < m_Layout.getBands(); b++) {
+	for (s = 0; s < m_Layout.getSamples(); s++)
+	  put(m_Layout.offset(b, line, s), values[b][s]);
+      }
+    }
+  }
+
+  /**
+   * Writes the spectrum of the pixel.
+   *
+   * @param line	the line of the pixel
+   * @param sample	the sample of the pixel
+   * @param spectrum	the values of all bands
+   * @throws IOException	if writing fails
+   */
+  public void writePixel(int line, int sample, double[] spectrum) throws IOException {
+    int		b;
+
+    if (spectrum.length != m_Layout.getBands())
+      throw new IllegalArgumentException("Expected " + m_Layout.getBands() + " values, but got: " + spectrum.length);
+
+    for (b = 0; b < spectrum.length; b++)
+      put(m_Layout.offset(b, line, sample), spectrum[b]);
+  }
+
+  /**
+   * Flushes the buffer and closes the data file. Pads the data file to its
+   * full size if not all values were written.
+   *
+   * @throws IOException	if writing fails
+   */
+  @Override
+  public void close() throws IOException {
+    if (m_Channel == null)
+      return;
+
+    try {
+      flush();
+      m_Pages.clear();
+      m_Current = null;
+      if (m_Channel.size() < m_Offset + m_Layout.length())
+	m_Channel.write(ByteBuffer.allocate(1), m_Offset + m_Layout.length() - 1);
+    }
+    finally {
+      m_Channel.close();
+      m_Channel = null;
+    }
+  }
+
+  /**
+   * Writes the dataset to the specified .hdr file and the data file (.dat)
+   * next to it. The raw bytes get copied from the storage in chunks, dropping
+   * any embedded header information. The files must not be the ones the
+   * dataset was loaded from, as the data file gets truncated while the
+   * dataset may still be reading from it.
+   *
+   * @param dataset	the dataset to write
+   * @param hdrFile	the .hdr file to write
+   * @throws IOException	if writing fails
+   */
+  public static void write(AbstractDataset dataset, File hdrFile) throws IOException {
+    Map<HeaderField,String>	values;
+    Storage			storage;
+    File			dataFile;
+    byte[]			chunk;
+    long			total;
+    long			pos;
+    int				length;
+
+    dataFile = FileUtils.replaceExtension(hdrFile, EXTENSION);
+    if (FileUtils.isSameFile(hdrFile, dataset.getHeader().getFile()))
+      throw new IllegalArgumentException("Cannot overwrite the header of the dataset: " + hdrFile);
+    if (FileUtils.isSameFile(dataFile, dataset.getFile()))
+      throw new IllegalArgumentException("Cannot overwrite the data file of the dataset: " + dataFile);
+
+    values = new HashMap<>();
+    values.put(HeaderField.HEADER_OFFSET, "0");
+    storage = dataset.getStorage();
+    total   = dataset.getLayout().length();
+    chunk   = new byte[(int) Math.min(BUFFER_SIZE, total)];
+    try (ENVIWriter writer = new ENVIWriter(hdrFile, dataFile, dataset.getHeader().derive(values))) {
+      for (pos = 0; pos < total; pos += length) {
+	length = (int) Math.min(chunk.length, total - pos);
+	storage.read(pos, chunk, 0, length);
+	writer.writeRaw(pos, chunk, 0, length);
+      }
+    }
+  }
+}
@@ -0,0 +1,346 @@
+/*
+ * InterleaveConverter.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package envi4j;
+
+import envi4j.core.FileUtils;
+import envi4j.dataset.AbstractDataset;
+import envi4j.header.Header;
+import envi4j.header.HeaderField;
+import envi4j.header.Interleave;
+import envi4j.layout.AbstractLayout;
+import envi4j.layout.Layout;
+import envi4j.storage.Storage;
+import envi4j.storage.StorageType;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Converts datasets into another interleave without loading them into memory.
+ * The data gets processed in blocks of lines, with the number of lines per
+ * block determined by the memory budget. Each block gets read, reordered
+ * into sequential order (band -> line -> sample) and from there into the
+ * target interleave, using the layouts. Reordering and writing of a block
+ * get split across the threads of the pool.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ * @see Layout#toSequential(byte[], byte[], ForkJoinPool)
+ * @see Layout#fromSequential(byte[], byte[], ForkJoinPool)
+ */
+public class InterleaveConverter {
+
+  /** the default memory budget (256MB). */
+  public final static long DEFAULT_BUDGET = 256L * 1024 * 1024;
+
+  /** the size of the chunks for parallel writes of contiguous blocks. */
+  public final static int WRITE_CHUNK = 8 * 1024 * 1024;
+
+  /** the memory budget in bytes. */
+  protected long m_Budget;
+
+  /** the number of threads, 0 for the common pool. */
+  protected int m_Parallelism;
+
+  /** whether to suppress warnings/errors. */
+  protected boolean m_Quiet;
+
+  /**
+   * Initializes the converter with the default budget, using the common pool.
+   */
+  public InterleaveConverter() {
+    this(DEFAULT_BUDGET, 0);
+  }
+
+  /**
+   * Initializes the converter.
+   *
+   * @param budget	the memory budget in bytes for the blocks
+   * @param parallelism	the number of threads, 0 for the common pool
+   */
+  public InterleaveConverter(long budget, int parallelism) {
+    if (budget < 1)
+      throw new IllegalArgumentException("Budget must be positive: " + budget);
+    if (parallelism < 0)
+      throw new IllegalArgumentException("Parallelism cannot be negative: " + parallelism);
+
+    m_Budget      = budget;
+    m_Parallelism = parallelism;
+    m_Quiet       = true;
+  }
+
+  /**
+   * Sets whether to suppress warnings/errors.
+   *
+   * @param value	true if to suppress
+   */
+  public void setQuiet(boolean value) {
+    m_Quiet = value;
+  }
+
+  /**
+   * Returns whether to suppress warnings/errors.
+   *
+   * @return		true if suppressed
+   */
+  public boolean isQuiet() {
+    return m_Quiet;
+  }
+
+  /**
+   * Returns the memory budget.
+   *
+   * @return		the budget in bytes
+   */
+  public long getBudget() {
+    return m_Budget;
+  }
+
+  /**
+   * Returns the number of threads.
+   *
+   * @return		the number of threads, 0 for the common pool
+   */
+  public int getParallelism() {
+    return m_Parallelism;
+  }
+
+  /**
+   * Determines the number of lines per block. Up to three blocks (raw,
+   * sequential, converted) are in memory at the same time.
+   *
+   * @param layout	the layout of the data
+   * @return		the number of lines
+   */
+  protected int blockLines(Layout layout) {
+    long	lineLen;
+    long	result;
+
+    lineLen = (long) layout.getBands() * layout.getSamples() * layout.getPixelSize();
+    result  = m_Budget / (3 * lineLen);
+    result  = Math.min(result, Storage.MAX_ARRAY_LENGTH / lineLen);
+    result  = Math.min(result, layout.getLines());
+    if (result < 1) {
+      if (lineLen > Storage.MAX_ARRAY_LENGTH)
+	throw new IllegalStateException("Line too large to fit into an array: " + lineLen);
+      result = 1;
+    }
+
+    return (int) result;
+  }
+
+  /**
+   * Converts the dataset into the specified interleave.
+   *
+   * @param input	the .hdr file of the dataset to convert
+   * @param output	the .hdr file to write, the data gets written to a .dat file next to it
+   * @param interleave	the interleave to convert to
+   * @throws IOException	if reading or writing fails
+   */
+  public void convert(File input, File output, Interleave interleave) throws IOException {
+    AbstractDataset	dataset;
+
+    dataset = ENVI.load(input, m_Quiet, StorageType.LAZY);
+    if (dataset == null)
+      throw new IOException("Failed to load dataset: " + input);
+
+    try {
+      convert(dataset, output, interleave);
+    }
+    finally {
+      dataset.close();
+    }
+  }
+
+  /**
+   * Converts the dataset into the specified interleave. The output must not
+   * be the files the dataset was loaded from.
+   *
+   * @param dataset	the dataset to convert
+   * @param output	the .hdr file to write, the data gets written to a .dat file next to it
+   * @param interleave	the interleave to convert to
+   * @throws IOException	if writing fails
+   */
+  public void convert(AbstractDataset dataset, File output, Interleave interleave) throws IOException {
+    Map<HeaderField,String>	values;
+    Header			header;
+    Layout			srcLayout;
+    Layout			dstLayout;
+    Layout			srcBlock;
+    Layout			dstBlock;
+    Storage			storage;
+    File			dataFile;
+    ForkJoinPool		pool;
+    byte[]			raw;
+    byte[]			seq;
+    byte[]			converted;
+    byte[]			out;
+    int				lines;
+    int				blockLines;
+    int				l;
+    int				n;
+
+    // the output gets truncated while the input is still being read
+    dataFile = FileUtils.replaceExtension(output, ENVIWriter.EXTENSION);
+    if (FileUtils.isSameFile(output, dataset.getHeader().getFile()))
+      throw new IllegalArgumentException("Cannot overwrite the header of the dataset: " + output);
+    if (FileUtils.isSameFile(dataFile, dataset.getFile()))
+      throw new IllegalArgumentException("Cannot overwrite the data file of the dataset: " + dataFile);
+
+    values = new HashMap<>();
+    values.put(HeaderField.INTERLEAVE, interleave.getType());
+    values.put(HeaderField.HEADER_OFFSET, "0");
+    header = dataset.getHeader().derive(values);
+    header.write(output);
+
+    storage    = dataset.getStorage();
+    srcLayout  = dataset.getLayout();
+    dstLayout  = AbstractLayout.forInterleave(interleave, srcLayout.getBands(), srcLayout.getLines(), srcLayout.getSamples(), srcLayout.getPixelSize());
+    lines      = srcLayout.getLines();
+    blockLines = blockLines(srcLayout);
+    raw        = new byte[(int) ((long) blockLines * srcLayout.length() / lines)];
+    seq        = (srcLayout.getInterleave() == Interleave.BAND_SEQUENTIAL) ? raw : new byte[raw.length];
+    converted  = (interleave == Interleave.BAND_SEQUENTIAL) ? seq : new byte[raw.length];
+    pool       = (m_Parallelism == 0) ? ForkJoinPool.commonPool() : new ForkJoinPool(m_Parallelism);
+
+    try (FileChannel channel = FileChannel.open(dataFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      for (l = 0; l < lines; l += blockLines) {
+	n        = Math.min(blockLines, lines - l);
+	srcBlock = AbstractLayout.forInterleave(srcLayout.getInterleave(), srcLayout.getBands(), n, srcLayout.getSamples(), srcLayout.getPixelSize());
+	dstBlock = AbstractLayout.forInterleave(interleave, srcLayout.getBands(), n, srcLayout.getSamples(), srcLayout.getPixelSize());
+	readBlock(storage, srcLayout, srcBlock, l, raw);
+	if (srcLayout.getInterleave() == interleave) {
+	  out = raw;
+	}
+	else {
+	  if (seq != raw)
+	    srcBlock.toSequential(raw, seq, pool);
+	  if (converted != seq)
+	    dstBlock.fromSequential(seq, converted, pool);
+	  out = converted;
+	}
+	writeBlock(channel, dstLayout, dstBlock, l, out, pool);
+      }
+    }
+    catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    finally {
+      if (m_Parallelism > 0)
+	pool.shutdown();
+    }
+  }
+
+  /**
+   * Reads the block of lines from the storage.
+   *
+   * @param storage	the storage to read from
+   * @param layout	the layout of the complete data
+   * @param block	the layout of the block
+   * @param line	the first line of the block
+   * @param dst		the buffer for the block
+   */
+  protected void readBlock(Storage storage, Layout layout, Layout block, int line, byte[] dst) {
+    int		b;
+
+    if (layout.getInterleave() == Interleave.BAND_SEQUENTIAL) {
+      for (b = 0; b < layout.getBands(); b++)
+	storage.read(layout.offset(b, line, 0), dst, (int) block.offset(b, 0, 0), (int) (block.length() / block.getBands()));
+    }
+    else {
+      storage.read(layout.offset(0, line, 0), dst, 0, (int) block.length());
+    }
+  }
+
+  /**
+   * Writes the block of lines to the file, in parallel. BSQ blocks get
+   * written as one range per band, otherwise the block is contiguous and
+   * gets written in chunks.
+   *
+   * @param channel	the channel to write to
+   * @param layout	the layout of the complete data
+   * @param block	the layout of the block
+   * @param line	the first line of the block
+   * @param src		the block
+   * @param pool	the pool to use for writing
+   */
+  protected void writeBlock(FileChannel channel, Layout layout, Layout block, int line, byte[] src, ForkJoinPool pool) {
+    int		bandLen;
+    int		length;
+
+    if (layout.getInterleave() == Interleave.BAND_SEQUENTIAL) {
+      bandLen = (int) (block.length() / block.getBands());
+      pool.submit(() -> IntStream.range(0, layout.getBands()).parallel().forEach(b ->
+	write(channel, layout.offset(b, line, 0), src, (int) block.offset(b, 0, 0), bandLen))).join();
+    }
+    else {
+      length = (int) block.length();
+      pool.submit(() -> IntStream.range(0, (length + WRITE_CHUNK - 1) / WRITE_CHUNK).parallel().forEach(c ->
+	write(channel, layout.offset(0, line, 0) + (long) c * WRITE_CHUNK, src, c * WRITE_CHUNK, Math.min(WRITE_CHUNK, length - c * WRITE_CHUNK)))).join();
+    }
+  }
+
+  /**
+   * Writes the bytes at the specified position.
+   *
+   * @param channel	the channel to write to
+   * @param pos		the position in the file
+   * @param src		the bytes to write
+   * @param offset	the offset in the bytes
+   * @param length	the number of bytes to write
+   */
+  protected void write(FileChannel channel, long pos, byte[] src, int offset, int length) {
+    ByteBuffer	buffer;
+
+    buffer = ByteBuffer.wrap(src, offset, length);
+    try {
+      while (buffer.hasRemaining())
+	pos += channel.write(buffer, pos);
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Converts a dataset from the command-line.
+   * <br>
+   * Usage: input.hdr output.hdr bsq|bil|bip [budget in MB] [threads]
+   *
+   * @param args	the command-line arguments
+   * @throws Exception	if conversion fails
+   */
+  public static void main(String[] args) throws Exception {
+    InterleaveConverter	converter;
+    Interleave		interleave;
+    long		budget;
+    int			threads;
+
+    if ((args.length < 3) || (args.length > 5)) {
+      System.err.println("Usage: " + InterleaveConverter.class.getName() + " input.hdr output.hdr bsq|bil|bip [budget in MB] [threads]");
+      System.exit(1);
+    }
+
+    interleave = Interleave.fromString(args[2]);
+    if (interleave == null) {
+      System.err.println("Unknown interleave: " + args[2]);
+      System.exit(1);
+    }
+    budget  = (args.length > 3) ? Long.parseLong(args[3]) * 1024 * 1024 : DEFAULT_BUDGET;
+    threads = (args.length > 4) ? Integer.parseInt(args[4]) : 0;
+
+    converter = new InterleaveConverter(budget, threads);
+    converter.setQuiet(false);
+    converter.convert(new File(args[0]), new File(args[1]), interleave);
+  }
+}
@@ -6,6 +6,8 @@
 package envi4j.core;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 
 /**
  * Helper class for I/O related tasks.
@@ -52,4 +54,19 @@ public class FileUtils {
     return result;
   }
 
+  /**
+   * Checks whether the two files refer to the same file.
+   *
+   * @param file1	the first file, can be null
+   * @param file2	the second file, can be null
+   * @return		true if the same file
+   * @throws IOException	if the files cannot be resolved
+   */
+  public static boolean isSameFile(File file1, File file2) throws IOException {
+    if ((file1 == null) || (file2 == null))
+      return false;
+    if (file1.exists() && file2.exists())
+      return Files.isSameFile(file1.toPath(), file2.toPath());
+    return file1.getCanonicalFile().equals(file2.getCanonicalFile());
+  }
 }
@@ -437,4 +437,109 @@ public class Utils {
 
     return result;
   }
+
+  /**
+   * Turns the flat short array (row-major) into a matrix.
+   *
+   * @param array	the array to convert
+   * @param rows	the number of rows
+   * @param cols	the number of columns
+   * @return		the matrix
+   */
+  public static short[][] toMatrix(short[] array, int rows, int cols) {
+    short[][]	result;
+    int		i;
+
+    result = new short[rows][];
+    for (i = 0; i < rows; i++) {
+      result[i] = new short[cols];
+      System.arraycopy(array, i * cols, result[i], 0, cols);
+    }
+
+    return result;
+  }
+
+  /**
+   * Turns the flat int array (row-major) into a matrix.
+   *
+   * @param array	the array to convert
+   * @param rows	the number of rows
+   * @param cols	the number of columns
+   * @return		the matrix
+   */
+  public static int[][] toMatrix(int[] array, int rows, int cols) {
+    int[][]	result;
+    int		i;
+
+    result = new int[rows][];
+    for (i = 0; i < rows; i++) {
+      result[i] = new int[cols];
+      System.arraycopy(array, i * cols, result[i], 0, cols);
+    }
+
+    return result;
+  }
+
+  /**
+   * Turns the flat long array (row-major) into a matrix.
+   *
+   * @param array	the array to convert
+   * @param rows	the number of rows
+   * @param cols	the number of columns
+   * @return		the matrix
+   */
+  public static long[][] toMatrix(long[] array, int rows, int cols) {
+    long[][]	result;
+    int		i;
+
+    result = new long[rows][];
+    for (i = 0; i < rows; i++) {
+      result[i] = new long[cols];
+      System.arraycopy(array, i * cols, result[i], 0, cols);
+    }
+
+    return result;
+  }
+
+  /**
+   * Turns the flat float array (row-major) into a matrix.
+   *
+   * @param array	the array to convert
+   * @param rows	the number of rows
+   * @param cols	the number of columns
+   * @return		the matrix
+   */
+  public static float[][] toMatrix(float[] array, int rows, int cols) {
+    float[][]	result;
+    int		i;
+
+    result = new float[rows][];
+    for (i = 0; i < rows; i++) {
+      result[i] = new float[cols];
+      System.arraycopy(array, i * cols, result[i], 0, cols);
+    }
+
+    return result;
+  }
+
+  /**
+   * Turns the flat double array (row-major) into a matrix.
+   *
+   * @param array	the array to convert
+   * @param rows	the number of rows
+   * @param cols	the number of columns
+   * @return		the matrix
+   */
+  public static double[][] toMatrix(double[] array, int rows, int cols) {
+    double[][]	result;
+    int		i;
+
+    result = new double[rows][];
+    for (i = 0; i < rows; i++) {
+      result[i] = new double[cols];
+      System.arraycopy(array, i * cols, result[i], 0, cols);
+    }
+
+    return result;
+  }
 }
@@ -5,15 +5,36 @@
 
 package envi4j.dataset;
 
+import envi4j.core.Utils;
 import envi4j.header.ByteOrder;
 import envi4j.header.DataType;
 import envi4j.header.Header;
 import envi4j.header.HeaderField;
 import envi4j.header.Interleave;
+import envi4j.layout.AbstractLayout;
+import envi4j.layout.Layout;
+import envi4j.render.Stretch;
+import envi4j.storage.ArrayStorage;
+import envi4j.storage.ChannelStorage;
+import envi4j.storage.ChunkedStorage;
+import envi4j.storage.MappedStorage;
+import envi4j.storage.SegmentedStorage;
+import envi4j.storage.Storage;
+import envi4j.storage.StorageType;
 
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.WritableRaster;
 import java.io.File;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Ancestor for datasets of specific data types.
@@ -23,6 +44,9 @@ import java.nio.file.Files;
 public abstract class AbstractDataset
   implements Dataset {
 
+  /** the maximum number of bytes a spectrum can span before its values get gathered individually. */
+  public final static int MAX_SPECTRUM_SPAN = 64 * 1024;
+
   /** whether to be quiet in the parsing. */
   protected boolean m_Quiet;
 
@@ -30,14 +54,17 @@ public abstract class AbstractDataset
   protected Header m_Header;
 
   /** the raw data. */
-  protected byte[] m_Raw;
+  protected Storage m_Storage;
 
-  /** the look up table (band -> line -> sample). */
-  protected int[] m_Lookup;
+  /** the layout of the raw bytes. */
+  protected Layout m_Layout;
 
   /** the bytes in sequential order (band -> line -> sample). */
   protected byte[] m_Sequential;
 
+  /** whether to keep the bytes in sequential order once generated. */
+  protected boolean m_CacheSequential;
+
   /** the number of bands. */
   protected int m_Bands;
 
@@ -59,25 +86,62 @@ public abstract class AbstractDataset
   /** the pixel size in bytes. */
   protected int m_PixelSize;
 
+  /** whether to use multiple threads for reordering the data. */
+  protected boolean m_Parallel;
+
+  /** the number of threads to use, 0 for the common pool. */
+  protected int m_Parallelism;
+
+  /** the pool to use in parallel mode. */
+  protected transient ForkJoinPool m_Pool;
+
+  /** the cache for decoded bands, can be null. */
+  protected transient BandCache m_BandCache;
+
+  /** the statistics per band, computed on demand. */
+  protected BandStatistics[] m_Statistics;
+
+  /** the contrast stretch to use for rendering, null for header/default. */
+  protected Stretch m_Stretch;
+
+  /** the overviews, can be null. */
+  protected Overviews m_Overviews;
+
+  /** the data file the dataset was read from, null if none. */
+  protected File m_File;
+
   /**
    * Initializes the dataset.
    *
    * @param header	the meta-data
    * @param raw		the raw data
+   * @param quiet	whether to suppress warnings/errors
    */
   public AbstractDataset(Header header, byte[] raw, boolean quiet) {
+    this(header, new ArrayStorage(raw), quiet);
+  }
+
+  /**
+   * Initializes the dataset.
+   *
+   * @param header	the meta-data
+   * @param storage	the storage with the raw data
+   * @param quiet	whether to suppress warnings/errors
+   */
+  public AbstractDataset(Header header, Storage storage, boolean quiet) {
     if (header == null)
       throw new IllegalArgumentException("Header cannot be null!");
-    if (raw == null)
-      throw new IllegalArgumentException("Raw data cannot be null!");
+    if (storage == null)
+      throw new IllegalArgumentException("Storage cannot be null!");
     if (header.getDataType() != expectedDataType())
       throw new IllegalStateException("Expected data type " + expectedDataType() + " but found " + header.getDataType() + " in header!");
 
     m_Header     = header;
-    m_Raw        = raw;
+    m_Storage    = storage;
     m_Quiet      = quiet;
-    m_Lookup     = null;
+    m_Layout     = null;
     m_Sequential = null;
+    m_CacheSequential = false;
     m_Bands      = m_Header.getBands();
     m_Lines      = m_Header.getLines();
     m_Samples    = m_Header.getSamples();
@@ -85,9 +149,17 @@ public abstract class AbstractDataset
     m_ByteOrder  = m_Header.getByteOrder();
     m_PixelSize  = m_DataType.getSize();
     m_Interleave = m_Header.getInterleave();
+    m_Parallel    = false;
+    m_Parallelism = 0;
+    m_Pool        = null;
+    m_BandCache   = null;
+    m_Statistics  = new BandStatistics[m_Bands];
+    m_Stretch     = null;
+    m_Overviews   = null;
+    m_File        = null;
 
     check();
-    initLookup();
+    initLayout();
   }
 
   /**
@@ -99,59 +171,42 @@ public abstract class AbstractDataset
     if (m_Quiet)
       return;
 
-    expected = m_Samples * m_Lines * m_Bands * m_PixelSize;
-    if (expected != m_Raw.length)
-      System.err.println("Data size != expected size: " + m_Raw.length + " != " + expected);
+    expected = (long) m_Samples * m_Lines * m_Bands * m_PixelSize;
+    if (expected != m_Storage.length())
+      System.err.println("Data size != expected size: " + m_Storage.length() + " != " + expected);
   }
 
   /**
-   * Creates a lookup table for the raw bytes.
+   * Creates the layout for the interleave of the raw bytes.
    *
-   * @see #toSequential()
+   * @see #offset(int, int, int)
    */
-  protected void initLookup() {
-    byte[] 	seq;
-    int		bandLen;
-    int		lineLen;
-    int		i;
-    int		l;
-    int		b;
-    int 	s;
-
-    if (m_Lookup != null)
+  protected void initLayout() {
+    if (m_Layout != null)
       return;
 
-    m_Lookup = new int[m_Bands * m_Lines * m_Samples];
-    lineLen  = m_Samples;
-    bandLen  = lineLen * m_Lines;
-
-    switch (getInterleave()) {
-      case BAND_SEQUENTIAL:
-	for (i = 0; i < m_Lookup.length; i++)
-	  m_Lookup[i] = i * m_PixelSize;
-	break;
-
-      case BAND_INTERLEAVED_BY_LINE:
-	for (i = 0; i < m_Lookup.length; i++) {
-	  b = (i / lineLen) % m_Bands;
-	  l = i / (lineLen * m_Bands);
-	  s = i % m_Samples;
-	  m_Lookup[i] = b * bandLen * m_PixelSize + l * lineLen * m_PixelSize + s * m_PixelSize;
-	}
-	break;
-
-      case BAND_INTERLEAVED_BY_PIXEL:
-	for (i = 0; i < m_Lookup.length; i++) {
-	  b  = i % m_Bands;                 // the band
-	  s  = (i / m_Bands) % lineLen;     // the sample
-	  l  = i / (m_Bands * m_Samples);   // the global line index
-	  m_Lookup[i] = b * bandLen * m_PixelSize + l * lineLen * m_PixelSize + s * m_PixelSize;
-	}
-	break;
-
-      default:
-	throw new IllegalStateException("Unhandled interleave: " + m_Interleave);
-    }
+    m_Layout = AbstractLayout.forInterleave(m_Interleave, m_Bands, m_Lines, m_Samples, m_PixelSize);
+  }
+
+  /**
+   * Returns the position of the first byte of the specified value in the raw data.
+   *
+   * @param band	the band
+   * @param line	the line
+   * @param sample	the sample
+   * @return		the position
+   */
+  protected long offset(int band, int line, int sample) {
+    return m_Layout.offset(band, line, sample);
+  }
+
+  /**
+   * Returns the layout of the raw bytes.
+   *
+   * @return		the layout
+   */
+  public Layout getLayout() {
+    return m_Layout;
   }
 
   /**
@@ -244,62 +299,803 @@ public abstract class AbstractDataset
     return m_PixelSize;
   }
 
+  /**
+   * Sets whether to use multiple threads for reordering the data.
+   *
+   * @param value	true if to use multiple threads
+   * @see		#setParallelism(int)
+   */
+  public void setParallel(boolean value) {
+    m_Parallel = value;
+  }
+
+  /**
+   * Returns whether to use multiple threads for reordering the data.
+   *
+   * @return		true if to use multiple threads
+   */
+  public boolean isParallel() {
+    return m_Parallel;
+  }
+
+  /**
+   * Sets the number of threads to use in parallel mode.
+   *
+   * @param value	the number of threads, 0 for the common pool
+   * @see		#setParallel(boolean)
+   */
+  public synchronized void setParallelism(int value) {
+    if (value < 0)
+      throw new IllegalArgumentException("Parallelism must be at least 0, provided: " + value);
+    if (value == m_Parallelism)
+      return;
+    if (m_Pool != null)
+      m_Pool.shutdown();
+    m_Parallelism = value;
+    m_Pool        = null;
+  }
+
+  /**
+   * Returns the number of threads to use in parallel mode.
+   *
+   * @return		the number of threads, 0 for the common pool
+   */
+  public int getParallelism() {
+    return m_Parallelism;
+  }
+
+  /**
+   * Returns the pool to use in parallel mode.
+   *
+   * @return		the pool
+   */
+  protected synchronized ForkJoinPool getPool() {
+    if (m_Pool == null) {
+      if (m_Parallelism == 0)
+	m_Pool = ForkJoinPool.commonPool();
+      else
+	m_Pool = new ForkJoinPool(m_Parallelism);
+    }
+    return m_Pool;
+  }
+
+  /**
+   * Sets whether to keep the bytes in sequential order once generated.
+   * Caching doubles the memory footprint of BIL/BIP datasets. Band
+   * access does not rely on the sequential bytes.
+   *
+   * @param value	true if to cache
+   * @see		#toSequential()
+   */
+  public synchronized void setCacheSequential(boolean value) {
+    m_CacheSequential = value;
+    if (!value)
+      m_Sequential = null;
+  }
+
+  /**
+   * Returns whether to keep the bytes in sequential order once generated.
+   *
+   * @return		true if cached
+   */
+  public boolean getCacheSequential() {
+    return m_CacheSequential;
+  }
+
+  /**
+   * Sets the cache to use for decoded bands.
+   *
+   * @param value	the cache, null to turn off caching
+   */
+  public synchronized void setBandCache(BandCache value) {
+    if (m_BandCache != null)
+      m_BandCache.invalidate(this);
+    m_BandCache = value;
+  }
+
+  /**
+   * Returns the cache in use for decoded bands.
+   *
+   * @return		the cache, null if none
+   */
+  public BandCache getBandCache() {
+    return m_BandCache;
+  }
+
+  /**
+   * Copies the band from the cache into the buffer, if available.
+   *
+   * @param band	the band
+   * @param dst		the buffer to fill (primitive array)
+   * @return		true if the band was cached
+   * @see		#setBandCache(BandCache)
+   */
+  protected boolean fromBandCache(int band, Object dst) {
+    BandCache	cache;
+    Object	cached;
+
+    cache = m_BandCache;
+    if (cache == null)
+      return false;
+
+    cached = cache.get(this, band, dst.getClass());
+    if (cached == null)
+      return false;
+
+    System.arraycopy(cached, 0, dst, 0, Array.getLength(cached));
+    return true;
+  }
+
+  /**
+   * Stores a copy of the band in the cache, if a cache is set.
+   *
+   * @param band	the band
+   * @param src		the decoded values (primitive array)
+   * @param length	the number of elements that make up the band
+   * @see		#setBandCache(BandCache)
+   */
+  protected void toBandCache(int band, Object src, int length) {
+    BandCache	cache;
+    Object	copy;
+
+    cache = m_BandCache;
+    if (cache == null)
+      return;
+
+    copy = Array.newInstance(src.getClass().getComponentType(), length);
+    System.arraycopy(src, 0, copy, 0, length);
+    cache.put(this, band, copy);
+  }
+
+  /**
+   * Returns the data file the dataset was read from.
+   *
+   * @return		the file, null if not read from a file
+   * @see		#read(Header, File, boolean, StorageType)
+   */
+  public File getFile() {
+    return m_File;
+  }
+
+  /**
+   * Returns the storage backend of the raw bytes.
+   *
+   * @return		the storage
+   */
+  public Storage getStorage() {
+    return m_Storage;
+  }
+
   /**
    * Returns the underlying raw bytes.
+   * Only available for data that fits into a single array.
    *
    * @return		the bytes
    */
   @Override
   public byte[] toRaw() {
-    return m_Raw;
+    return m_Storage.toArray();
   }
 
   /**
    * Returns the bytes in sequential order.
+   * Only available for data that fits into a single array.
+   * For BSQ data, the raw bytes are returned as is. Otherwise, the bytes
+   * get reordered, which is split across multiple threads in parallel
+   * mode. The reordered bytes are only kept if caching is enabled.
    *
    * @return		the reordered bytes
+   * @see		#setParallel(boolean)
+   * @see		#setCacheSequential(boolean)
    */
   @Override
   public synchronized byte[] toSequential() {
-    int		i;
-    int		o;
-    int		n;
+    byte[]	result;
+    byte[]	raw;
 
     if (m_Sequential != null)
       return m_Sequential;
 
-    initLookup();
+    raw = toRaw();
+    if (m_Interleave == Interleave.BAND_SEQUENTIAL)
+      return raw;
 
-    m_Sequential = new byte[m_Raw.length];
-    for (i = 0; i < m_Lookup.length; i++) {
-      for (n = 0; n < m_PixelSize; n++)
-	m_Sequential[m_Lookup[i] + n] = m_Raw[i*m_PixelSize + n];
-    }
+    result = new byte[raw.length];
+    if (m_Parallel)
+      m_Layout.toSequential(raw, result, getPool());
+    else
+      m_Layout.toSequential(raw, result);
+
+    if (m_CacheSequential)
+      m_Sequential = result;
 
-    return m_Sequential;
+    return result;
   }
 
   /**
    * Returns the bytes in sequential order for the specified band.
+   * Reads only the byte ranges of the band from the storage, without
+   * reordering the complete data.
    *
    * @return		the reordered bytes
+   * @see		Layout#copyBand(Storage, int, byte[])
    */
   @Override
   public byte[] toBand(int band) {
     byte[]	result;
-    byte[]	seq;
+    long	len;
+
+    checkBand(band);
+    len = (long) m_Lines * m_Samples * m_PixelSize;
+    if (len > Storage.MAX_ARRAY_LENGTH)
+      throw new IllegalStateException("Band too large to fit into an array: " + len);
+    result = new byte[(int) len];
+    m_Layout.copyBand(m_Storage, band, result);
+
+    return result;
+  }
+
+  /**
+   * Returns the number of values in a band.
+   *
+   * @return		the number of values (lines * samples)
+   */
+  protected int bandSize() {
+    long	result;
+
+    result = (long) m_Lines * m_Samples;
+    if (result > Storage.MAX_ARRAY_LENGTH)
+      throw new IllegalStateException("Band too large to fit into an array: " + result);
+
+    return (int) result;
+  }
+
+  /**
+   * Returns the number of elements required for storing the specified
+   * number of complex values as real/imaginary pairs.
+   *
+   * @param size	the number of complex values
+   * @return		the number of elements
+   */
+  protected int complexSize(int size) {
+    long	result;
+
+    result = 2L * size;
+    if (result > Storage.MAX_ARRAY_LENGTH)
+      throw new IllegalStateException("Too many values to fit into an array: " + result);
+
+    return (int) result;
+  }
+
+  /**
+   * Checks whether the supplied buffer is large enough.
+   *
+   * @param length	the length of the buffer
+   * @param required	the required number of elements
+   */
+  protected void checkBuffer(int length, int required) {
+    if (length < required)
+      throw new IllegalArgumentException("Buffer too small, requires " + required + " elements but has only " + length + "!");
+  }
+
+  /**
+   * Checks whether the band index is valid.
+   *
+   * @param band	the band to check
+   */
+  protected void checkBand(int band) {
+    if ((band < 0) || (band >= m_Bands))
+      throw new IndexOutOfBoundsException("Invalid band: " + band + " (bands: " + m_Bands + ")");
+  }
+
+  /**
+   * Checks whether the pixel coordinates are valid.
+   *
+   * @param line	the line to check
+   * @param sample	the sample to check
+   */
+  protected void checkPixel(int line, int sample) {
+    if ((line < 0) || (line >= m_Lines) || (sample < 0) || (sample >= m_Samples))
+      throw new IndexOutOfBoundsException("Invalid pixel: line=" + line + ", sample=" + sample + " (lines: " + m_Lines + ", samples: " + m_Samples + ")");
+  }
+
+  /**
+   * Returns a buffer with the bytes of the specified line of the band,
+   * using the byte order of the data. Consecutive samples are
+   * {@link Layout#getSampleStride()} bytes apart. Where possible, the buffer
+   * is a view on the storage rather than a copy.
+   *
+   * @param band	the band
+   * @param line	the line
+   * @return		the buffer
+   */
+  protected ByteBuffer lineView(int band, int line) {
+    return lineView(band, line, 0, m_Samples);
+  }
+
+  /**
+   * Returns a buffer with the bytes of the specified part of a line of
+   * the band, using the byte order of the data. Consecutive samples are
+   * {@link Layout#getSampleStride()} bytes apart. Where possible, the buffer
+   * is a view on the storage rather than a copy.
+   *
+   * @param band	the band
+   * @param line	the line
+   * @param sample	the first sample
+   * @param count	the number of samples
+   * @return		the buffer
+   */
+  protected ByteBuffer lineView(int band, int line, int sample, int count) {
+    checkBand(band);
+    return m_Storage.view(offset(band, line, sample), (count - 1) * m_Layout.getSampleStride() + m_PixelSize).order(m_ByteOrder.toNioByteOrder());
+  }
+
+  /**
+   * Decodes the value at the specified position in the buffer.
+   *
+   * @param bb		the buffer to decode from, using the byte order of the data
+   * @param index	the position of the first byte of the value
+   * @return		the value
+   */
+  protected abstract double decode(ByteBuffer bb, int index);
+
+  /**
+   * Checks the region and returns the number of values in it.
+   *
+   * @param line	the first line
+   * @param sample	the first sample
+   * @param height	the number of lines
+   * @param width	the number of samples
+   * @return		the number of values
+   */
+  protected int regionSize(int line, int sample, int height, int width) {
+    long	result;
+
+    if ((line < 0) || (sample < 0) || (height < 1) || (width < 1) || (line + height > m_Lines) || (sample + width > m_Samples))
+      throw new IndexOutOfBoundsException("Invalid region: line=" + line + ", sample=" + sample + ", height=" + height + ", width=" + width);
+
+    result = (long) height * width;
+    if (result > Storage.MAX_ARRAY_LENGTH)
+      throw new IllegalStateException("Region too large to fit into an array: " + result);
+
+    return (int) result;
+  }
+
+  /**
+   * Returns the number of bytes between the values of two consecutive
+   * bands in the buffer returned by {@link #spectrumView(int, int)}.
+   * The values only get read as a single range if they are adjacent
+   * (BIP) or if the storage can return the range without copying it,
+   * otherwise they get gathered one band at a time.
+   *
+   * @param line	the line
+   * @param sample	the sample
+   * @return		the number of bytes
+   */
+  protected int spectrumStride(int line, int sample) {
+    long	stride;
+    long	span;
+
+    stride = m_Layout.getBandStride();
+    span   = (m_Bands - 1) * stride + m_PixelSize;
+    if ((stride == m_PixelSize) || ((span <= MAX_SPECTRUM_SPAN) && m_Storage.isView(offset(0, line, sample), (int) span)))
+      return (int) stride;
+    else
+      return m_PixelSize;
+  }
+
+  /**
+   * Returns a buffer with the values of all bands of the specified pixel,
+   * using the byte order of the data. Consecutive bands are
+   * {@link #spectrumStride(int, int)} bytes apart. If the values are
+   * adjacent (BIP) or the storage can return them without copying, the
+   * buffer is a view on the storage, otherwise the values get gathered one
+   * band at a time.
+   *
+   * @param line	the line
+   * @param sample	the sample
+   * @return		the buffer
+   */
+  protected ByteBuffer spectrumView(int line, int sample) {
+    ByteBuffer	result;
+    byte[]	gathered;
+    int		stride;
+    int		b;
+
+    checkPixel(line, sample);
+    stride = spectrumStride(line, sample);
+    if (stride == m_Layout.getBandStride()) {
+      result = m_Storage.view(offset(0, line, sample), (m_Bands - 1) * stride + m_PixelSize);
+    }
+    else {
+      gathered = new byte[m_Bands * m_PixelSize];
+      for (b = 0; b < m_Bands; b++)
+	m_Storage.read(offset(b, line, sample), gathered, b * m_PixelSize, m_PixelSize);
+      result = ByteBuffer.wrap(gathered);
+    }
+
+    return result.order(m_ByteOrder.toNioByteOrder());
+  }
+
+  /**
+   * Returns a buffer with the values of all bands of the specified line,
+   * using the byte order of the data. For BIL and BIP, this is a single
+   * range of the storage. For BSQ, the lines of the bands get gathered
+   * into BIL order.
+   *
+   * @param line	the line
+   * @return		the buffer
+   * @see		#lineBlockSampleStride()
+   * @see		#lineBlockBandStride()
+   */
+  protected ByteBuffer lineBlock(int line) {
+    ByteBuffer	result;
+    byte[]	gathered;
+    int		lineLen;
+    int		b;
+
+    lineLen = m_Samples * m_PixelSize;
+    if (m_Interleave == Interleave.BAND_SEQUENTIAL) {
+      gathered = new byte[m_Bands * lineLen];
+      for (b = 0; b < m_Bands; b++)
+	m_Storage.read(offset(b, line, 0), gathered, b * lineLen, lineLen);
+      result = ByteBuffer.wrap(gathered);
+    }
+    else {
+      result = m_Storage.view(offset(0, line, 0), m_Bands * lineLen);
+    }
+
+    return result.order(m_ByteOrder.toNioByteOrder());
+  }
+
+  /**
+   * Returns the number of bytes between two consecutive samples of the same
+   * band in the buffer returned by {@link #lineBlock(int)}.
+   *
+   * @return		the number of bytes
+   */
+  protected int lineBlockSampleStride() {
+    if (m_Interleave == Interleave.BAND_INTERLEAVED_BY_PIXEL)
+      return m_Bands * m_PixelSize;
+    else
+      return m_PixelSize;
+  }
+
+  /**
+   * Returns the number of bytes between the values of two consecutive bands
+   * of the same sample in the buffer returned by {@link #lineBlock(int)}.
+   *
+   * @return		the number of bytes
+   */
+  protected int lineBlockBandStride() {
+    if (m_Interleave == Interleave.BAND_INTERLEAVED_BY_PIXEL)
+      return m_PixelSize;
+    else
+      return m_Samples * m_PixelSize;
+  }
+
+  /**
+   * Returns the number of values for the spectra of the range of lines.
+   *
+   * @param fromLine	the first line (incl)
+   * @param toLine	the last line (excl)
+   * @return		the number of values
+   */
+  protected int spectraSize(int fromLine, int toLine) {
+    long	result;
+
+    if ((fromLine < 0) || (toLine > m_Lines) || (fromLine > toLine))
+      throw new IndexOutOfBoundsException("Invalid range of lines: " + fromLine + "-" + toLine);
+
+    result = (long) (toLine - fromLine) * m_Samples * m_Bands;
+    if (result > Storage.MAX_ARRAY_LENGTH)
+      throw new IllegalStateException("Too many values to fit into an array: " + result);
+
+    return (int) result;
+  }
+
+  /**
+   * Returns an iterator over the lines of the dataset, using the default
+   * read-ahead.
+   *
+   * @return		the iterator
+   * @see		LineIterator#DEFAULT_READ_AHEAD
+   */
+  public LineIterator lineIterator() {
+    return new LineIterator(this);
+  }
+
+  /**
+   * Returns an iterator over the lines of the dataset.
+   *
+   * @param readAhead	the number of lines to read at once
+   * @return		the iterator
+   */
+  public LineIterator lineIterator(int readAhead) {
+    return new LineIterator(this, readAhead);
+  }
+
+  /**
+   * Decodes the values of the line of the band into the buffer.
+   *
+   * @param band	the band
+   * @param line	the line
+   * @param dst		the buffer to fill
+   * @param offset	the offset in the buffer
+   */
+  protected void decodeLine(int band, int line, float[] dst, int offset) {
+    ByteBuffer	bb;
+    int		stride;
     int		i;
-    int		offset;
 
-    result = new byte[m_Lines * m_Samples * m_PixelSize];
-    offset = m_Lines * m_Samples * m_PixelSize * band;
-    seq    = toSequential();
-    for (i = 0; i < result.length; i++)
-      result[i] = seq[offset + i];
+    bb     = lineView(band, line);
+    stride = m_Layout.getSampleStride();
+    for (i = 0; i < m_Samples; i++)
+      dst[offset + i] = (float) decode(bb, i * stride);
+  }
+
+  /**
+   * Sets the overviews to use for zoomed-out access.
+   *
+   * @param value	the overviews, null to remove
+   * @see		#getBand(int, int)
+   */
+  public void setOverviews(Overviews value) {
+    if ((value != null) && ((value.getLines(0) != m_Lines) || (value.getSamples(0) != m_Samples)))
+      throw new IllegalArgumentException(
+	"Overviews are for " + value.getLines(0) + "x" + value.getSamples(0)
+	  + " but dataset has " + m_Lines + "x" + m_Samples + " (lines x samples)!");
+    m_Overviews = value;
+  }
+
+  /**
+   * Returns the overviews in use.
+   *
+   * @return		the overviews, null if none
+   */
+  public Overviews getOverviews() {
+    return m_Overviews;
+  }
+
+  /**
+   * Returns whether the band is available at the specified level.
+   *
+   * @param band	the band to check
+   * @param level	the level (0 = full resolution)
+   * @return		true if available
+   */
+  public boolean hasLevel(int band, int level) {
+    if (level == 0)
+      return true;
+    return (m_Overviews != null) && m_Overviews.hasBand(band) && (level <= m_Overviews.getLevels());
+  }
+
+  /**
+   * Returns the values of the band at the specified level in row-major order
+   * (line -> sample). Level k has ceil(lines/2^k) x ceil(samples/2^k) values,
+   * and levels above 0 are read from the overviews.
+   *
+   * @param band	the band to retrieve
+   * @param level	the level (0 = full resolution)
+   * @return		the values
+   * @see		#setOverviews(Overviews)
+   */
+  public float[] getBandFlat(int band, int level) {
+    float[]	result;
+    int		l;
+
+    if (level == 0) {
+      result = new float[bandSize()];
+      for (l = 0; l < m_Lines; l++)
+	decodeLine(band, l, result, l * m_Samples);
+      return result;
+    }
+
+    if (!hasLevel(band, level))
+      throw new IllegalStateException("No overview available for band " + band + " at level " + level + "!");
+
+    return m_Overviews.getBand(band, level);
+  }
+
+  /**
+   * Returns the values of the band at the specified level as matrix
+   * (line -> sample).
+   *
+   * @param band	the band to retrieve
+   * @param level	the level (0 = full resolution)
+   * @return		the values
+   * @see		#getBandFlat(int, int)
+   */
+  public float[][] getBand(int band, int level) {
+    return Utils.toMatrix(getBandFlat(band, level), Overviews.reduce(m_Lines, level), Overviews.reduce(m_Samples, level));
+  }
+
+  /**
+   * Returns the statistics of the specified band.
+   * Computed on first access and kept with the dataset afterwards.
+   *
+   * @param band	the band to get the statistics for
+   * @return		the statistics
+   * @see		#getStatistics(int[])
+   */
+  public BandStatistics getStatistics(int band) {
+    return getStatistics(new int[]{band})[0];
+  }
+
+  /**
+   * Returns the statistics of all bands.
+   *
+   * @return		the statistics
+   * @see		#getStatistics(int[])
+   */
+  public BandStatistics[] getStatistics() {
+    int[]	bands;
+    int		i;
+
+    bands = new int[m_Bands];
+    for (i = 0; i < m_Bands; i++)
+      bands[i] = i;
+
+    return getStatistics(bands);
+  }
+
+  /**
+   * Returns the statistics of the specified bands. Missing statistics get
+   * computed with {@link BandStatistics#DEFAULT_BINS} histogram bins, one
+   * band per thread in parallel mode.
+   *
+   * @param bands	the bands to get the statistics for
+   * @return		the statistics
+   * @see		#setParallel(boolean)
+   */
+  public synchronized BandStatistics[] getStatistics(int[] bands) {
+    BandStatistics[]	result;
+    int[]		missing;
+    int			i;
+
+    missing = IntStream.of(bands).filter(b -> m_Statistics[b] == null).distinct().toArray();
+    if (m_Parallel && (missing.length > 1))
+      getPool().submit(() -> IntStream.of(missing).parallel().forEach(this::computeStatistics)).join();
+    else
+      IntStream.of(missing).forEach(this::computeStatistics);
+
+    result = new BandStatistics[bands.length];
+    for (i = 0; i < bands.length; i++)
+      result[i] = m_Statistics[bands[i]];
+
+    return result;
+  }
+
+  /**
+   * Computes and stores the statistics for the band.
+   *
+   * @param band	the band to compute the statistics for
+   */
+  protected void computeStatistics(int band) {
+    m_Statistics[band] = BandStatistics.compute(this, band, BandStatistics.DEFAULT_BINS);
+  }
+
+  /**
+   * Sets the contrast stretch to use for rendering.
+   *
+   * @param value	the stretch, null to use the one from the header or the default
+   * @see		Stretch#defaultStretch()
+   */
+  public void setStretch(Stretch value) {
+    m_Stretch = value;
+  }
+
+  /**
+   * Returns the contrast stretch to use for rendering. Unless explicitly set,
+   * the linear stretch from the "default stretch" header field is used,
+   * falling back on the 2%/98% percentile stretch.
+   *
+   * @return		the stretch
+   */
+  public Stretch getStretch() {
+    Stretch	result;
+    String	value;
+
+    if (m_Stretch != null)
+      return m_Stretch;
+
+    value  = m_Header.getString(HeaderField.DEFAULT_STRETCH);
+    result = Stretch.parse(value);
+    if (result == null) {
+      if ((value != null) && !m_Quiet)
+	System.err.println("Unsupported default stretch, using percentile stretch: " + value);
+      result = Stretch.defaultStretch();
+    }
+    m_Stretch = result;
 
     return result;
   }
 
+  /**
+   * Returns the value range of the band to stretch for rendering.
+   *
+   * @param band	the band
+   * @return		the lower and upper value
+   * @see		#getStretch()
+   */
+  protected double[] stretchRange(int band) {
+    Stretch	stretch;
+
+    stretch = getStretch();
+    if (!stretch.requiresStatistics())
+      return stretch.range(null);
+
+    return stretch.range(getStatistics(band));
+  }
+
+  /**
+   * Maps the value onto 0-255.
+   *
+   * @param value	the value to map
+   * @param lower	the value that maps to 0
+   * @param scale	the scale factor (255 / (upper - lower))
+   * @return		the mapped value
+   */
+  protected static int stretch(double value, double lower, double scale) {
+    int		result;
+
+    result = (int) ((value - lower) * scale);
+    if (result < 0)
+      return 0;
+    if (result > 255)
+      return 255;
+
+    return result;
+  }
+
+  /**
+   * Returns a stream over the spectra of all pixels (line -> sample).
+   * The stream can be turned into a parallel one, which splits the
+   * work by ranges of lines. The spectrum arrays get reused and must
+   * not be retained.
+   *
+   * @return		the stream
+   * @see		PixelSpliterator
+   */
+  public Stream<float[]> pixels() {
+    return StreamSupport.stream(new PixelSpliterator(this), false);
+  }
+
+  /**
+   * Returns the bytes of the specified pixel.
+   *
+   * @param band	the band
+   * @param line	the line
+   * @param sample	the sample
+   * @return		the bytes
+   */
+  @Override
+  public byte[] toPixel(int band, int line, int sample) {
+    byte[]	result;
+
+    checkBand(band);
+    checkPixel(line, sample);
+    result = new byte[m_PixelSize];
+    m_Storage.read(offset(band, line, sample), result, 0, m_PixelSize);
+
+    return result;
+  }
+
+  /**
+   * Releases the resources held by the storage backend.
+   */
+  @Override
+  public synchronized void close() {
+    m_Storage.close();
+    if (m_Overviews != null)
+      m_Overviews.close();
+    if (m_BandCache != null)
+      m_BandCache.invalidate(this);
+    if ((m_Pool != null) && (m_Parallelism > 0))
+      m_Pool.shutdown();
+    m_Pool = null;
+  }
+
   /**
    * Simply returns the header as string.
    *
@@ -327,27 +1123,117 @@ public abstract class AbstractDataset
   }
 
   /**
-   * Turns the three bands into an RGB image.
+   * Turns the three bands into an RGB image, using the contrast stretch.
+   * The stretched values get written directly into the data buffer of the image.
+   * Statistics only get computed if the stretch requires them.
    *
    * @param r		the band to act as red channel
    * @param g		the band to act as green channel
    * @param b		the band to act as blue channel
    * @return		the generated image
+   * @see		#getStretch()
    */
   @Override
   public BufferedImage toRGB(int r, int g, int b) {
-    throw new IllegalStateException("Not implemented!");
+    BufferedImage	result;
+    WritableRaster	raster;
+    Rectangle		region;
+    int[]		pixels;
+
+    // computes the statistics of the three bands in one go
+    if (getStretch().requiresStatistics())
+      getStatistics(new int[]{r, g, b});
+    result = new BufferedImage(m_Samples, m_Lines, BufferedImage.TYPE_INT_RGB);
+    raster = result.getRaster();
+    pixels = ((DataBufferInt) raster.getDataBuffer()).getData();
+    region = new Rectangle(0, 0, m_Samples, m_Lines);
+    renderChannel(r, stretchRange(r), 16, region, pixels, m_Samples);
+    renderChannel(g, stretchRange(g), 8, region, pixels, m_Samples);
+    renderChannel(b, stretchRange(b), 0, region, pixels, m_Samples);
+
+    return result;
   }
 
   /**
-   * Turns the specified band into a grayscale image.
+   * Turns the specified band into a grayscale image, using the contrast stretch.
+   * The stretched values get written directly into the data buffer of the image.
    *
    * @param band	the band to use
    * @return		the generated image
+   * @see		#getStretch()
    */
   @Override
   public BufferedImage toGray(int band) {
-    throw new IllegalStateException("Not implemented!");
+    BufferedImage	result;
+    WritableRaster	raster;
+    byte[]		pixels;
+
+    result = new BufferedImage(m_Samples, m_Lines, BufferedImage.TYPE_BYTE_GRAY);
+    raster = result.getRaster();
+    pixels = ((DataBufferByte) raster.getDataBuffer()).getData();
+    renderGray(band, stretchRange(band), new Rectangle(0, 0, m_Samples, m_Lines), pixels, m_Samples);
+
+    return result;
+  }
+
+  /**
+   * Stretches the values of the band within the region and stores them as
+   * gray values. The pixel (line, sample) is stored at line*scanline + sample.
+   *
+   * @param band	the band to render
+   * @param range	the lower and upper value of the stretch
+   * @param region	the region to render (x=sample, y=line)
+   * @param dst		the pixels of the gray image
+   * @param scanline	the width of the image
+   * @see		#stretchRange(int)
+   */
+  protected void renderGray(int band, double[] range, Rectangle region, byte[] dst, int scanline) {
+    ByteBuffer	bb;
+    double	scale;
+    int		stride;
+    int		l;
+    int		i;
+    int		o;
+
+    scale  = (range[1] > range[0]) ? 255.0 / (range[1] - range[0]) : 0;
+    stride = m_Layout.getSampleStride();
+    for (l = region.y; l < region.y + region.height; l++) {
+      bb = lineView(band, l, region.x, region.width);
+      o  = l * scanline + region.x;
+      for (i = 0; i < region.width; i++)
+	dst[o + i] = (byte) stretch(decode(bb, i * stride), range[0], scale);
+    }
+  }
+
+  /**
+   * Stretches the values of the band within the region and adds them as
+   * channel to the packed RGB values. The pixel (line, sample) is stored at
+   * line*scanline + sample.
+   *
+   * @param band	the band to render
+   * @param range	the lower and upper value of the stretch
+   * @param shift	the bit shift of the channel (16=red, 8=green, 0=blue)
+   * @param region	the region to render (x=sample, y=line)
+   * @param dst		the pixels of the RGB image
+   * @param scanline	the width of the image
+   * @see		#stretchRange(int)
+   */
+  protected void renderChannel(int band, double[] range, int shift, Rectangle region, int[] dst, int scanline) {
+    ByteBuffer	bb;
+    double	scale;
+    int		stride;
+    int		l;
+    int		i;
+    int		o;
+
+    scale  = (range[1] > range[0]) ? 255.0 / (range[1] - range[0]) : 0;
+    stride = m_Layout.getSampleStride();
+    for (l = region.y; l < region.y + region.height; l++) {
+      bb = lineView(band, l, region.x, region.width);
+      o  = l * scanline + region.x;
+      for (i = 0; i < region.width; i++)
+	dst[o + i] |= stretch(decode(bb, i * stride), range[0], scale) << shift;
+    }
   }
 
   /**
@@ -381,32 +1267,93 @@ public abstract class AbstractDataset
    * @return		the dataset, null if failed to read
    */
   public static AbstractDataset read(Header header, File input, boolean quiet) {
-    byte[] 	raw;
-    DataType	dtype;
+    return read(header, input, quiet, StorageType.ARRAY);
+  }
 
+  /**
+   * Reads the dataset from the specified data file using the meta-data from the header.
+   * Skips the number of bytes specified by the header offset, unless reading
+   * from a chunk file (whose geometry has to match the header). The storage
+   * gets closed again if the dataset cannot be created.
+   *
+   * @param header	the meta-data to use for reading
+   * @param input	the binary data file to read
+   * @param quiet	whether to suppress warnings/errors
+   * @param type	how to access the data file
+   * @return		the dataset, null if failed to read
+   */
+  public static AbstractDataset read(Header header, File input, boolean quiet, StorageType type) {
+    AbstractDataset	result;
+    Storage 		storage;
+    DataType		dtype;
+    int			offset;
+
+    storage = null;
     try {
-      raw   = Files.readAllBytes(input.toPath());
-      dtype = header.get(HeaderField.DATA_TYPE, DataType.class);
+      offset = header.getHeaderOffset();
+      dtype  = header.get(HeaderField.DATA_TYPE, DataType.class);
+      switch (type) {
+	case ARRAY:
+	  if (input.length() > Storage.MAX_ARRAY_LENGTH)
+	    storage = new SegmentedStorage(input, offset);
+	  else
+	    storage = new ArrayStorage(Files.readAllBytes(input.toPath()), offset);
+	  break;
+	case MAPPED:
+	  storage = new MappedStorage(input, offset);
+	  break;
+	case LAZY:
+	  storage = new ChannelStorage(input, offset);
+	  break;
+	case CHUNKED:
+	  storage = new ChunkedStorage(input, AbstractLayout.forInterleave(header.getInterleave(), header.getBands(), header.getLines(), header.getSamples(), dtype.getSize()));
+	  break;
+	default:
+	  throw new IllegalStateException("Unhandled storage type: " + type);
+      }
       switch (dtype) {
 	case UINT8:
-	  return new UInt8Dataset(header, raw, quiet);
+	  result = new UInt8Dataset(header, storage, quiet);
+	  break;
 	case UINT16:
-	  return new UInt16Dataset(header, raw, quiet);
+	  result = new UInt16Dataset(header, storage, quiet);
+	  break;
 	case INT16:
-	  return new Int16Dataset(header, raw, quiet);
+	  result = new Int16Dataset(header, storage, quiet);
+	  break;
 	case INT32:
-	  return new Int32Dataset(header, raw, quiet);
+	  result = new Int32Dataset(header, storage, quiet);
+	  break;
+	case UINT32:
+	  result = new UInt32Dataset(header, storage, quiet);
+	  break;
 	case INT64:
-	  return new Int64Dataset(header, raw, quiet);
+	  result = new Int64Dataset(header, storage, quiet);
+	  break;
+	case UINT64:
+	  result = new UInt64Dataset(header, storage, quiet);
+	  break;
 	case FLOAT32:
-	  return new Float32Dataset(header, raw, quiet);
+	  result = new Float32Dataset(header, storage, quiet);
+	  break;
 	case FLOAT64:
-	  return new Float64Dataset(header, raw, quiet);
+	  result = new Float64Dataset(header, storage, quiet);
+	  break;
+	case COMPLEX32:
+	  result = new Complex32Dataset(header, storage, quiet);
+	  break;
+	case COMPLEX64:
+	  result = new Complex64Dataset(header, storage, quiet);
+	  break;
 	default:
 	  throw new IllegalStateException("Unsupported data type: " + dtype);
       }
+      result.m_File = input;
+      return result;
     }
     catch (Exception e) {
+      if (storage != null)
+	storage.close();
       if (!quiet) {
 	System.err.println("Failed to load the ENVI data from: " + input);
 	e.printStackTrace();
@@ -0,0 +1,278 @@
+/*
+ * BandCache.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package envi4j.dataset;
+
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Cache for decoded bands, bounded by a memory budget. Once the budget is
+ * exceeded, the least recently used bands get evicted. A cache can be
+ * shared by multiple datasets.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ * @see AbstractDataset#setBandCache(BandCache)
+ */
+public class BandCache
+  implements Serializable {
+
+  /**
+   * The key for a cached band.
+   */
+  protected static class Key
+    implements Serializable {
+
+    /** the dataset. */
+    protected Dataset m_Dataset;
+
+    /** the band. */
+    protected int m_Band;
+
+    /** the array type. */
+    protected Class<?> m_Type;
+
+    /**
+     * Initializes the key.
+     *
+     * @param dataset	the dataset
+     * @param band	the band
+     * @param type	the array type
+     */
+    public Key(Dataset dataset, int band, Class<?> type) {
+      m_Dataset = dataset;
+      m_Band    = band;
+      m_Type    = type;
+    }
+
+    /**
+     * Compares the dataset (identity), band and type.
+     *
+     * @param obj	the object to compare with
+     * @return		true if the same
+     */
+    @Override
+    public boolean equals(Object obj) {
+      Key	other;
+
+      if (!(obj instanceof Key))
+	return false;
+      other = (Key) obj;
+      return (m_Dataset == other.m_Dataset) && (m_Band == other.m_Band) && (m_Type == other.m_Type);
+    }
+
+    /**
+     * Returns the hash code, based on dataset (identity), band and type.
+     *
+     * @return		the hash code
+     */
+    @Override
+    public int hashCode() {
+      return (System.identityHashCode(m_Dataset) * 31 + m_Band) * 31 + m_Type.hashCode();
+    }
+  }
+
+  /** the maximum number of bytes to cache. */
+  protected long m_MaxSize;
+
+  /** the current number of bytes cached. */
+  protected long m_Size;
+
+  /** the cached bands (in access order). */
+  protected LinkedHashMap<Key,Object> m_Bands;
+
+  /** the number of hits. */
+  protected long m_Hits;
+
+  /** the number of misses. */
+  protected long m_Misses;
+
+  /** the number of evictions. */
+  protected long m_Evictions;
+
+  /**
+   * Initializes the cache.
+   *
+   * @param maxSize	the maximum number of bytes to cache
+   */
+  public BandCache(long maxSize) {
+    if (maxSize < 0)
+      throw new IllegalArgumentException("Maximum size cannot be negative: " + maxSize);
+
+    m_MaxSize = maxSize;
+    m_Bands   = new LinkedHashMap<>(16, 0.75f, true);
+    clear();
+  }
+
+  /**
+   * Returns the maximum number of bytes to cache.
+   *
+   * @return		the maximum
+   */
+  public long getMaxSize() {
+    return m_MaxSize;
+  }
+
+  /**
+   * Returns the number of bytes currently cached.
+   *
+   * @return		the number of bytes
+   */
+  public synchronized long getSize() {
+    return m_Size;
+  }
+
+  /**
+   * Returns the number of bands currently cached.
+   *
+   * @return		the number of bands
+   */
+  public synchronized int getCount() {
+    return m_Bands.size();
+  }
+
+  /**
+   * Returns the number of successful lookups.
+   *
+   * @return		the hits
+   */
+  public synchronized long getHits() {
+    return m_Hits;
+  }
+
+  /**
+   * Returns the number of unsuccessful lookups.
+   *
+   * @return		the misses
+   */
+  public synchronized long getMisses() {
+    return m_Misses;
+  }
+
+  /**
+   * Returns the number of bands that got evicted to stay within budget.
+   *
+   * @return		the evictions
+   */
+  public synchronized long getEvictions() {
+    return m_Evictions;
+  }
+
+  /**
+   * Returns the size of the array in bytes.
+   *
+   * @param array	the array to get the size for
+   * @return		the size
+   */
+  protected long sizeOf(Object array) {
+    Class<?>	type;
+    int		size;
+
+    type = array.getClass().getComponentType();
+    if ((type == byte.class) || (type == boolean.class))
+      size = 1;
+    else if ((type == short.class) || (type == char.class))
+      size = 2;
+    else if ((type == int.class) || (type == float.class))
+      size = 4;
+    else
+      size = 8;
+
+    return (long) Array.getLength(array) * size;
+  }
+
+  /**
+   * Returns the cached band.
+   *
+   * @param dataset	the dataset the band belongs to
+   * @param band	the band
+   * @param type	the array type
+   * @return		the cached array, null if not cached; must not be modified
+   */
+  public synchronized Object get(Dataset dataset, int band, Class<?> type) {
+    Object	result;
+
+    result = m_Bands.get(new Key(dataset, band, type));
+    if (result == null)
+      m_Misses++;
+    else
+      m_Hits++;
+
+    return result;
+  }
+
+  /**
+   * Adds the band to the cache, evicting the least recently used bands if
+   * necessary. Bands larger than the budget don't get cached.
+   *
+   * @param dataset	the dataset the band belongs to
+   * @param band	the band
+   * @param array	the array with the values, must not be modified afterwards
+   */
+  public synchronized void put(Dataset dataset, int band, Object array) {
+    Iterator<Object>	iter;
+    Object		old;
+    long		size;
+
+    size = sizeOf(array);
+    if (size > m_MaxSize)
+      return;
+
+    old = m_Bands.put(new Key(dataset, band, array.getClass()), array);
+    if (old != null)
+      m_Size -= sizeOf(old);
+    m_Size += size;
+
+    iter = m_Bands.values().iterator();
+    while (m_Size > m_MaxSize) {
+      m_Size -= sizeOf(iter.next());
+      iter.remove();
+      m_Evictions++;
+    }
+  }
+
+  /**
+   * Removes all cached bands of the dataset.
+   *
+   * @param dataset	the dataset to remove
+   */
+  public synchronized void invalidate(Dataset dataset) {
+    List<Key>	keys;
+
+    keys = new ArrayList<>();
+    for (Key key: m_Bands.keySet()) {
+      if (key.m_Dataset == dataset)
+	keys.add(key);
+    }
+    for (Key key: keys)
+      m_Size -= sizeOf(m_Bands.remove(key));
+  }
+
+  /**
+   * Removes all bands and resets the counters.
+   */
+  public synchronized void clear() {
+    m_Bands.clear();
+    m_Size      = 0;
+    m_Hits      = 0;
+    m_Misses    = 0;
+    m_Evictions = 0;
+  }
+
+  /**
+   * Returns a short description of the state of the cache.
+   *
+   * @return		the description
+   */
+  @Override
+  public synchronized String toString() {
+    return "bands=" + m_Bands.size() + ", size=" + m_Size + "/" + m_MaxSize
+      + ", hits=" + m_Hits + ", misses=" + m_Misses + ", evictions=" + m_Evictions;
+  }
+}
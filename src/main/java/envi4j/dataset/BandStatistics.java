@@ -0,0 +1,439 @@
+/*
+ * BandStatistics.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package envi4j.dataset;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Statistics of a single band: min, max, mean, variance and a histogram
+ * with a fixed number of bins spanning [min, max]. NaNs and infinite values
+ * are counted separately and excluded from everything else.
+ * <br>
+ * The values are obtained in a single pass over the raw bytes, one line at
+ * a time. For 8 and 16 bit integer data, the values get counted exactly and
+ * the moments and the histogram are derived from these counts. For all other
+ * types, min and max get tracked and mean and variance get accumulated with
+ * Welford's algorithm (all in double precision), while the values get added
+ * to a {@link QuantileSketch} of fixed size.
+ * <br>
+ * Percentiles are derived from the exact counts for 8 and 16 bit integer
+ * data. For all other types, they come from the sketch (within its relative
+ * accuracy), as outliers would squeeze the bulk of the values into a few
+ * bins of a histogram spanning [min, max]. The histogram gets filled from
+ * the sketch as well.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ * @see AbstractDataset#getStatistics(int)
+ */
+public class BandStatistics
+  implements Serializable {
+
+  /** the default number of histogram bins. */
+  public final static int DEFAULT_BINS = 256;
+
+  /** the band. */
+  protected int m_Band;
+
+  /** the number of (finite) values. */
+  protected long m_Count;
+
+  /** the number of NaNs. */
+  protected long m_NaNCount;
+
+  /** the number of infinite values. */
+  protected long m_InfCount;
+
+  /** the minimum. */
+  protected double m_Min;
+
+  /** the maximum. */
+  protected double m_Max;
+
+  /** the mean. */
+  protected double m_Mean;
+
+  /** the (population) variance. */
+  protected double m_Variance;
+
+  /** the histogram. */
+  protected long[] m_Histogram;
+
+  /** the counts per value (from min to max) for integer data, otherwise null. */
+  protected long[] m_Counts;
+
+  /** the sketch of the distribution for non-integer data, otherwise null. */
+  protected QuantileSketch m_Sketch;
+
+  /**
+   * Initializes the statistics.
+   *
+   * @param band	the band
+   * @param bins	the number of histogram bins
+   */
+  protected BandStatistics(int band, int bins) {
+    if (bins < 1)
+      throw new IllegalArgumentException("At least one bin required: " + bins);
+    m_Band      = band;
+    m_Count     = 0;
+    m_NaNCount  = 0;
+    m_InfCount  = 0;
+    m_Min       = Double.NaN;
+    m_Max       = Double.NaN;
+    m_Mean      = Double.NaN;
+    m_Variance  = Double.NaN;
+    m_Histogram = new long[bins];
+    m_Counts    = null;
+    m_Sketch    = null;
+  }
+
+  /**
+   * Returns the band these statistics are for.
+   *
+   * @return		the band
+   */
+  public int getBand() {
+    return m_Band;
+  }
+
+  /**
+   * Returns the number of values (excl NaNs and infinite values).
+   *
+   * @return		the count
+   */
+  public long getCount() {
+    return m_Count;
+  }
+
+  /**
+   * Returns the number of NaNs.
+   *
+   * @return		the count
+   */
+  public long getNaNCount() {
+    return m_NaNCount;
+  }
+
+  /**
+   * Returns the number of infinite values (positive or negative).
+   *
+   * @return		the count
+   */
+  public long getInfCount() {
+    return m_InfCount;
+  }
+
+  /**
+   * Returns the minimum.
+   *
+   * @return		the minimum, NaN if no values
+   */
+  public double getMin() {
+    return m_Min;
+  }
+
+  /**
+   * Returns the maximum.
+   *
+   * @return		the maximum, NaN if no values
+   */
+  public double getMax() {
+    return m_Max;
+  }
+
+  /**
+   * Returns the mean.
+   *
+   * @return		the mean, NaN if no values
+   */
+  public double getMean() {
+    return m_Mean;
+  }
+
+  /**
+   * Returns the (population) variance.
+   *
+   * @return		the variance, NaN if no values
+   */
+  public double getVariance() {
+    return m_Variance;
+  }
+
+  /**
+   * Returns the (population) standard deviation.
+   *
+   * @return		the standard deviation, NaN if no values
+   */
+  public double getStdDev() {
+    return Math.sqrt(m_Variance);
+  }
+
+  /**
+   * Returns the number of histogram bins.
+   *
+   * @return		the number of bins
+   */
+  public int getNumBins() {
+    return m_Histogram.length;
+  }
+
+  /**
+   * Returns the width of a histogram bin.
+   *
+   * @return		the width, 0 if min and max are the same
+   */
+  public double getBinWidth() {
+    if (m_Count == 0)
+      return 0;
+    return (m_Max - m_Min) / m_Histogram.length;
+  }
+
+  /**
+   * Returns the histogram, bin i covering [min + i*width, min + (i+1)*width),
+   * with the last bin including the maximum.
+   *
+   * @return		the counts per bin (copy)
+   */
+  public long[] getHistogram() {
+    return m_Histogram.clone();
+  }
+
+  /**
+   * Returns the bin the value falls into.
+   *
+   * @param value	the value
+   * @return		the bin index, values outside [min, max] get clamped
+   */
+  public int getBin(double value) {
+    double	width;
+    int		result;
+
+    width = getBinWidth();
+    if (width <= 0)
+      return 0;
+    result = (int) ((value - m_Min) / width);
+    if (result < 0)
+      result = 0;
+    else if (result >= m_Histogram.length)
+      result = m_Histogram.length - 1;
+
+    return result;
+  }
+
+  /**
+   * Returns the value below which the specified percentage of values fall.
+   * For non-integer data, the value is approximated by the sketch.
+   *
+   * @param percent	the percentage (0-100)
+   * @return		the value, NaN if no values
+   */
+  public double getPercentile(double percent) {
+    double	target;
+    long	cumulative;
+    int		i;
+
+    if ((percent < 0) || (percent > 100))
+      throw new IllegalArgumentException("Percentage must be within [0, 100]: " + percent);
+    if (m_Count == 0)
+      return Double.NaN;
+
+    if (m_Counts != null) {
+      target     = percent / 100.0 * m_Count;
+      cumulative = 0;
+      for (i = 0; i < m_Counts.length - 1; i++) {
+	cumulative += m_Counts[i];
+	if (cumulative >= target)
+	  break;
+      }
+      return m_Min + i;
+    }
+
+    if (percent == 0)
+      return m_Min;
+    if (percent == 100)
+      return m_Max;
+
+    return Math.max(m_Min, Math.min(m_Max, m_Sketch.getQuantile(percent / 100.0)));
+  }
+
+  /**
+   * Returns a short description of the statistics.
+   *
+   * @return		the description
+   */
+  @Override
+  public String toString() {
+    return "band=" + m_Band + ", count=" + m_Count + ", nans=" + m_NaNCount + ", infs=" + m_InfCount
+      + ", min=" + m_Min + ", max=" + m_Max + ", mean=" + m_Mean + ", stdev=" + getStdDev();
+  }
+
+  /**
+   * Computes the statistics for the specified band of the dataset.
+   *
+   * @param dataset	the dataset to use
+   * @param band	the band to compute the statistics for
+   * @param bins	the number of histogram bins
+   * @return		the statistics
+   */
+  public static BandStatistics compute(AbstractDataset dataset, int band, int bins) {
+    if ((band < 0) || (band >= dataset.getBands()))
+      throw new IllegalArgumentException("Invalid band index: " + band);
+
+    switch (dataset.getDataType()) {
+      case UINT8:
+	return computeCounts(dataset, band, bins, 0, 256);
+      case INT16:
+	return computeCounts(dataset, band, bins, Short.MIN_VALUE, 65536);
+      case UINT16:
+	return computeCounts(dataset, band, bins, 0, 65536);
+      default:
+	return computeValues(dataset, band, bins);
+    }
+  }
+
+  /**
+   * Computes the statistics by counting every value, for data with a
+   * small range of integer values.
+   *
+   * @param dataset	the dataset to use
+   * @param band	the band to compute the statistics for
+   * @param bins	the number of histogram bins
+   * @param first	the smallest possible value
+   * @param range	the number of possible values
+   * @return		the statistics
+   */
+  protected static BandStatistics computeCounts(AbstractDataset dataset, int band, int bins, int first, int range) {
+    BandStatistics	result;
+    long[]		counts;
+    ByteBuffer		bb;
+    int			stride;
+    int			lines;
+    int			samples;
+    int			l;
+    int			i;
+    int			lo;
+    int			hi;
+    long		sum;
+    double		diff;
+    double		m2;
+
+    result  = new BandStatistics(band, bins);
+    counts  = new long[range];
+    stride  = dataset.getLayout().getSampleStride();
+    lines   = dataset.getLines();
+    samples = dataset.getSamples();
+    for (l = 0; l < lines; l++) {
+      bb = dataset.lineView(band, l);
+      for (i = 0; i < samples; i++)
+	counts[(int) dataset.decode(bb, i * stride) - first]++;
+    }
+
+    lo = 0;
+    while ((lo < range) && (counts[lo] == 0))
+      lo++;
+    if (lo == range)
+      return result;
+    hi = range - 1;
+    while (counts[hi] == 0)
+      hi--;
+
+    sum = 0;
+    for (i = lo; i <= hi; i++) {
+      result.m_Count += counts[i];
+      sum += counts[i] * (long) (i + first);
+    }
+    result.m_Min  = lo + first;
+    result.m_Max  = hi + first;
+    result.m_Mean = (double) sum / result.m_Count;
+    m2 = 0;
+    for (i = lo; i <= hi; i++) {
+      if (counts[i] == 0)
+	continue;
+      diff = i + first - result.m_Mean;
+      m2  += counts[i] * diff * diff;
+      result.m_Histogram[result.getBin(i + first)] += counts[i];
+    }
+    result.m_Variance = m2 / result.m_Count;
+
+    result.m_Counts = Arrays.copyOfRange(counts, lo, hi + 1);
+
+    return result;
+  }
+
+  /**
+   * Computes the statistics by decoding every value, one line at a time.
+   *
+   * @param dataset	the dataset to use
+   * @param band	the band to compute the statistics for
+   * @param bins	the number of histogram bins
+   * @return		the statistics
+   */
+  protected static BandStatistics computeValues(AbstractDataset dataset, int band, int bins) {
+    BandStatistics	result;
+    QuantileSketch	sketch;
+    ByteBuffer		bb;
+    int			stride;
+    int			lines;
+    int			samples;
+    int			l;
+    int			i;
+    long		n;
+    double		value;
+    double		min;
+    double		max;
+    double		mean;
+    double		m2;
+    double		delta;
+
+    result  = new BandStatistics(band, bins);
+    sketch  = new QuantileSketch();
+    stride  = dataset.getLayout().getSampleStride();
+    lines   = dataset.getLines();
+    samples = dataset.getSamples();
+    min     = Double.POSITIVE_INFINITY;
+    max     = Double.NEGATIVE_INFINITY;
+    mean    = 0;
+    m2      = 0;
+    n       = 0;
+    for (l = 0; l < lines; l++) {
+      bb = dataset.lineView(band, l);
+      for (i = 0; i < samples; i++) {
+	value = dataset.decode(bb, i * stride);
+	if (Double.isNaN(value)) {
+	  result.m_NaNCount++;
+	  continue;
+	}
+	if (Double.isInfinite(value)) {
+	  result.m_InfCount++;
+	  continue;
+	}
+	n++;
+	if (value < min)
+	  min = value;
+	if (value > max)
+	  max = value;
+	delta = value - mean;
+	mean += delta / n;
+	m2   += delta * (value - mean);
+	sketch.add(value);
+      }
+    }
+
+    if (n == 0)
+      return result;
+
+    result.m_Count    = n;
+    result.m_Min      = min;
+    result.m_Max      = max;
+    result.m_Mean     = mean;
+    result.m_Variance = m2 / n;
+    result.m_Sketch   = sketch;
+    sketch.fillHistogram(result);
+
+    return result;
+  }
+}
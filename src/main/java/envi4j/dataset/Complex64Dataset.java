@@ -0,0 +1,352 @@
+/*
+ * Complex64Dataset.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package envi4j.dataset;
+
+import envi4j.core.Utils;
+import envi4j.header.DataType;
+import envi4j.header.Header;
+import envi4j.storage.Storage;
+
+import java.awt.Rectangle;
+import java.nio.ByteBuffer;
+
+/**
+ * Dataset implementation for {@link DataType#COMPLEX64}.
+ * <br>
+ * The typed accessors return the real and imaginary parts interleaved, see
+ * {@link ComplexDataset}. Statistics, rendering and overviews use
+ * the magnitude, see {@link #getMagnitude(int)} and {@link #getPhase(int)}.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class Complex64Dataset
+  extends AbstractDataset
+  implements ComplexDoubleDataset {
+
+  /**
+   * Initializes the dataset.
+   *
+   * @param header	the meta-data
+   * @param raw 	the raw data
+   * @param quiet	whether to suppress warnings/errors
+   */
+  public Complex64Dataset(Header header, byte[] raw, boolean quiet) {
+    super(header, raw, quiet);
+  }
+
+  /**
+   * Initializes the dataset.
+   *
+   * @param header	the meta-data
+   * @param storage 	the storage with the raw data
+   * @param quiet	whether to suppress warnings/errors
+   */
+  public Complex64Dataset(Header header, Storage storage, boolean quiet) {
+    super(header, storage, quiet);
+  }
+
+  /**
+   * The data type this dataset handles.
+   *
+   * @return		the data type
+   */
+  @Override
+  public DataType expectedDataType() {
+    return DataType.COMPLEX64;
+  }
+
+  /**
+   * Decodes the value at the specified position in the buffer.
+   *
+   * @param bb		the buffer to decode from, using the byte order of the data
+   * @param index	the position of the first byte of the value
+   * @return		the magnitude of the value
+   */
+  @Override
+  protected double decode(ByteBuffer bb, int index) {
+    return Math.hypot(bb.getDouble(index), bb.getDouble(index + 8));
+  }
+
+  /**
+   * Returns the band as matrix, with real and imaginary parts interleaved
+   * in each row.
+   *
+   * @param band	the band to retrieve
+   * @return		the matrix (lines x 2*samples)
+   */
+  @Override
+  public double[][] getBand(int band) {
+    return Utils.toMatrix(getBandFlat(band), m_Lines, m_Samples * 2);
+  }
+
+  /**
+   * Returns the band as flat array in row-major order (line -> sample).
+   *
+   * @param band	the band to retrieve
+   * @return		the values (real/imaginary interleaved)
+   */
+  @Override
+  public double[] getBandFlat(int band) {
+    double[]	result;
+
+    result = new double[complexSize(bandSize())];
+    getBandInto(band, result);
+
+    return result;
+  }
+
+  /**
+   * Fills the supplied array with the band in row-major order (line -> sample).
+   * Decodes the values directly from the storage, one line at a time,
+   * unless the band is available from the band cache.
+   *
+   * @param band	the band to retrieve
+   * @param dst		the array to fill, must have at least 2*lines*samples elements
+   */
+  @Override
+  public void getBandInto(int band, double[] dst) {
+    ByteBuffer	bb;
+    int		stride;
+    int		l;
+    int		i;
+    int		o;
+
+    checkBand(band);
+    checkBuffer(dst.length, complexSize(bandSize()));
+    if (fromBandCache(band, dst))
+      return;
+
+    stride = m_Layout.getSampleStride();
+    o      = 0;
+    for (l = 0; l < m_Lines; l++) {
+      bb = lineView(band, l);
+      for (i = 0; i < m_Samples; i++) {
+	dst[o++] = bb.getDouble(i * stride);
+	dst[o++] = bb.getDouble(i * stride + 8);
+      }
+    }
+
+    toBandCache(band, dst, complexSize(bandSize()));
+  }
+
+  /**
+   * Returns the values of all bands of the specified pixel.
+   *
+   * @param line	the line of the pixel
+   * @param sample	the sample of the pixel
+   * @return		the spectrum (real/imaginary interleaved)
+   */
+  @Override
+  public double[] getSpectrum(int line, int sample) {
+    double[]	result;
+
+    result = new double[complexSize(m_Bands)];
+    getSpectrumInto(line, sample, result);
+
+    return result;
+  }
+
+  /**
+   * Fills the supplied array with the values of all bands of the specified pixel.
+   *
+   * @param line	the line of the pixel
+   * @param sample	the sample of the pixel
+   * @param dst		the array to fill, must have at least 2*bands elements
+   */
+  @Override
+  public void getSpectrumInto(int line, int sample, double[] dst) {
+    ByteBuffer	bb;
+    int		stride;
+    int		b;
+
+    checkBuffer(dst.length, complexSize(m_Bands));
+    checkPixel(line, sample);
+    bb     = spectrumView(line, sample);
+    stride = spectrumStride(line, sample);
+    for (b = 0; b < m_Bands; b++) {
+      dst[2 * b]     = bb.getDouble(b * stride);
+      dst[2 * b + 1] = bb.getDouble(b * stride + 8);
+    }
+  }
+
+  /**
+   * Returns the spectra of all pixels in the range of lines as flat array
+   * (line -> sample -> band), i.e., the spectrum of pixel (line, sample)
+   * starts at ((line - fromLine) * samples + sample) * bands * 2.
+   *
+   * @param fromLine	the first line (incl)
+   * @param toLine	the last line (excl)
+   * @return		the spectra (real/imaginary interleaved)
+   */
+  @Override
+  public double[] getSpectra(int fromLine, int toLine) {
+    double[]	result;
+    ByteBuffer	bb;
+    int		sampleStride;
+    int		bandStride;
+    int		l;
+    int		s;
+    int		b;
+    int		o;
+
+    result       = new double[complexSize(spectraSize(fromLine, toLine))];
+    sampleStride = lineBlockSampleStride();
+    bandStride   = lineBlockBandStride();
+    o            = 0;
+    for (l = fromLine; l < toLine; l++) {
+      bb = lineBlock(l);
+      for (s = 0; s < m_Samples; s++) {
+	for (b = 0; b < m_Bands; b++) {
+	  result[o++] = bb.getDouble(s * sampleStride + b * bandStride);
+	  result[o++] = bb.getDouble(s * sampleStride + b * bandStride + 8);
+	}
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the region of the band as flat array in row-major order (line -> sample).
+   *
+   * @param band	the band to retrieve
+   * @param line	the first line of the region
+   * @param sample	the first sample of the region
+   * @param height	the number of lines
+   * @param width	the number of samples
+   * @return		the values (real/imaginary interleaved)
+   */
+  @Override
+  public double[] getRegion(int band, int line, int sample, int height, int width) {
+    double[]	result;
+
+    result = new double[complexSize(regionSize(line, sample, height, width))];
+    getRegionInto(band, line, sample, height, width, result);
+
+    return result;
+  }
+
+  /**
+   * Fills the supplied array with the region of the band in row-major order (line -> sample).
+   * Only reads the bytes that overlap with the region, one line at a time.
+   *
+   * @param band	the band to retrieve
+   * @param line	the first line of the region
+   * @param sample	the first sample of the region
+   * @param height	the number of lines
+   * @param width	the number of samples
+   * @param dst		the array to fill, must have at least 2*height*width elements
+   */
+  @Override
+  public void getRegionInto(int band, int line, int sample, int height, int width, double[] dst) {
+    ByteBuffer	bb;
+    int		stride;
+    int		l;
+    int		i;
+    int		o;
+
+    checkBand(band);
+    checkBuffer(dst.length, complexSize(regionSize(line, sample, height, width)));
+    stride = m_Layout.getSampleStride();
+    o      = 0;
+    for (l = line; l < line + height; l++) {
+      bb = lineView(band, l, sample, width);
+      for (i = 0; i < width; i++) {
+	dst[o++] = bb.getDouble(i * stride);
+	dst[o++] = bb.getDouble(i * stride + 8);
+      }
+    }
+  }
+
+  /**
+   * Returns the region for each of the specified bands.
+   *
+   * @param bands	the bands to retrieve
+   * @param region	the region (x=sample, y=line)
+   * @return		the values, one flat array (line -> sample) per band
+   */
+  @Override
+  public double[][] getSubcube(int[] bands, Rectangle region) {
+    double[][]	result;
+    int		i;
+
+    for (i = 0; i < bands.length; i++)
+      checkBand(bands[i]);
+    regionSize(region.y, region.x, region.height, region.width);
+    result = new double[bands.length][];
+    for (i = 0; i < bands.length; i++)
+      result[i] = getRegion(bands[i], region.y, region.x, region.height, region.width);
+
+    return result;
+  }
+
+  /**
+   * Returns the magnitude of the band as flat array in row-major order (line -> sample).
+   *
+   * @param band	the band to retrieve
+   * @return		the magnitudes
+   */
+  @Override
+  public double[] getMagnitude(int band) {
+    return magnitude(getBandFlat(band));
+  }
+
+  /**
+   * Returns the phase of the band as flat array in row-major order (line -> sample).
+   *
+   * @param band	the band to retrieve
+   * @return		the phases in radians, within [-pi, pi]
+   */
+  @Override
+  public double[] getPhase(int band) {
+    return phase(getBandFlat(band));
+  }
+
+  /**
+   * Turns the specified band into a string representation.
+   *
+   * @param band  	the band to convert
+   * @return		the generated string representation
+   */
+  @Override
+  public String toString(int band, int max) {
+    return Utils.arrayToString(getBand(band), max);
+  }
+
+  /**
+   * Computes the magnitudes of the interleaved complex values.
+   *
+   * @param values	the real/imaginary pairs
+   * @return		the magnitudes, half as many as values
+   */
+  public static double[] magnitude(double[] values) {
+    double[]	result;
+    int		i;
+
+    result = new double[values.length / 2];
+    for (i = 0; i < result.length; i++)
+      result[i] = Math.hypot(values[2 * i], values[2 * i + 1]);
+
+    return result;
+  }
+
+  /**
+   * Computes the phases of the interleaved complex values.
+   *
+   * @param values	the real/imaginary pairs
+   * @return		the phases in radians, within [-pi, pi], half as many as values
+   */
+  public static double[] phase(double[] values) {
+    double[]	result;
+    int		i;
+
+    result = new double[values.length / 2];
+    for (i = 0; i < result.length; i++)
+      result[i] = Math.atan2(values[2 * i + 1], values[2 * i]);
+
+    return result;
+  }
+}
@@ -0,0 +1,20 @@
+/*
+ * ComplexDataset.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package envi4j.dataset;
+
+/**
+ * Ancestor for datasets with complex values. Unlike real-valued datasets,
+ * the typed accessors return the real and imaginary parts interleaved,
+ * i.e., value i is stored at 2*i (real) and 2*i+1 (imaginary), and arrays
+ * are twice as long.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ * @see ComplexFloatDataset
+ * @see ComplexDoubleDataset
+ */
+public interface ComplexDataset
+  extends Dataset {
+}
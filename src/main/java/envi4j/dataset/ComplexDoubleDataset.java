@@ -0,0 +1,120 @@
+/*
+ * ComplexDoubleDataset.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package envi4j.dataset;
+
+import java.awt.Rectangle;
+
+/**
+ * Ancestor for complex datasets that return double as type, with the real
+ * and imaginary parts interleaved.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public interface ComplexDoubleDataset
+  extends ComplexDataset {
+
+  /**
+   * Returns the band as matrix.
+   *
+   * @param band	the band to retrieve
+   * @return		the matrix (lines x 2*samples)
+   */
+  public double[][] getBand(int band);
+
+  /**
+   * Returns the band as flat array in row-major order (line -> sample).
+   *
+   * @param band	the band to retrieve
+   * @return		the values (real/imaginary interleaved)
+   */
+  public double[] getBandFlat(int band);
+
+  /**
+   * Fills the supplied array with the band in row-major order (line -> sample).
+   *
+   * @param band	the band to retrieve
+   * @param dst		the array to fill, must have at least 2*lines*samples elements
+   */
+  public void getBandInto(int band, double[] dst);
+
+  /**
+   * Returns the values of all bands of the specified pixel.
+   *
+   * @param line	the line of the pixel
+   * @param sample	the sample of the pixel
+   * @return		the spectrum (real/imaginary interleaved)
+   */
+  public double[] getSpectrum(int line, int sample);
+
+  /**
+   * Fills the supplied array with the values of all bands of the specified pixel.
+   *
+   * @param line	the line of the pixel
+   * @param sample	the sample of the pixel
+   * @param dst		the array to fill, must have at least 2*bands elements
+   */
+  public void getSpectrumInto(int line, int sample, double[] dst);
+
+  /**
+   * Returns the spectra of all pixels in the range of lines as flat array
+   * (line -> sample -> band), i.e., the spectrum of pixel (line, sample)
+   * starts at 2 * ((line - fromLine) * samples + sample) * bands.
+   *
+   * @param fromLine	the first line (incl)
+   * @param toLine	the last line (excl)
+   * @return		the spectra (real/imaginary interleaved)
+   */
+  public double[] getSpectra(int fromLine, int toLine);
+
+  /**
+   * Returns the region of the band as flat array in row-major order (line -> sample).
+   *
+   * @param band	the band to retrieve
+   * @param line	the first line of the region
+   * @param sample	the first sample of the region
+   * @param height	the number of lines
+   * @param width	the number of samples
+   * @return		the values (real/imaginary interleaved)
+   */
+  public double[] getRegion(int band, int line, int sample, int height, int width);
+
+  /**
+   * Fills the supplied array with the region of the band in row-major order (line -> sample).
+   *
+   * @param band	the band to retrieve
+   * @param line	the first line of the region
+   * @param sample	the first sample of the region
+   * @param height	the number of lines
+   * @param width	the number of samples
+   * @param dst		the array to fill, must have at least 2*height*width elements
+   */
+  public void getRegionInto(int band, int line, int sample, int height, int width, double[] dst);
+
+  /**
+   * Returns the region for each of the specified bands.
+   *
+   * @param bands	the bands to retrieve
+   * @param region	the region (x=sample, y=line)
+   * @return		the values, one flat array (line -> sample) per band, real/imaginary interleaved
+   */
+  public double[][] getSubcube(int[] bands, Rectangle region);
+
+  /**
+   * Returns the magnitude of the band as flat array in row-major order (line -> sample).
+   *
+   * @param band	the band to retrieve
+   * @return		the magnitudes
+   */
+  public double[] getMagnitude(int band);
+
+  /**
+   * Returns the phase of the band as flat array in row-major order (line -> sample).
+   *
+   * @param band	the band to retrieve
+   * @return		the phases in radians, within [-pi, pi]
+   */
+  public double[] getPhase(int band);
+}
@@ -19,7 +19,7 @@ import java.io.Serializable;
  * @author fracpete (fracpete at waikato dot ac dot nz)
  */
 public interface Dataset
-  extends Serializable {
+  extends Serializable, AutoCloseable {
 
   /** the maximum characters to output. */
   public int MAX_CHARS = 80;
@@ -115,6 +115,16 @@ public interface Dataset
    */
   public byte[] toBand(int band);
 
+  /**
+   * Returns the bytes of the specified pixel.
+   *
+   * @param band	the band
+   * @param line	the line
+   * @param sample	the sample
+   * @return		the bytes
+   */
+  public byte[] toPixel(int band, int line, int sample);
+
   /**
    * Turns the specified band into a string representation (max of {@link #MAX_CHARS}).
    *
@@ -163,4 +173,10 @@ public interface Dataset
    * @return		the generated image
    */
   public BufferedImage toGray(int band);
+
+  /**
+   * Releases any resources held by the dataset, e.g., open or mapped files.
+   */
+  @Override
+  public void close();
 }
@@ -5,8 +5,11 @@
 
 package envi4j.dataset;
 
+import java.awt.Rectangle;
+
 /**
- * Ancestor for datasets that return double as type.
+ * Ancestor for real-valued datasets that return double as type. For complex
+ * values, see {@link ComplexDoubleDataset}.
  *
  * @author fracpete (fracpete at waikato dot ac dot nz)
  */
@@ -20,4 +23,82 @@ public interface DoubleDataset
    * @return		the matrix
    */
   public double[][] getBand(int band);
+
+  /**
+   * Returns the band as flat array in row-major order (line -> sample).
+   *
+   * @param band	the band to retrieve
+   * @return		the values
+   */
+  public double[] getBandFlat(int band);
+
+  /**
+   * Fills the supplied array with the band in row-major order (line -> sample).
+   *
+   * @param band	the band to retrieve
+   * @param dst		the array to fill, must have at least lines*samples elements
+   */
+  public void getBandInto(int band, double[] dst);
+
+  /**
+   * Returns the values of all bands of the specified pixel.
+   *
+   * @param line	the line of the pixel
+   * @param sample	the sample of the pixel
+   * @return		the spectrum
+   */
+  public double[] getSpectrum(int line, int sample);
+
+  /**
+   * Fills the supplied array with the values of all bands of the specified pixel.
+   *
+   * @param line	the line of the pixel
+   * @param sample	the sample of the pixel
+   * @param dst		the array to fill, must have at least bands elements
+   */
+  public void getSpectrumInto(int line, int sample, double[] dst);
+
+  /**
+   * Returns the spectra of all pixels in the range of lines as flat array
+   * (line -> sample -> band), i.e., the spectrum of pixel (line, sample)
+   * starts at ((line - fromLine) * samples + sample) * bands.
+   *
+   * @param fromLine	the first line (incl)
+   * @param toLine	the last line (excl)
+   * @return		the spectra
+   */
+  public double[] getSpectra(int fromLine, int toLine);
+
+  /**
+   * Returns the region of the band as flat array in row-major order (line -> sample).
+   *
+   * @param band	the band to retrieve
+   * @param line	the first line of the region
+   * @param sample	the first sample of the region
+   * @param height	the number of lines
+   * @param width	the number of samples
+   * @return		the values
+   */
+  public double[] getRegion(int band, int line, int sample, int height, int width);
+
+  /**
+   * Fills the supplied array with the region of the band in row-major order (line -> sample).
+   *
+   * @param band	the band to retrieve
+   * @param line	the first line of the region
+   * @param sample	the first sample of the region
+   * @param height	the number of lines
+   * @param width	the number of samples
+   * @param dst		the array to fill, must have at least height*width elements
+   */
+  public void getRegionInto(int band, int line, int sample, int height, int width, double[] dst);
+
+  /**
+   * Returns the region for each of the specified bands.
+   *
+   * @param bands	the bands to retrieve
+   * @param region	the region (x=sample, y=line)
+   * @return		the values, one flat array (line -> sample) per band
+   */
+  public double[][] getSubcube(int[] bands, Rectangle region);
 }
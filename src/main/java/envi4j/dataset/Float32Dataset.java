@@ -6,11 +6,11 @@
 package envi4j.dataset;
 
 import envi4j.core.Utils;
-import envi4j.header.ByteOrder;
 import envi4j.header.DataType;
 import envi4j.header.Header;
+import envi4j.storage.Storage;
 
-import java.awt.image.BufferedImage;
+import java.awt.Rectangle;
 import java.nio.ByteBuffer;
 
 /**
@@ -33,6 +33,17 @@ public class Float32Dataset
     super(header, raw, quiet);
   }
 
+  /**
+   * Initializes the dataset.
+   *
+   * @param header	the meta-data
+   * @param storage 	the storage with the raw data
+   * @param quiet	whether to suppress warnings/errors
+   */
+  public Float32Dataset(Header header, Storage storage, boolean quiet) {
+    super(header, storage, quiet);
+  }
+
   /**
    * The data type this dataset handles.
    *
@@ -43,6 +54,18 @@ public class Float32Dataset
     return DataType.FLOAT32;
   }
 
+  /**
+   * Decodes the value at the specified position in the buffer.
+   *
+   * @param bb		the buffer to decode from, using the byte order of the data
+   * @param index	the position of the first byte of the value
+   * @return		the value
+   */
+  @Override
+  protected double decode(ByteBuffer bb, int index) {
+    return bb.getFloat(index);
+  }
+
   /**
    * Returns the band as matrix.
    *
@@ -51,128 +74,198 @@ public class Float32Dataset
    */
   @Override
   public float[][] getBand(int band) {
-    float[][]	result;
-    byte[]	seq;
-    int		s;
+    return Utils.toMatrix(getBandFlat(band), m_Lines, m_Samples);
+  }
+
+  /**
+   * Returns the band as flat array in row-major order (line -> sample).
+   *
+   * @param band	the band to retrieve
+   * @return		the values
+   */
+  @Override
+  public float[] getBandFlat(int band) {
+    float[]	result;
+
+    result = new float[bandSize()];
+    getBandInto(band, result);
+
+    return result;
+  }
+
+  /**
+   * Fills the supplied array with the band in row-major order (line -> sample).
+   * Decodes the values directly from the storage, one line at a time,
+   * unless the band is available from the band cache.
+   *
+   * @param band	the band to retrieve
+   * @param dst		the array to fill, must have at least lines*samples elements
+   */
+  @Override
+  public void getBandInto(int band, float[] dst) {
+    ByteBuffer	bb;
+    int		stride;
+    int		l;
     int		i;
-    int		n;
-    ByteBuffer  bb;
-
-    result = new float[m_Lines][m_Samples];
-    seq    = toBand(band);
-
-    if (getByteOrder() == ByteOrder.LITTLE_ENDIAN)
-      bb = ByteBuffer.wrap(seq).order(java.nio.ByteOrder.LITTLE_ENDIAN);
-    else
-      bb = ByteBuffer.wrap(seq).order(java.nio.ByteOrder.BIG_ENDIAN);
-
-    s = 0;
-    for (n = 0; n < m_Lines; n++) {
-      for (i = 0; i < m_Samples; i++) {
-	result[n][i] = bb.getFloat(s);
-	s += 4;
-      }
+    int		o;
+
+    checkBand(band);
+    checkBuffer(dst.length, bandSize());
+    if (fromBandCache(band, dst))
+      return;
+
+    stride = m_Layout.getSampleStride();
+    o      = 0;
+    for (l = 0; l < m_Lines; l++) {
+      bb = lineView(band, l);
+      for (i = 0; i < m_Samples; i++)
+	dst[o++] = bb.getFloat(i * stride);
     }
 
+    toBandCache(band, dst, bandSize());
+  }
+
+  /**
+   * Returns the values of all bands of the specified pixel.
+   *
+   * @param line	the line of the pixel
+   * @param sample	the sample of the pixel
+   * @return		the spectrum
+   */
+  @Override
+  public float[] getSpectrum(int line, int sample) {
+    float[]	result;
+
+    result = new float[m_Bands];
+    getSpectrumInto(line, sample, result);
+
     return result;
   }
 
   /**
-   * Turns the specified band into a grayscale image.
+   * Fills the supplied array with the values of all bands of the specified pixel.
    *
-   * @param band	the band to use
-   * @return		the generated image
+   * @param line	the line of the pixel
+   * @param sample	the sample of the pixel
+   * @param dst		the array to fill, must have at least bands elements
    */
   @Override
-  public BufferedImage toGray(int band) {
-    BufferedImage	result;
-    float[][]		data;
-    double[]		minAndMax;
-    double		min;
-    double		range;
-    int[] 		pixels;
-    int			i;
-    int			n;
-    int			p;
-
-    pixels    = new int[m_Lines * m_Samples];
-    data      = getBand(band);
-    minAndMax = Utils.minAndMax(data);
-    min       = minAndMax[0];
-    range     = minAndMax[1] - minAndMax[0];
-
-    if (range > 0) {
-      for (n = 0; n < m_Lines; n++) {
-	for (i = 0; i < m_Samples; i++) {
-	  p = (int) ((data[n][i] - min) / range * 255);
-	  pixels[n*m_Samples + i] = p << 16 + p << 8 + p;
-	}
+  public void getSpectrumInto(int line, int sample, float[] dst) {
+    ByteBuffer	bb;
+    int		stride;
+    int		b;
+
+    checkBuffer(dst.length, m_Bands);
+    checkPixel(line, sample);
+    bb     = spectrumView(line, sample);
+    stride = spectrumStride(line, sample);
+    for (b = 0; b < m_Bands; b++)
+      dst[b] = bb.getFloat(b * stride);
+  }
+
+  /**
+   * Returns the spectra of all pixels in the range of lines as flat array
+   * (line -> sample -> band), i.e., the spectrum of pixel (line, sample)
+   * starts at ((line - fromLine) * samples + sample) * bands.
+   *
+   * @param fromLine	the first line (incl)
+   * @param toLine	the last line (excl)
+   * @return		the spectra
+   */
+  @Override
+  public float[] getSpectra(int fromLine, int toLine) {
+    float[]	result;
+    ByteBuffer	bb;
+    int		sampleStride;
+    int		bandStride;
+    int		l;
+    int		s;
+    int		b;
+    int		o;
+
+    result       = new float[spectraSize(fromLine, toLine)];
+    sampleStride = lineBlockSampleStride();
+    bandStride   = lineBlockBandStride();
+    o            = 0;
+    for (l = fromLine; l < toLine; l++) {
+      bb = lineBlock(l);
+      for (s = 0; s < m_Samples; s++) {
+	for (b = 0; b < m_Bands; b++)
+	  result[o++] = bb.getFloat(s * sampleStride + b * bandStride);
       }
     }
 
-    result = new BufferedImage(m_Samples, m_Lines, BufferedImage.TYPE_BYTE_GRAY);
-    result.setRGB(0, 0, m_Samples, m_Lines, pixels, 0, m_Samples);
+    return result;
+  }
+
+  /**
+   * Returns the region of the band as flat array in row-major order (line -> sample).
+   *
+   * @param band	the band to retrieve
+   * @param line	the first line of the region
+   * @param sample	the first sample of the region
+   * @param height	the number of lines
+   * @param width	the number of samples
+   * @return		the values
+   */
+  @Override
+  public float[] getRegion(int band, int line, int sample, int height, int width) {
+    float[]	result;
+
+    result = new float[regionSize(line, sample, height, width)];
+    getRegionInto(band, line, sample, height, width, result);
 
     return result;
   }
 
   /**
-   * Turns the three bands into an RGB image.
+   * Fills the supplied array with the region of the band in row-major order (line -> sample).
+   * Only reads the bytes that overlap with the region, one line at a time.
    *
-   * @param r		the band to act as red channel
-   * @param g		the band to act as green channel
-   * @param b		the band to act as blue channel
-   * @return		the generated image
+   * @param band	the band to retrieve
+   * @param line	the first line of the region
+   * @param sample	the first sample of the region
+   * @param height	the number of lines
+   * @param width	the number of samples
+   * @param dst		the array to fill, must have at least height*width elements
    */
   @Override
-  public BufferedImage toRGB(int r, int g, int b) {
-    BufferedImage	result;
-    float[][]		red;
-    float[][]		green;
-    float[][]		blue;
-    double[] 		minAndMaxRed;
-    double[] 		minAndMaxGreen;
-    double[] 		minAndMaxBlue;
-    double 		minRed;
-    double 		minGreen;
-    double 		minBlue;
-    double 		rangeRed;
-    double 		rangeGreen;
-    double 		rangeBlue;
-    int[] 		pixels;
-    int			i;
-    int			n;
-    int 		pRed;
-    int 		pGreen;
-    int 		pBlue;
-
-    pixels         = new int[m_Lines * m_Samples];
-    red            = getBand(r);
-    green          = getBand(g);
-    blue           = getBand(b);
-    minAndMaxRed   = Utils.minAndMax(red);
-    minAndMaxGreen = Utils.minAndMax(green);
-    minAndMaxBlue  = Utils.minAndMax(blue);
-    minRed         = minAndMaxRed[0];
-    minGreen       = minAndMaxGreen[0];
-    minBlue        = minAndMaxBlue[0];
-    rangeRed       = minAndMaxRed[1] - minAndMaxRed[0];
-    rangeGreen     = minAndMaxGreen[1] - minAndMaxGreen[0];
-    rangeBlue      = minAndMaxBlue[1] - minAndMaxBlue[0];
-
-    if (rangeRed > 0) {
-      for (n = 0; n < m_Lines; n++) {
-	for (i = 0; i < m_Samples; i++) {
-	  pRed   = (int) ((red[n][i] - minRed) / rangeRed * 255);
-	  pGreen = (int) ((green[n][i] - minGreen) / rangeGreen * 255);
-	  pBlue  = (int) ((blue[n][i] - minBlue) / rangeBlue * 255);
-	  pixels[n*m_Samples + i] = pRed << 16 + pGreen << 8 + pBlue;
-	}
-      }
+  public void getRegionInto(int band, int line, int sample, int height, int width, float[] dst) {
+    ByteBuffer	bb;
+    int		stride;
+    int		l;
+    int		i;
+    int		o;
+
+    checkBand(band);
+    checkBuffer(dst.length, regionSize(line, sample, height, width));
+    stride = m_Layout.getSampleStride();
+    o      = 0;
+    for (l = line; l < line + height; l++) {
+      bb = lineView(band, l, sample, width);
+      for (i = 0; i < width; i++)
+	dst[o++] = bb.getFloat(i * stride);
     }
+  }
+
+  /**
+   * Returns the region for each of the specified bands.
+   *
+   * @param bands	the bands to retrieve
+   * @param region	the region (x=sample, y=line)
+   * @return		the values, one flat array (line -> sample) per band
+   */
+  @Override
+  public float[][] getSubcube(int[] bands, Rectangle region) {
+    float[][]	result;
+    int		i;
 
-    result = new BufferedImage(m_Samples, m_Lines, BufferedImage.TYPE_INT_RGB);
-    result.setRGB(0, 0, m_Samples, m_Lines, pixels, 0, m_Samples);
+    for (i = 0; i < bands.length; i++)
+      checkBand(bands[i]);
+    regionSize(region.y, region.x, region.height, region.width);
+    result = new float[bands.length][];
+    for (i = 0; i < bands.length; i++)
+      result[i] = getRegion(bands[i], region.y, region.x, region.height, region.width);
 
     return result;
   }
@@ -6,10 +6,11 @@
 package envi4j.dataset;
 
 import envi4j.core.Utils;
-import envi4j.header.ByteOrder;
 import envi4j.header.DataType;
 import envi4j.header.Header;
+import envi4j.storage.Storage;
 
+import java.awt.Rectangle;
 import java.nio.ByteBuffer;
 
 /**
@@ -32,6 +33,17 @@ public class Float64Dataset
     super(header, raw, quiet);
   }
 
+  /**
+   * Initializes the dataset.
+   *
+   * @param header	the meta-data
+   * @param storage 	the storage with the raw data
+   * @param quiet	whether to suppress warnings/errors
+   */
+  public Float64Dataset(Header header, Storage storage, boolean quiet) {
+    super(header, storage, quiet);
+  }
+
   /**
    * The data type this dataset handles.
    *
@@ -42,6 +54,18 @@ public class Float64Dataset
     return DataType.FLOAT64;
   }
 
+  /**
+   * Decodes the value at the specified position in the buffer.
+   *
+   * @param bb		the buffer to decode from, using the byte order of the data
+   * @param index	the position of the first byte of the value
+   * @return		the value
+   */
+  @Override
+  protected double decode(ByteBuffer bb, int index) {
+    return bb.getDouble(index);
+  }
+
   /**
    * Returns the band as matrix.
    *
@@ -50,32 +74,202 @@ public class Float64Dataset
    */
   @Override
   public double[][] getBand(int band) {
-    double[][]	result;
-    byte[]	seq;
-    int		s;
+    return Utils.toMatrix(getBandFlat(band), m_Lines, m_Samples);
+  }
+
+  /**
+   * Returns the band as flat array in row-major order (line -> sample).
+   *
+   * @param band	the band to retrieve
+   * @return		the values
+   */
+  @Override
+  public double[] getBandFlat(int band) {
+    double[]	result;
+
+    result = new double[bandSize()];
+    getBandInto(band, result);
+
+    return result;
+  }
+
+  /**
+   * Fills the supplied array with the band in row-major order (line -> sample).
+   * Decodes the values directly from the storage, one line at a time,
+   * unless the band is available from the band cache.
+   *
+   * @param band	the band to retrieve
+   * @param dst		the array to fill, must have at least lines*samples elements
+   */
+  @Override
+  public void getBandInto(int band, double[] dst) {
+    ByteBuffer	bb;
+    int		stride;
+    int		l;
     int		i;
-    int		n;
-    ByteBuffer  bb;
-
-    result = new double[m_Lines][m_Samples];
-    seq    = toBand(band);
-
-    if (getByteOrder() == ByteOrder.LITTLE_ENDIAN)
-      bb = ByteBuffer.wrap(seq).order(java.nio.ByteOrder.LITTLE_ENDIAN);
-    else
-      bb = ByteBuffer.wrap(seq).order(java.nio.ByteOrder.BIG_ENDIAN);
-
-    s = 0;
-    for (n = 0; n < m_Lines; n++) {
-      for (i = 0; i < m_Samples; i++) {
-        result[n][i] = bb.getDouble(s);
-        s += 8;
+    int		o;
+
+    checkBand(band);
+    checkBuffer(dst.length, bandSize());
+    if (fromBandCache(band, dst))
+      return;
+
+    stride = m_Layout.getSampleStride();
+    o      = 0;
+    for (l = 0; l < m_Lines; l++) {
+      bb = lineView(band, l);
+      for (i = 0; i < m_Samples; i++)
+        dst[o++] = bb.getDouble(i * stride);
+    }
+
+    toBandCache(band, dst, bandSize());
+  }
+
+  /**
+   * Returns the values of all bands of the specified pixel.
+   *
+   * @param line	the line of the pixel
+   * @param sample	the sample of the pixel
+   * @return		the spectrum
+   */
+  @Override
+  public double[] getSpectrum(int line, int sample) {
+    double[]	result;
+
+    result = new double[m_Bands];
+    getSpectrumInto(line, sample, result);
+
+    return result;
+  }
+
+  /**
+   * Fills the supplied array with the values of all bands of the specified pixel.
+   *
+   * @param line	the line of the pixel
+   * @param sample	the sample of the pixel
+   * @param dst		the array to fill, must have at least bands elements
+   */
+  @Override
+  public void getSpectrumInto(int line, int sample, double[] dst) {
+    ByteBuffer	bb;
+    int		stride;
+    int		b;
+
+    checkBuffer(dst.length, m_Bands);
+    checkPixel(line, sample);
+    bb     = spectrumView(line, sample);
+    stride = spectrumStride(line, sample);
+    for (b = 0; b < m_Bands; b++)
+      dst[b] = bb.getDouble(b * stride);
+  }
+
+  /**
+   * Returns the spectra of all pixels in the range of lines as flat array
+   * (line -> sample -> band), i.e., the spectrum of pixel (line, sample)
+   * starts at ((line - fromLine) * samples + sample) * bands.
+   *
+   * @param fromLine	the first line (incl)
+   * @param toLine	the last line (excl)
+   * @return		the spectra
+   */
+  @Override
+  public double[] getSpectra(int fromLine, int toLine) {
+    double[]	result;
+    ByteBuffer	bb;
+    int		sampleStride;
+    int		bandStride;
+    int		l;
+    int		s;
+    int		b;
+    int		o;
+
+    result       = new double[spectraSize(fromLine, toLine)];
+    sampleStride = lineBlockSampleStride();
+    bandStride   = lineBlockBandStride();
+    o            = 0;
+    for (l = fromLine; l < toLine; l++) {
+      bb = lineBlock(l);
+      for (s = 0; s < m_Samples; s++) {
+	for (b = 0; b < m_Bands; b++)
+	  result[o++] = bb.getDouble(s * sampleStride + b * bandStride);
       }
     }
 
     return result;
   }
 
+  /**
+   * Returns the region of the band as flat array in row-major order (line -> sample).
+   *
+   * @param band	the band to retrieve
+   * @param line	the first line of the region
+   * @param sample	the first sample of the region
+   * @param height	the number of lines
+   * @param width	the number of samples
+   * @return		the values
+   */
+  @Override
+  public double[] getRegion(int band, int line, int sample, int height, int width) {
+    double[]	result;
+
+    result = new double[regionSize(line, sample, height, width)];
+    getRegionInto(band, line, sample, height, width, result);
+
+    return result;
+  }
+
+  /**
+   * Fills the supplied array with the region of the band in row-major order (line -> sample).
+   * Only reads the bytes that overlap with the region, one line at a time.
+   *
+   * @param band	the band to retrieve
+   * @param line	the first line of the region
+   * @param sample	the first sample of the region
+   * @param height	the number of lines
+   * @param width	the number of samples
+   * @param dst		the array to fill, must have at least height*width elements
+   */
+  @Override
+  public void getRegionInto(int band, int line, int sample, int height, int width, double[] dst) {
+    ByteBuffer	bb;
+    int		stride;
+    int		l;
+    int		i;
+    int		o;
+
+    checkBand(band);
+    checkBuffer(dst.length, regionSize(line, sample, height, width));
+    stride = m_Layout.getSampleStride();
+    o      = 0;
+    for (l = line; l < line + height; l++) {
+      bb = lineView(band, l, sample, width);
+      for (i = 0; i < width; i++)
+        dst[o++] = bb.getDouble(i * stride);
+    }
+  }
+
+  /**
+   * Returns the region for each of the specified bands.
+   *
+   * @param bands	the bands to retrieve
+   * @param region	the region (x=sample, y=line)
+   * @return		the values, one flat array (line -> sample) per band
+   */
+  @Override
+  public double[][] getSubcube(int[] bands, Rectangle region) {
+    double[][]	result;
+    int		i;
+
+    for (i = 0; i < bands.length; i++)
+      checkBand(bands[i]);
+    regionSize(region.y, region.x, region.height, region.width);
+    result = new double[bands.length][];
+    for (i = 0; i < bands.length; i++)
+      result[i] = getRegion(bands[i], region.y, region.x, region.height, region.width);
+
+    return result;
+  }
+
   /**
    * Turns the specified band into a string representation.
    *
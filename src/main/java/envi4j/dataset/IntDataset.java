@@ -5,6 +5,8 @@
 
 package envi4j.dataset;
 
+import java.awt.Rectangle;
+
 /**
  * Interface for datasets that return int as type.
  *
@@ -20,4 +22,82 @@ public interface IntDataset
    * @return		the matrix
    */
   public int[][] getBand(int band);
+
+  /**
+   * Returns the band as flat array in row-major order (line -> sample).
+   *
+   * @param band	the band to retrieve
+   * @return		the values
+   */
+  public int[] getBandFlat(int band);
+
+  /**
+   * Fills the supplied array with the band in row-major order (line -> sample).
+   *
+   * @param band	the band to retrieve
+   * @param dst		the array to fill, must have at least lines*samples elements
+   */
+  public void getBandInto(int band, int[] dst);
+
+  /**
+   * Returns the values of all bands of the specified pixel.
+   *
+   * @param line	the line of the pixel
+   * @param sample	the sample of the pixel
+   * @return		the spectrum
+   */
+  public int[] getSpectrum(int line, int sample);
+
+  /**
+   * Fills the supplied array with the values of all bands of the specified pixel.
+   *
+   * @param line	the line of the pixel
+   * @param sample	the sample of the pixel
+   * @param dst		the array to fill, must have at least bands elements
+   */
+  public void getSpectrumInto(int line, int sample, int[] dst);
+
+  /**
+   * Returns the spectra of all pixels in the range of lines as flat array
+   * (line -> sample -> band), i.e., the spectrum of pixel (line, sample)
+   * starts at ((line - fromLine) * samples + sample) * bands.
+   *
+   * @param fromLine	the first line (incl)
+   * @param toLine	the last line (excl)
+   * @return		the spectra
+   */
+  public int[] getSpectra(int fromLine, int toLine);
+
+  /**
+   * Returns the region of the band as flat array in row-major order (line -> sample).
+   *
+   * @param band	the band to retrieve
+   * @param line	the first line of the region
+   * @param sample	the first sample of the region
+   * @param height	the number of lines
+   * @param width	the number of samples
+   * @return		the values
+   */
+  public int[] getRegion(int band, int line, int sample, int height, int width);
+
+  /**
+   * Fills the supplied array with the region of the band in row-major order (line -> sample).
+   *
+   * @param band	the band to retrieve
+   * @param line	the first line of the region
+   * @param sample	the first sample of the region
+   * @param height	the number of lines
+   * @param width	the number of samples
+   * @param dst		the array to fill, must have at least height*width elements
+   */
+  public void getRegionInto(int band, int line, int sample, int height, int width, int[] dst);
+
+  /**
+   * Returns the region for each of the specified bands.
+   *
+   * @param bands	the bands to retrieve
+   * @param region	the region (x=sample, y=line)
+   * @return		the values, one flat array (line -> sample) per band
+   */
+  public int[][] getSubcube(int[] bands, Rectangle region);
 }
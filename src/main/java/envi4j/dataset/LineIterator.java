@@ -0,0 +1,192 @@
+/*
+ * LineIterator.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package envi4j.dataset;
+
+import envi4j.header.Interleave;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over the lines of a dataset, returning the values of all bands
+ * of a line as float matrix (band -> sample). Reads a block of lines at a
+ * time (read-ahead) in increasing file order and reuses its buffers, so
+ * the memory consumption only depends on the read-ahead, not the size of
+ * the dataset. BIL and BIP read a single range per block, BSQ one range
+ * per band and block (the lines of a band are contiguous).
+ * <br>
+ * NB: the returned matrix gets overwritten by the next call to
+ * {@link #next()}.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class LineIterator
+  implements Iterator<float[][]> {
+
+  /** the default number of lines to read at once. */
+  public final static int DEFAULT_READ_AHEAD = 4;
+
+  /** the dataset to iterate. */
+  protected AbstractDataset m_Dataset;
+
+  /** the number of lines to read at once. */
+  protected int m_ReadAhead;
+
+  /** the next line to return. */
+  protected int m_Line;
+
+  /** the first line in the buffer. */
+  protected int m_BlockStart;
+
+  /** the number of lines in the buffer. */
+  protected int m_BlockLines;
+
+  /** the raw bytes of the current block. */
+  protected byte[] m_Block;
+
+  /** the buffer wrapping the raw bytes. */
+  protected ByteBuffer m_Buffer;
+
+  /** the values of the current line (band -> sample). */
+  protected float[][] m_Values;
+
+  /**
+   * Initializes the iterator with the default read-ahead.
+   *
+   * @param dataset	the dataset to iterate
+   * @see		#DEFAULT_READ_AHEAD
+   */
+  public LineIterator(AbstractDataset dataset) {
+    this(dataset, DEFAULT_READ_AHEAD);
+  }
+
+  /**
+   * Initializes the iterator.
+   *
+   * @param dataset	the dataset to iterate
+   * @param readAhead	the number of lines to read at once
+   */
+  public LineIterator(AbstractDataset dataset, int readAhead) {
+    if (readAhead < 1)
+      throw new IllegalArgumentException("Read-ahead must be at least 1, provided: " + readAhead);
+
+    m_Dataset    = dataset;
+    m_ReadAhead  = Math.min(readAhead, Math.max(1, dataset.getLines()));
+    m_Line       = 0;
+    m_BlockStart = 0;
+    m_BlockLines = 0;
+    m_Block      = new byte[m_ReadAhead * lineLength()];
+    m_Buffer     = ByteBuffer.wrap(m_Block).order(dataset.getByteOrder().toNioByteOrder());
+    m_Values     = new float[dataset.getBands()][dataset.getSamples()];
+  }
+
+  /**
+   * Returns the number of bytes of a line across all bands.
+   *
+   * @return		the number of bytes
+   */
+  protected int lineLength() {
+    return m_Dataset.getBands() * m_Dataset.getSamples() * m_Dataset.getPixelSize();
+  }
+
+  /**
+   * Returns the number of lines read at once.
+   *
+   * @return		the number of lines
+   */
+  public int getReadAhead() {
+    return m_ReadAhead;
+  }
+
+  /**
+   * Returns the index of the line that the next call of {@link #next()} returns.
+   *
+   * @return		the line index
+   */
+  public int getLine() {
+    return m_Line;
+  }
+
+  /**
+   * Returns the number of bytes of a line of a single band.
+   *
+   * @return		the number of bytes
+   */
+  protected int bandLineLength() {
+    return m_Dataset.getSamples() * m_Dataset.getPixelSize();
+  }
+
+  /**
+   * Reads the next block of lines into the buffer. For BSQ, the block
+   * stays in BSQ order (band -> line -> sample), reading the lines of
+   * each band in one go.
+   */
+  protected void readBlock() {
+    int		blockLen;
+    int		b;
+
+    m_BlockStart = m_Line;
+    m_BlockLines = Math.min(m_ReadAhead, m_Dataset.getLines() - m_Line);
+
+    if (m_Dataset.getInterleave() == Interleave.BAND_SEQUENTIAL) {
+      blockLen = m_BlockLines * bandLineLength();
+      for (b = 0; b < m_Dataset.getBands(); b++)
+	m_Dataset.getStorage().read(m_Dataset.offset(b, m_BlockStart, 0), m_Block, b * blockLen, blockLen);
+    }
+    else {
+      m_Dataset.getStorage().read(m_Dataset.offset(0, m_BlockStart, 0), m_Block, 0, m_BlockLines * lineLength());
+    }
+  }
+
+  /**
+   * Returns whether there are more lines.
+   *
+   * @return		true if more lines available
+   */
+  @Override
+  public boolean hasNext() {
+    return m_Line < m_Dataset.getLines();
+  }
+
+  /**
+   * Returns the next line.
+   *
+   * @return		the values (band -> sample), gets reused
+   */
+  @Override
+  public float[][] next() {
+    int		start;
+    int		sampleStride;
+    int		bandStride;
+    int		b;
+    int		s;
+
+    if (!hasNext())
+      throw new NoSuchElementException("No more lines available!");
+
+    if (m_Line >= m_BlockStart + m_BlockLines)
+      readBlock();
+
+    if (m_Dataset.getInterleave() == Interleave.BAND_SEQUENTIAL) {
+      start        = (m_Line - m_BlockStart) * bandLineLength();
+      sampleStride = m_Dataset.getPixelSize();
+      bandStride   = m_BlockLines * bandLineLength();
+    }
+    else {
+      start        = (m_Line - m_BlockStart) * lineLength();
+      sampleStride = m_Dataset.lineBlockSampleStride();
+      bandStride   = m_Dataset.lineBlockBandStride();
+    }
+    for (b = 0; b < m_Values.length; b++) {
+      for (s = 0; s < m_Values[b].length; s++)
+	m_Values[b][s] = (float) m_Dataset.decode(m_Buffer, start + b * bandStride + s * sampleStride);
+    }
+    m_Line++;
+
+    return m_Values;
+  }
+}
@@ -0,0 +1,507 @@
+/*
+ * Overviews.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package envi4j.dataset;
+
+import envi4j.core.FileUtils;
+import envi4j.storage.ChannelStorage;
+import envi4j.storage.Storage;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Power-of-two overviews of selected bands, stored in a sidecar file next
+ * to the .hdr file. Level k has ceil(lines/2^k) x ceil(samples/2^k) pixels,
+ * with level 0 being the full resolution data of the dataset itself.
+ * <br>
+ * File format (big endian): the magic string "ENVIOVR" with a version byte,
+ * lines, samples, number of levels, number of bands and the resampling
+ * (ints), length and last modified timestamp of the data file (longs, -1 if
+ * none), the band indices (ints), followed by the float values of the
+ * levels 1 to n of each band in row-major order (line -> sample).
+ * <br>
+ * When reading the overviews for a data file, length and timestamp must
+ * match, otherwise the overviews are considered out of date.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ * @see AbstractDataset#getBand(int, int)
+ */
+public class Overviews
+  implements Serializable {
+
+  /** the extension of the sidecar file. */
+  public final static String EXTENSION = ".ovr";
+
+  /** the magic string at the start of the file. */
+  public final static String MAGIC = "ENVIOVR";
+
+  /** the version of the file format. */
+  public final static byte VERSION = 2;
+
+  /** the sidecar file. */
+  protected File m_File;
+
+  /** the lines of the full resolution data. */
+  protected int m_Lines;
+
+  /** the samples of the full resolution data. */
+  protected int m_Samples;
+
+  /** the number of levels (excl full resolution). */
+  protected int m_Levels;
+
+  /** the bands that have overviews. */
+  protected int[] m_Bands;
+
+  /** the resampling that was used. */
+  protected Resampling m_Resampling;
+
+  /** the length of the data file the overviews were generated from, -1 if none. */
+  protected long m_DataLength;
+
+  /** the last modified timestamp of the data file, -1 if none. */
+  protected long m_DataModified;
+
+  /** the storage for reading the values. */
+  protected ChannelStorage m_Storage;
+
+  /**
+   * Initializes the overviews.
+   *
+   * @param file	the sidecar file
+   * @param lines	the lines of the full resolution data
+   * @param samples	the samples of the full resolution data
+   * @param levels	the number of levels
+   * @param bands	the bands that have overviews
+   * @param resampling	the resampling that was used
+   * @param dataLength	the length of the data file, -1 if none
+   * @param dataModified	the last modified timestamp of the data file, -1 if none
+   * @throws IOException	if failed to open the file
+   */
+  protected Overviews(File file, int lines, int samples, int levels, int[] bands, Resampling resampling, long dataLength, long dataModified) throws IOException {
+    m_File         = file;
+    m_Lines        = lines;
+    m_Samples      = samples;
+    m_Levels       = levels;
+    m_Bands        = bands;
+    m_Resampling   = resampling;
+    m_DataLength   = dataLength;
+    m_DataModified = dataModified;
+    m_Storage      = new ChannelStorage(file, headerSize(bands.length));
+  }
+
+  /**
+   * Returns the sidecar file.
+   *
+   * @return		the file
+   */
+  public File getFile() {
+    return m_File;
+  }
+
+  /**
+   * Returns the number of levels (excl full resolution).
+   *
+   * @return		the number of levels
+   */
+  public int getLevels() {
+    return m_Levels;
+  }
+
+  /**
+   * Returns the bands that have overviews.
+   *
+   * @return		the bands
+   */
+  public int[] getBands() {
+    return m_Bands.clone();
+  }
+
+  /**
+   * Returns the resampling that was used to generate the overviews.
+   *
+   * @return		the resampling
+   */
+  public Resampling getResampling() {
+    return m_Resampling;
+  }
+
+  /**
+   * Returns whether the overviews were generated from the data file in its
+   * current state, i.e., length and last modified timestamp match.
+   *
+   * @param dataFile	the data file to check
+   * @return		true if matching
+   */
+  public boolean matches(File dataFile) {
+    return (dataFile != null) && (dataFile.length() == m_DataLength) && (dataFile.lastModified() == m_DataModified);
+  }
+
+  /**
+   * Returns whether overviews are available for the band.
+   *
+   * @param band	the band to check
+   * @return		true if available
+   */
+  public boolean hasBand(int band) {
+    return indexOf(band) > -1;
+  }
+
+  /**
+   * Returns the number of lines at the specified level.
+   *
+   * @param level	the level (0 = full resolution)
+   * @return		the lines
+   */
+  public int getLines(int level) {
+    return reduce(m_Lines, level);
+  }
+
+  /**
+   * Returns the number of samples at the specified level.
+   *
+   * @param level	the level (0 = full resolution)
+   * @return		the samples
+   */
+  public int getSamples(int level) {
+    return reduce(m_Samples, level);
+  }
+
+  /**
+   * Returns the position of the band in the file.
+   *
+   * @param band	the band to look for
+   * @return		the position, -1 if not available
+   */
+  protected int indexOf(int band) {
+    int		i;
+
+    for (i = 0; i < m_Bands.length; i++) {
+      if (m_Bands[i] == band)
+	return i;
+    }
+
+    return -1;
+  }
+
+  /**
+   * Returns the number of bytes that the specified level occupies.
+   *
+   * @param level	the level
+   * @return		the number of bytes
+   */
+  protected long levelSize(int level) {
+    return (long) getLines(level) * getSamples(level) * 4;
+  }
+
+  /**
+   * Returns the values of the band at the specified level.
+   *
+   * @param band	the band to retrieve
+   * @param level	the level (1-based)
+   * @return		the values in row-major order (line -> sample)
+   */
+  public float[] getBand(int band, int level) {
+    float[]	result;
+    byte[]	bytes;
+    long	pos;
+    int		index;
+    int		i;
+
+    index = indexOf(band);
+    if (index == -1)
+      throw new IllegalArgumentException("No overviews available for band: " + band);
+    if ((level < 1) || (level > m_Levels))
+      throw new IllegalArgumentException("Level must be within [1, " + m_Levels + "]: " + level);
+
+    pos = 0;
+    for (i = 1; i <= m_Levels; i++) {
+      if (i < level)
+	pos += levelSize(i);
+      pos += (long) index * levelSize(i);
+    }
+
+    result = new float[size(m_Lines, m_Samples, level)];
+    bytes  = new byte[(int) levelSize(level)];
+    m_Storage.read(pos, bytes, 0, bytes.length);
+    ByteBuffer.wrap(bytes).asFloatBuffer().get(result);
+
+    return result;
+  }
+
+  /**
+   * Closes the sidecar file.
+   */
+  public void close() {
+    m_Storage.close();
+  }
+
+  /**
+   * Returns a short description of the overviews.
+   *
+   * @return		the description
+   */
+  @Override
+  public String toString() {
+    return m_File + ": levels=" + m_Levels + ", bands=" + Arrays.toString(m_Bands) + ", resampling=" + m_Resampling;
+  }
+
+  /**
+   * Returns the size of the dimension at the specified level.
+   *
+   * @param size	the full resolution size
+   * @param level	the level
+   * @return		the reduced size
+   */
+  protected static int reduce(int size, int level) {
+    return (int) (((long) size + (1L << level) - 1) >> level);
+  }
+
+  /**
+   * Returns the number of values at the specified level.
+   *
+   * @param lines	the full resolution lines
+   * @param samples	the full resolution samples
+   * @param level	the level
+   * @return		the number of values
+   */
+  protected static int size(int lines, int samples, int level) {
+    long	result;
+
+    result = (long) reduce(lines, level) * reduce(samples, level);
+    if (result * 4 > Storage.MAX_ARRAY_LENGTH)
+      throw new IllegalStateException("Level " + level + " too large to fit into an array: " + result);
+
+    return (int) result;
+  }
+
+  /**
+   * Returns the number of bytes before the values.
+   *
+   * @param numBands	the number of bands in the file
+   * @return		the number of bytes
+   */
+  protected static long headerSize(int numBands) {
+    return MAGIC.length() + 1 + 5 * 4 + 2 * 8 + numBands * 4L;
+  }
+
+  /**
+   * Returns the sidecar file for the .hdr file.
+   *
+   * @param hdrFile	the .hdr file
+   * @return		the overview file
+   */
+  public static File sidecar(File hdrFile) {
+    return FileUtils.replaceExtension(hdrFile, EXTENSION);
+  }
+
+  /**
+   * Reduces the 2x2 blocks of one or two rows into a row of the next level.
+   *
+   * @param src		the source values
+   * @param top		the offset of the top row
+   * @param bottom	the offset of the bottom row, -1 if none
+   * @param samples	the number of samples in the source rows
+   * @param dst		the array to store the reduced values in
+   * @param offset	the offset in the destination array
+   * @param resampling	the resampling to use
+   */
+  protected static void reduceRows(float[] src, int top, int bottom, int samples, float[] dst, int offset, Resampling resampling) {
+    float	value;
+    float	sum;
+    int		count;
+    int		s;
+    int		i;
+    int		n;
+
+    for (s = 0, n = offset; s < samples; s += 2, n++) {
+      if (resampling == Resampling.NEAREST) {
+	dst[n] = src[top + s];
+	continue;
+      }
+      sum   = 0;
+      count = 0;
+      for (i = 0; i < 4; i++) {
+	if ((i % 2 == 1) && (s + 1 >= samples))
+	  continue;
+	if ((i >= 2) && (bottom == -1))
+	  continue;
+	value = src[(i < 2 ? top : bottom) + s + (i % 2)];
+	if (Float.isNaN(value))
+	  continue;
+	sum += value;
+	count++;
+      }
+      dst[n] = (count == 0) ? Float.NaN : sum / count;
+    }
+  }
+
+  /**
+   * Generates the overviews for the specified bands and writes them to the file.
+   * Length and timestamp of the data file of the dataset get stored as well.
+   *
+   * @param dataset	the dataset to generate the overviews for
+   * @param bands	the bands to generate the overviews for
+   * @param levels	the number of levels to generate (at least 1)
+   * @param resampling	the resampling to use
+   * @param output	the file to write the overviews to
+   * @return		the overviews
+   * @throws IOException	if writing fails
+   * @see		#sidecar(File)
+   */
+  public static Overviews build(AbstractDataset dataset, int[] bands, int levels, Resampling resampling, File output) throws IOException {
+    float[]	rows;
+    float[]	current;
+    float[]	next;
+    File	dataFile;
+    long	dataLength;
+    long	dataModified;
+    int		lines;
+    int		samples;
+    int		level;
+    int		l;
+
+    if ((levels < 1) || (levels > 30))
+      throw new IllegalArgumentException("Number of levels must be within [1, 30]: " + levels);
+    for (int band: bands) {
+      if ((band < 0) || (band >= dataset.getBands()))
+	throw new IllegalArgumentException("Invalid band index: " + band);
+    }
+
+    lines        = dataset.getLines();
+    samples      = dataset.getSamples();
+    dataFile     = dataset.getFile();
+    dataLength   = (dataFile == null) ? -1 : dataFile.length();
+    dataModified = (dataFile == null) ? -1 : dataFile.lastModified();
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(output)))) {
+      out.write(MAGIC.getBytes(StandardCharsets.US_ASCII));
+      out.writeByte(VERSION);
+      out.writeInt(lines);
+      out.writeInt(samples);
+      out.writeInt(levels);
+      out.writeInt(bands.length);
+      out.writeInt(resampling.ordinal());
+      out.writeLong(dataLength);
+      out.writeLong(dataModified);
+      for (int band: bands)
+	out.writeInt(band);
+
+      rows = new float[2 * samples];
+      for (int band: bands) {
+	// level 1 gets reduced from the full resolution data, two lines at a time
+	current = new float[size(lines, samples, 1)];
+	for (l = 0; l < lines; l += 2) {
+	  dataset.decodeLine(band, l, rows, 0);
+	  if (l + 1 < lines)
+	    dataset.decodeLine(band, l + 1, rows, samples);
+	  reduceRows(rows, 0, (l + 1 < lines) ? samples : -1, samples, current, (l / 2) * reduce(samples, 1), resampling);
+	}
+	write(out, current);
+
+	// the other levels get reduced from the previous one
+	for (level = 2; level <= levels; level++) {
+	  next = new float[size(lines, samples, level)];
+	  for (l = 0; l < reduce(lines, level - 1); l += 2)
+	    reduceRows(
+	      current, l * reduce(samples, level - 1),
+	      (l + 1 < reduce(lines, level - 1)) ? (l + 1) * reduce(samples, level - 1) : -1,
+	      reduce(samples, level - 1), next, (l / 2) * reduce(samples, level), resampling);
+	  write(out, next);
+	  current = next;
+	}
+      }
+    }
+
+    return new Overviews(output, lines, samples, levels, bands.clone(), resampling, dataLength, dataModified);
+  }
+
+  /**
+   * Writes the values to the stream.
+   *
+   * @param out		the stream to write to
+   * @param values	the values to write
+   * @throws IOException	if writing fails
+   */
+  protected static void write(DataOutputStream out, float[] values) throws IOException {
+    ByteBuffer	buffer;
+
+    buffer = ByteBuffer.allocate(values.length * 4);
+    buffer.asFloatBuffer().put(values);
+    out.write(buffer.array());
+  }
+
+  /**
+   * Reads the overviews from the specified sidecar file, without checking
+   * whether they are up to date.
+   *
+   * @param input	the file to read
+   * @return		the overviews
+   * @throws IOException	if reading fails or not an overview file
+   * @see		#read(File, File)
+   */
+  public static Overviews read(File input) throws IOException {
+    byte[]		magic;
+    int			lines;
+    int			samples;
+    int			levels;
+    int[]		bands;
+    Resampling		resampling;
+    long		dataLength;
+    long		dataModified;
+    int			i;
+
+    try (DataInputStream in = new DataInputStream(new FileInputStream(input))) {
+      magic = new byte[MAGIC.length()];
+      in.readFully(magic);
+      if (!MAGIC.equals(new String(magic, StandardCharsets.US_ASCII)))
+	throw new IOException("Not an overview file: " + input);
+      if (in.readByte() != VERSION)
+	throw new IOException("Unsupported overview file version: " + input);
+      lines        = in.readInt();
+      samples      = in.readInt();
+      levels       = in.readInt();
+      bands        = new int[in.readInt()];
+      resampling   = Resampling.values()[in.readInt()];
+      dataLength   = in.readLong();
+      dataModified = in.readLong();
+      for (i = 0; i < bands.length; i++)
+	bands[i] = in.readInt();
+    }
+
+    return new Overviews(input, lines, samples, levels, bands, resampling, dataLength, dataModified);
+  }
+
+  /**
+   * Reads the overviews from the specified sidecar file, making sure that
+   * they were generated from the data file in its current state.
+   *
+   * @param input	the file to read
+   * @param dataFile	the data file the overviews belong to
+   * @return		the overviews
+   * @throws IOException	if reading fails, not an overview file or out of date
+   * @see		#matches(File)
+   */
+  public static Overviews read(File input, File dataFile) throws IOException {
+    Overviews	result;
+
+    result = read(input);
+    if (!result.matches(dataFile)) {
+      result.close();
+      throw new IOException("Overviews are out of date (data file length/timestamp differ): " + input);
+    }
+
+    return result;
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * PixelSpliterator.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package envi4j.dataset;
+
+import java.nio.ByteBuffer;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Spliterator over the spectra of all pixels of a dataset (line -> sample).
+ * Splits by ranges of lines to keep the reads local. Each spliterator
+ * reuses a single spectrum buffer, i.e., the array handed to the consumer
+ * gets overwritten with the next pixel and must not be retained.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ * @see AbstractDataset#pixels()
+ */
+public class PixelSpliterator
+  implements Spliterator<float[]> {
+
+  /** the dataset to iterate. */
+  protected AbstractDataset m_Dataset;
+
+  /** the current line. */
+  protected int m_Line;
+
+  /** the current sample within the line. */
+  protected int m_Sample;
+
+  /** the last line (excl). */
+  protected int m_ToLine;
+
+  /** the bytes of the current line (all bands). */
+  protected ByteBuffer m_Block;
+
+  /** the spectrum buffer. */
+  protected float[] m_Spectrum;
+
+  /**
+   * Initializes the spliterator for all lines.
+   *
+   * @param dataset	the dataset to iterate
+   */
+  public PixelSpliterator(AbstractDataset dataset) {
+    this(dataset, 0, dataset.getLines());
+  }
+
+  /**
+   * Initializes the spliterator for the range of lines.
+   *
+   * @param dataset	the dataset to iterate
+   * @param fromLine	the first line (incl)
+   * @param toLine	the last line (excl)
+   */
+  public PixelSpliterator(AbstractDataset dataset, int fromLine, int toLine) {
+    m_Dataset  = dataset;
+    m_Line     = fromLine;
+    m_Sample   = 0;
+    m_ToLine   = toLine;
+    m_Block    = null;
+    m_Spectrum = new float[dataset.getBands()];
+  }
+
+  /**
+   * Decodes the spectrum of the current pixel into the buffer and advances.
+   */
+  protected void decodeNext() {
+    int		start;
+    int		bandStride;
+    int		b;
+
+    if (m_Block == null)
+      m_Block = m_Dataset.lineBlock(m_Line);
+
+    start      = m_Sample * m_Dataset.lineBlockSampleStride();
+    bandStride = m_Dataset.lineBlockBandStride();
+    for (b = 0; b < m_Spectrum.length; b++)
+      m_Spectrum[b] = (float) m_Dataset.decode(m_Block, start + b * bandStride);
+
+    m_Sample++;
+    if (m_Sample == m_Dataset.getSamples()) {
+      m_Sample = 0;
+      m_Line++;
+      m_Block  = null;
+    }
+  }
+
+  /**
+   * Passes the spectrum of the next pixel to the consumer, if available.
+   *
+   * @param action	the consumer
+   * @return		true if a pixel was available
+   */
+  @Override
+  public boolean tryAdvance(Consumer<? super float[]> action) {
+    if (m_Line >= m_ToLine)
+      return false;
+
+    decodeNext();
+    action.accept(m_Spectrum);
+
+    return true;
+  }
+
+  /**
+   * Passes the spectra of all remaining pixels to the consumer.
+   *
+   * @param action	the consumer
+   */
+  @Override
+  public void forEachRemaining(Consumer<? super float[]> action) {
+    while (m_Line < m_ToLine) {
+      decodeNext();
+      action.accept(m_Spectrum);
+    }
+  }
+
+  /**
+   * Splits off the first half of the remaining lines, as long as iteration
+   * hasn't started within a line and there are at least two lines left.
+   *
+   * @return		the spliterator for the first half, null if not split
+   */
+  @Override
+  public Spliterator<float[]> trySplit() {
+    PixelSpliterator	result;
+    int			mid;
+
+    if ((m_Sample != 0) || (m_ToLine - m_Line < 2))
+      return null;
+
+    mid    = (m_Line + m_ToLine) >>> 1;
+    result = new PixelSpliterator(m_Dataset, m_Line, mid);
+    m_Line = mid;
+
+    return result;
+  }
+
+  /**
+   * Returns the number of remaining pixels.
+   *
+   * @return		the number of pixels
+   */
+  @Override
+  public long estimateSize() {
+    return (long) (m_ToLine - m_Line) * m_Dataset.getSamples() - m_Sample;
+  }
+
+  /**
+   * Returns the characteristics.
+   *
+   * @return		the characteristics
+   */
+  @Override
+  public int characteristics() {
+    return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+  }
+}
@@ -0,0 +1,284 @@
+/*
+ * QuantileSketch.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package envi4j.dataset;
+
+import java.io.Serializable;
+
+/**
+ * Streaming approximation of the distribution of values, using buckets on a
+ * logarithmic scale (separately for positive and negative values). Any
+ * quantile is within the relative accuracy of the true value, as long as
+ * the magnitudes span no more than {@link #MAX_BUCKETS} buckets; otherwise
+ * the buckets of the smallest magnitudes get merged. The memory is fixed,
+ * regardless of the number of values, and outliers don't affect the
+ * resolution for the bulk of the values.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ * @see BandStatistics
+ */
+public class QuantileSketch
+  implements Serializable {
+
+  /** the default relative accuracy. */
+  public final static double DEFAULT_ACCURACY = 0.005;
+
+  /** the maximum number of buckets per sign. */
+  public final static int MAX_BUCKETS = 4096;
+
+  /**
+   * Buckets for the magnitudes of one sign, covering a contiguous range of
+   * bucket indices.
+   */
+  protected static class Buckets
+    implements Serializable {
+
+    /** the counts. */
+    protected long[] m_Counts;
+
+    /** the bucket index of the first element in the counts. */
+    protected int m_Offset;
+
+    /** the smallest bucket index in use. */
+    protected int m_Min;
+
+    /** the largest bucket index in use. */
+    protected int m_Max;
+
+    /** the total count. */
+    protected long m_Total;
+
+    /**
+     * Increments the count of the bucket.
+     *
+     * @param index	the bucket index
+     */
+    public void add(int index) {
+      long	collapsed;
+      int	newMin;
+      int	i;
+
+      if (m_Total == 0) {
+	m_Min = index;
+	m_Max = index;
+	ensureRange(index, index);
+      }
+      else if (index < m_Min) {
+	if (m_Max - index >= MAX_BUCKETS)
+	  index = m_Max - MAX_BUCKETS + 1;
+	ensureRange(index, m_Max);
+	m_Min = Math.min(m_Min, index);
+      }
+      else if (index > m_Max) {
+	if (index - m_Min >= MAX_BUCKETS) {
+	  // merge the buckets of the smallest magnitudes
+	  newMin    = index - MAX_BUCKETS + 1;
+	  collapsed = 0;
+	  for (i = m_Min; (i < newMin) && (i <= m_Max); i++) {
+	    collapsed += m_Counts[i - m_Offset];
+	    m_Counts[i - m_Offset] = 0;
+	  }
+	  m_Min = newMin;
+	  ensureRange(newMin, index);
+	  m_Counts[newMin - m_Offset] += collapsed;
+	}
+	else {
+	  ensureRange(m_Min, index);
+	}
+	m_Max = index;
+      }
+
+      m_Counts[index - m_Offset]++;
+      m_Total++;
+    }
+
+    /**
+     * Makes sure that the counts cover the range of bucket indices.
+     *
+     * @param lo	the smallest index (incl)
+     * @param hi	the largest index (incl)
+     */
+    protected void ensureRange(int lo, int hi) {
+      long[]	counts;
+      int	i;
+
+      if ((m_Counts != null) && (lo >= m_Offset) && (hi < m_Offset + m_Counts.length))
+	return;
+
+      counts = new long[Math.min(MAX_BUCKETS, Math.max(hi - lo + 1, (m_Counts == null) ? 64 : m_Counts.length * 2))];
+      // leave room on both sides
+      lo -= (counts.length - (hi - lo + 1)) / 2;
+      if (m_Counts != null) {
+	for (i = Math.max(m_Min, lo); (i <= m_Max) && (i < lo + counts.length); i++)
+	  counts[i - lo] = m_Counts[i - m_Offset];
+      }
+      m_Counts = counts;
+      m_Offset = lo;
+    }
+
+    /**
+     * Returns the count of the bucket.
+     *
+     * @param index	the bucket index
+     * @return		the count
+     */
+    public long get(int index) {
+      return m_Counts[index - m_Offset];
+    }
+  }
+
+  /** the relative accuracy. */
+  protected double m_Accuracy;
+
+  /** the ratio between the bounds of a bucket. */
+  protected double m_Gamma;
+
+  /** the logarithm of gamma. */
+  protected double m_LogGamma;
+
+  /** the positive values. */
+  protected Buckets m_Positive;
+
+  /** the negative values. */
+  protected Buckets m_Negative;
+
+  /** the number of zeros (and magnitudes too small to index). */
+  protected long m_ZeroCount;
+
+  /**
+   * Initializes the sketch with the default accuracy.
+   *
+   * @see #DEFAULT_ACCURACY
+   */
+  public QuantileSketch() {
+    this(DEFAULT_ACCURACY);
+  }
+
+  /**
+   * Initializes the sketch.
+   *
+   * @param accuracy	the relative accuracy, within (0, 1)
+   */
+  public QuantileSketch(double accuracy) {
+    if ((accuracy <= 0) || (accuracy >= 1))
+      throw new IllegalArgumentException("Accuracy must be within (0, 1): " + accuracy);
+    m_Accuracy  = accuracy;
+    m_Gamma     = (1 + accuracy) / (1 - accuracy);
+    m_LogGamma  = Math.log(m_Gamma);
+    m_Positive  = new Buckets();
+    m_Negative  = new Buckets();
+    m_ZeroCount = 0;
+  }
+
+  /**
+   * Returns the relative accuracy.
+   *
+   * @return		the accuracy
+   */
+  public double getAccuracy() {
+    return m_Accuracy;
+  }
+
+  /**
+   * Adds the finite value.
+   *
+   * @param value	the value to add
+   */
+  public void add(double value) {
+    if (!Double.isFinite(value))
+      throw new IllegalArgumentException("Value must be finite: " + value);
+    if (value >= Double.MIN_NORMAL)
+      m_Positive.add(index(value));
+    else if (value <= -Double.MIN_NORMAL)
+      m_Negative.add(index(-value));
+    else
+      m_ZeroCount++;
+  }
+
+  /**
+   * Returns the number of values that were added.
+   *
+   * @return		the count
+   */
+  public long getCount() {
+    return m_Negative.m_Total + m_ZeroCount + m_Positive.m_Total;
+  }
+
+  /**
+   * Returns the bucket index for the positive value.
+   *
+   * @param value	the value
+   * @return		the index
+   */
+  protected int index(double value) {
+    return (int) Math.ceil(Math.log(value) / m_LogGamma);
+  }
+
+  /**
+   * Returns the value that represents the bucket.
+   *
+   * @param index	the bucket index
+   * @return		the value
+   */
+  protected double value(int index) {
+    return 2 * Math.exp(index * m_LogGamma) / (1 + m_Gamma);
+  }
+
+  /**
+   * Returns the approximate value below which the specified fraction of the
+   * values fall.
+   *
+   * @param fraction	the fraction (0-1)
+   * @return		the value, NaN if no values
+   */
+  public double getQuantile(double fraction) {
+    long	rank;
+    long	cumulative;
+    int		i;
+
+    if (getCount() == 0)
+      return Double.NaN;
+
+    rank       = (long) (fraction * (getCount() - 1));
+    cumulative = 0;
+    if (m_Negative.m_Total > 0) {
+      for (i = m_Negative.m_Max; i >= m_Negative.m_Min; i--) {
+	cumulative += m_Negative.get(i);
+	if (cumulative > rank)
+	  return -value(i);
+      }
+    }
+    cumulative += m_ZeroCount;
+    if ((cumulative > rank) || (m_Positive.m_Total == 0))
+      return 0;
+    for (i = m_Positive.m_Min; i < m_Positive.m_Max; i++) {
+      cumulative += m_Positive.get(i);
+      if (cumulative > rank)
+	return value(i);
+    }
+
+    return value(m_Positive.m_Max);
+  }
+
+  /**
+   * Distributes the counts of the buckets across the histogram, using the
+   * values that represent the buckets.
+   *
+   * @param stats	the statistics whose histogram to fill
+   */
+  protected void fillHistogram(BandStatistics stats) {
+    int		i;
+
+    if (m_Negative.m_Total > 0) {
+      for (i = m_Negative.m_Min; i <= m_Negative.m_Max; i++)
+	stats.m_Histogram[stats.getBin(-value(i))] += m_Negative.get(i);
+    }
+    stats.m_Histogram[stats.getBin(0)] += m_ZeroCount;
+    if (m_Positive.m_Total > 0) {
+      for (i = m_Positive.m_Min; i <= m_Positive.m_Max; i++)
+	stats.m_Histogram[stats.getBin(value(i))] += m_Positive.get(i);
+    }
+  }
+}
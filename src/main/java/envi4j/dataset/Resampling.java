@@ -0,0 +1,19 @@
+/*
+ * Resampling.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package envi4j.dataset;
+
+/**
+ * How to reduce 2x2 blocks of pixels when generating overviews.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ * @see Overviews
+ */
+public enum Resampling {
+  /** the mean of the (non-NaN) values in the block. */
+  MEAN,
+  /** the value of the top-left pixel of the block. */
+  NEAREST;
+}
@@ -0,0 +1,214 @@
+/*
+ * TiledRenderer.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package envi4j.dataset;
+
+import envi4j.header.HeaderField;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Renders images of a dataset tile by tile, with the tiles being processed
+ * in parallel using the pool of the dataset. Each tile only reads the
+ * region of the bands that it needs and writes the stretched values directly
+ * into the shared raster of the image. Apart from the image itself, the
+ * memory requirements of the rendering therefore depend on tile size and
+ * number of threads rather than the size of the scene.
+ * <br>
+ * Unless the value ranges get supplied or the stretch uses fixed values,
+ * the ranges are determined from the band statistics. Computing these
+ * (once, they get cached by the dataset) requires an additional pass over
+ * each band, which streams the band line by line with memory independent
+ * of the scene size.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ * @see AbstractDataset#setParallelism(int)
+ * @see AbstractDataset#getStretch()
+ */
+public class TiledRenderer {
+
+  /** the default tile size (width and height). */
+  public final static int DEFAULT_TILE_SIZE = 512;
+
+  /** the dataset to render. */
+  protected AbstractDataset m_Dataset;
+
+  /** the tile size. */
+  protected int m_TileSize;
+
+  /**
+   * Initializes the renderer with the default tile size.
+   *
+   * @param dataset	the dataset to render
+   */
+  public TiledRenderer(AbstractDataset dataset) {
+    this(dataset, DEFAULT_TILE_SIZE);
+  }
+
+  /**
+   * Initializes the renderer.
+   *
+   * @param dataset	the dataset to render
+   * @param tileSize	the width and height of the tiles
+   */
+  public TiledRenderer(AbstractDataset dataset, int tileSize) {
+    if (dataset == null)
+      throw new IllegalArgumentException("Dataset cannot be null!");
+    if (tileSize < 1)
+      throw new IllegalArgumentException("Tile size must be at least 1: " + tileSize);
+
+    m_Dataset  = dataset;
+    m_TileSize = tileSize;
+  }
+
+  /**
+   * Returns the dataset.
+   *
+   * @return		the dataset
+   */
+  public AbstractDataset getDataset() {
+    return m_Dataset;
+  }
+
+  /**
+   * Returns the tile size.
+   *
+   * @return		the width and height of the tiles
+   */
+  public int getTileSize() {
+    return m_TileSize;
+  }
+
+  /**
+   * Returns the tiles covering the dataset.
+   *
+   * @return		the tiles (x=sample, y=line)
+   */
+  protected List<Rectangle> tiles() {
+    List<Rectangle>	result;
+    int			lines;
+    int			samples;
+    int			l;
+    int			s;
+
+    result  = new ArrayList<>();
+    lines   = m_Dataset.getLines();
+    samples = m_Dataset.getSamples();
+    for (l = 0; l < lines; l += m_TileSize) {
+      for (s = 0; s < samples; s += m_TileSize)
+	result.add(new Rectangle(s, l, Math.min(m_TileSize, samples - s), Math.min(m_TileSize, lines - l)));
+    }
+
+    return result;
+  }
+
+  /**
+   * Processes the tiles in parallel.
+   *
+   * @param tile	the code to apply to each tile
+   */
+  protected void process(Consumer<Rectangle> tile) {
+    List<Rectangle>	tiles;
+
+    tiles = tiles();
+    m_Dataset.getPool().submit(() -> tiles.parallelStream().forEach(tile)).join();
+  }
+
+  /**
+   * Turns the three bands defined as default bands into an RGB image.
+   *
+   * @return		the generated image
+   */
+  public BufferedImage toRGB() {
+    int[]	defaultBands;
+
+    defaultBands = m_Dataset.getHeader().getIntArray(HeaderField.DEFAULT_BANDS);
+    if (defaultBands == null)
+      throw new IllegalStateException("No default bands defined!");
+
+    return toRGB(defaultBands[0], defaultBands[1], defaultBands[2]);
+  }
+
+  /**
+   * Turns the three bands into an RGB image.
+   *
+   * @param r		the band to act as red channel
+   * @param g		the band to act as green channel
+   * @param b		the band to act as blue channel
+   * @return		the generated image
+   */
+  public BufferedImage toRGB(int r, int g, int b) {
+    if (m_Dataset.getStretch().requiresStatistics())
+      m_Dataset.getStatistics(new int[]{r, g, b});
+
+    return toRGB(r, g, b, m_Dataset.stretchRange(r), m_Dataset.stretchRange(g), m_Dataset.stretchRange(b));
+  }
+
+  /**
+   * Turns the three bands into an RGB image, using the supplied value ranges
+   * for stretching (no statistics get computed).
+   *
+   * @param r		the band to act as red channel
+   * @param g		the band to act as green channel
+   * @param b		the band to act as blue channel
+   * @param rangeRed	the lower and upper value of the red channel
+   * @param rangeGreen	the lower and upper value of the green channel
+   * @param rangeBlue	the lower and upper value of the blue channel
+   * @return		the generated image
+   */
+  public BufferedImage toRGB(int r, int g, int b, double[] rangeRed, double[] rangeGreen, double[] rangeBlue) {
+    BufferedImage	result;
+    int[]		pixels;
+    int			scanline;
+
+    scanline = m_Dataset.getSamples();
+    result   = new BufferedImage(scanline, m_Dataset.getLines(), BufferedImage.TYPE_INT_RGB);
+    pixels   = ((DataBufferInt) result.getRaster().getDataBuffer()).getData();
+    process(tile -> {
+      m_Dataset.renderChannel(r, rangeRed, 16, tile, pixels, scanline);
+      m_Dataset.renderChannel(g, rangeGreen, 8, tile, pixels, scanline);
+      m_Dataset.renderChannel(b, rangeBlue, 0, tile, pixels, scanline);
+    });
+
+    return result;
+  }
+
+  /**
+   * Turns the specified band into a grayscale image.
+   *
+   * @param band	the band to use
+   * @return		the generated image
+   */
+  public BufferedImage toGray(int band) {
+    return toGray(band, m_Dataset.stretchRange(band));
+  }
+
+  /**
+   * Turns the specified band into a grayscale image, using the supplied
+   * value range for stretching (no statistics get computed).
+   *
+   * @param band	the band to use
+   * @param range	the lower and upper value
+   * @return		the generated image
+   */
+  public BufferedImage toGray(int band, double[] range) {
+    BufferedImage	result;
+    byte[]		pixels;
+    int			scanline;
+
+    scanline = m_Dataset.getSamples();
+    result   = new BufferedImage(scanline, m_Dataset.getLines(), BufferedImage.TYPE_BYTE_GRAY);
+    pixels   = ((DataBufferByte) result.getRaster().getDataBuffer()).getData();
+    process(tile -> m_Dataset.renderGray(band, range, tile, pixels, scanline));
+
+    return result;
+  }
+}
@@ -6,14 +6,20 @@
 package envi4j.dataset;
 
 import envi4j.core.Utils;
-import envi4j.header.ByteOrder;
 import envi4j.header.DataType;
 import envi4j.header.Header;
+import envi4j.storage.Storage;
 
-import java.awt.image.BufferedImage;
+import java.awt.Rectangle;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
 
 /**
  * Dataset implementation for {@link envi4j.header.DataType#UINT16}.
+ * <br>
+ * Runs of consecutive values (lines in BSQ/BIL, spectra in BIP) get copied
+ * in bulk through a {@link ShortBuffer} view, which handles either byte
+ * order, and then masked to int in a simple loop that the JIT can vectorise.
  *
  * @author fracpete (fracpete at waikato dot ac dot nz)
  */
@@ -32,6 +38,17 @@ public class UInt16Dataset
     super(header, raw, quiet);
   }
 
+  /**
+   * Initializes the dataset.
+   *
+   * @param header	the meta-data
+   * @param storage 	the storage with the raw data
+   * @param quiet	whether to suppress warnings/errors
+   */
+  public UInt16Dataset(Header header, Storage storage, boolean quiet) {
+    super(header, storage, quiet);
+  }
+
   /**
    * The data type this dataset handles.
    *
@@ -42,6 +59,18 @@ public class UInt16Dataset
     return DataType.UINT16;
   }
 
+  /**
+   * Decodes the value at the specified position in the buffer.
+   *
+   * @param bb		the buffer to decode from, using the byte order of the data
+   * @param index	the position of the first byte of the value
+   * @return		the value
+   */
+  @Override
+  protected double decode(ByteBuffer bb, int index) {
+    return bb.getShort(index) & 0xFFFF;
+  }
+
   /**
    * Returns the band as matrix.
    *
@@ -50,146 +79,265 @@ public class UInt16Dataset
    */
   @Override
   public int[][] getBand(int band) {
-    int[][]	result;
-    byte[]	seq;
-    int		s;
-    int		i;
-    int		n;
-    int		v;
-
-    result = new int[m_Lines][m_Samples];
-    seq    = toBand(band);
-    s      = 0;
-
-    if (getByteOrder() == ByteOrder.LITTLE_ENDIAN) {
-      for (n = 0; n < m_Lines; n++) {
-        for (i = 0; i < m_Samples; i++) {
-          v = (seq[s] & 0XFF) << 8
-            + (seq[s + 1] & 0XFF);
-          result[n][i] = v;
-          s += 2;
-        }
-      }
-    }
-    else {
-      throw new IllegalStateException("Not supported: " + getByteOrder());
-    }
+    return Utils.toMatrix(getBandFlat(band), m_Lines, m_Samples);
+  }
+
+  /**
+   * Returns the band as flat array in row-major order (line -> sample).
+   *
+   * @param band	the band to retrieve
+   * @return		the values
+   */
+  @Override
+  public int[] getBandFlat(int band) {
+    int[]	result;
+
+    result = new int[bandSize()];
+    getBandInto(band, result);
 
     return result;
   }
 
   /**
-   * Turns the specified band into a string representation.
+   * Fills the supplied array with the band in row-major order (line -> sample).
+   * Decodes the values directly from the storage, one line at a time,
+   * unless the band is available from the band cache.
    *
-   * @param band  	the band to convert
-   * @return		the generated string representation
+   * @param band	the band to retrieve
+   * @param dst		the array to fill, must have at least lines*samples elements
    */
   @Override
-  public String toString(int band, int max) {
-    return Utils.arrayToString(getBand(band), max);
+  public void getBandInto(int band, int[] dst) {
+    short[]	scratch;
+    int		stride;
+    int		l;
+
+    checkBand(band);
+    checkBuffer(dst.length, bandSize());
+    if (fromBandCache(band, dst))
+      return;
+
+    stride  = m_Layout.getSampleStride();
+    scratch = new short[m_Samples];
+    for (l = 0; l < m_Lines; l++)
+      decodeUnsigned(lineView(band, l), stride, m_Samples, scratch, dst, l * m_Samples);
+
+    toBandCache(band, dst, bandSize());
+  }
+
+  /**
+   * Returns the values of all bands of the specified pixel.
+   *
+   * @param line	the line of the pixel
+   * @param sample	the sample of the pixel
+   * @return		the spectrum
+   */
+  @Override
+  public int[] getSpectrum(int line, int sample) {
+    int[]	result;
+
+    result = new int[m_Bands];
+    getSpectrumInto(line, sample, result);
+
+    return result;
+  }
+
+  /**
+   * Fills the supplied array with the values of all bands of the specified pixel.
+   *
+   * @param line	the line of the pixel
+   * @param sample	the sample of the pixel
+   * @param dst		the array to fill, must have at least bands elements
+   */
+  @Override
+  public void getSpectrumInto(int line, int sample, int[] dst) {
+    ByteBuffer	bb;
+    int		stride;
+    int		b;
+
+    checkBuffer(dst.length, m_Bands);
+    checkPixel(line, sample);
+    bb     = spectrumView(line, sample);
+    stride = spectrumStride(line, sample);
+    if (stride == 2) {
+      decodeUnsigned(bb, stride, m_Bands, new short[m_Bands], dst, 0);
+      return;
+    }
+    for (b = 0; b < m_Bands; b++)
+      dst[b] = bb.getShort(b * stride) & 0xFFFF;
   }
 
   /**
-   * Turns the specified band into a grayscale image.
+   * Returns the spectra of all pixels in the range of lines as flat array
+   * (line -> sample -> band), i.e., the spectrum of pixel (line, sample)
+   * starts at ((line - fromLine) * samples + sample) * bands.
    *
-   * @param band	the band to use
-   * @return		the generated image
+   * @param fromLine	the first line (incl)
+   * @param toLine	the last line (excl)
+   * @return		the spectra
    */
   @Override
-  public BufferedImage toGray(int band) {
-    BufferedImage	result;
-    int[][]		data;
-    double[]		minAndMax;
-    double		min;
-    double		range;
-    int[] 		pixels;
-    int			i;
-    int			n;
-    int			p;
-
-    pixels    = new int[m_Lines * m_Samples];
-    data      = getBand(band);
-    minAndMax = Utils.minAndMax(data);
-    min       = minAndMax[0];
-    range     = minAndMax[1] - minAndMax[0];
-
-    if (range > 0) {
-      for (n = 0; n < m_Lines; n++) {
-        for (i = 0; i < m_Samples; i++) {
-          p = (int) ((data[n][i] - min) / range * 255);
-          pixels[n*m_Samples + i] = p << 16 + p << 8 + p;
-        }
+  public int[] getSpectra(int fromLine, int toLine) {
+    int[]	result;
+    short[]	scratch;
+    ByteBuffer	bb;
+    int		sampleStride;
+    int		bandStride;
+    int		l;
+    int		s;
+    int		b;
+    int		o;
+
+    result       = new int[spectraSize(fromLine, toLine)];
+    sampleStride = lineBlockSampleStride();
+    bandStride   = lineBlockBandStride();
+    o            = 0;
+    if ((bandStride == 2) && (sampleStride == 2 * m_Bands)) {
+      scratch = new short[m_Samples * m_Bands];
+      for (l = fromLine; l < toLine; l++, o += scratch.length)
+	decodeUnsigned(lineBlock(l), bandStride, scratch.length, scratch, result, o);
+      return result;
+    }
+    for (l = fromLine; l < toLine; l++) {
+      bb = lineBlock(l);
+      for (s = 0; s < m_Samples; s++) {
+	for (b = 0; b < m_Bands; b++)
+	  result[o++] = bb.getShort(s * sampleStride + b * bandStride) & 0xFFFF;
       }
     }
 
-    result = new BufferedImage(m_Samples, m_Lines, BufferedImage.TYPE_BYTE_GRAY);
-    result.setRGB(0, 0, m_Samples, m_Lines, pixels, 0, m_Samples);
+    return result;
+  }
+
+  /**
+   * Returns the region of the band as flat array in row-major order (line -> sample).
+   *
+   * @param band	the band to retrieve
+   * @param line	the first line of the region
+   * @param sample	the first sample of the region
+   * @param height	the number of lines
+   * @param width	the number of samples
+   * @return		the values
+   */
+  @Override
+  public int[] getRegion(int band, int line, int sample, int height, int width) {
+    int[]	result;
+
+    result = new int[regionSize(line, sample, height, width)];
+    getRegionInto(band, line, sample, height, width, result);
 
     return result;
   }
 
   /**
-   * Turns the three bands into an RGB image.
+   * Fills the supplied array with the region of the band in row-major order (line -> sample).
+   * Only reads the bytes that overlap with the region, one line at a time.
    *
-   * @param r		the band to act as red channel
-   * @param g		the band to act as green channel
-   * @param b		the band to act as blue channel
-   * @return		the generated image
+   * @param band	the band to retrieve
+   * @param line	the first line of the region
+   * @param sample	the first sample of the region
+   * @param height	the number of lines
+   * @param width	the number of samples
+   * @param dst		the array to fill, must have at least height*width elements
    */
   @Override
-  public BufferedImage toRGB(int r, int g, int b) {
-    BufferedImage	result;
-    int[][]		red;
-    int[][]		green;
-    int[][]		blue;
-    double[] 		minAndMaxRed;
-    double[] 		minAndMaxGreen;
-    double[] 		minAndMaxBlue;
-    double 		minRed;
-    double 		minGreen;
-    double 		minBlue;
-    double 		rangeRed;
-    double 		rangeGreen;
-    double 		rangeBlue;
-    int[] 		pixels;
-    int			i;
-    int			n;
-    int 		pRed;
-    int 		pGreen;
-    int 		pBlue;
-
-    pixels         = new int[m_Lines * m_Samples];
-    red            = getBand(r);
-    green          = getBand(g);
-    blue           = getBand(b);
-    minAndMaxRed   = Utils.minAndMax(red);
-    minAndMaxGreen = Utils.minAndMax(green);
-    minAndMaxBlue  = Utils.minAndMax(blue);
-    minRed         = minAndMaxRed[0];
-    minGreen       = minAndMaxGreen[0];
-    minBlue        = minAndMaxBlue[0];
-    rangeRed       = minAndMaxRed[1] - minAndMaxRed[0];
-    rangeGreen     = minAndMaxGreen[1] - minAndMaxGreen[0];
-    rangeBlue      = minAndMaxBlue[1] - minAndMaxBlue[0];
-
-    System.out.println("R: " + minRed + ", " + rangeRed);
-    System.out.println("G: " + minGreen + ", " + rangeGreen);
-    System.out.println("B: " + minBlue + ", " + rangeBlue);
-
-    if (rangeRed > 0) {
-      for (n = 0; n < m_Lines; n++) {
-        for (i = 0; i < m_Samples; i++) {
-          pRed   = (int) ((red[n][i] - minRed) / rangeRed * 255);
-          pGreen = (int) ((green[n][i] - minGreen) / rangeGreen * 255);
-          pBlue  = (int) ((blue[n][i] - minBlue) / rangeBlue * 255);
-          pixels[n*m_Samples + i] = pRed << 16 + pGreen << 8 + pBlue;
-        }
-      }
+  public void getRegionInto(int band, int line, int sample, int height, int width, int[] dst) {
+    short[]	scratch;
+    int		stride;
+    int		l;
+
+    checkBand(band);
+    checkBuffer(dst.length, regionSize(line, sample, height, width));
+    stride  = m_Layout.getSampleStride();
+    scratch = new short[width];
+    for (l = line; l < line + height; l++)
+      decodeUnsigned(lineView(band, l, sample, width), stride, width, scratch, dst, (l - line) * width);
+  }
+
+  /**
+   * Decodes the values of the line of the band into the buffer.
+   *
+   * @param band	the band
+   * @param line	the line
+   * @param dst		the buffer to fill
+   * @param offset	the offset in the buffer
+   */
+  @Override
+  protected void decodeLine(int band, int line, float[] dst, int offset) {
+    ByteBuffer	bb;
+    ShortBuffer	sb;
+    int		stride;
+    int		i;
+
+    bb     = lineView(band, line);
+    stride = m_Layout.getSampleStride();
+    if (stride == 2) {
+      sb = bb.asShortBuffer();
+      for (i = 0; i < m_Samples; i++)
+	dst[offset + i] = sb.get(i) & 0xFFFF;
+    }
+    else {
+      for (i = 0; i < m_Samples; i++)
+	dst[offset + i] = bb.getShort(i * stride) & 0xFFFF;
     }
+  }
+
+  /**
+   * Returns the region for each of the specified bands.
+   *
+   * @param bands	the bands to retrieve
+   * @param region	the region (x=sample, y=line)
+   * @return		the values, one flat array (line -> sample) per band
+   */
+  @Override
+  public int[][] getSubcube(int[] bands, Rectangle region) {
+    int[][]	result;
+    int		i;
 
-    result = new BufferedImage(m_Samples, m_Lines, BufferedImage.TYPE_INT_RGB);
-    result.setRGB(0, 0, m_Samples, m_Lines, pixels, 0, m_Samples);
+    for (i = 0; i < bands.length; i++)
+      checkBand(bands[i]);
+    regionSize(region.y, region.x, region.height, region.width);
+    result = new int[bands.length][];
+    for (i = 0; i < bands.length; i++)
+      result[i] = getRegion(bands[i], region.y, region.x, region.height, region.width);
 
     return result;
   }
+
+  /**
+   * Turns the specified band into a string representation.
+   *
+   * @param band  	the band to convert
+   * @return		the generated string representation
+   */
+  @Override
+  public String toString(int band, int max) {
+    return Utils.arrayToString(getBand(band), max);
+  }
+
+  /**
+   * Decodes the unsigned values from the buffer. Consecutive values get
+   * copied in bulk via a {@link ShortBuffer} view and then masked, values
+   * that are further apart get decoded one at a time.
+   *
+   * @param bb		the buffer to decode from, using the byte order of the data
+   * @param stride	the number of bytes between consecutive values
+   * @param count	the number of values to decode
+   * @param scratch	the buffer for the raw values, must have at least count elements
+   * @param dst		the array to fill
+   * @param offset	the offset in the array
+   */
+  protected static void decodeUnsigned(ByteBuffer bb, int stride, int count, short[] scratch, int[] dst, int offset) {
+    int		i;
+
+    if (stride == 2) {
+      bb.asShortBuffer().get(scratch, 0, count);
+      for (i = 0; i < count; i++)
+	dst[offset + i] = scratch[i] & 0xFFFF;
+    }
+    else {
+      for (i = 0; i < count; i++)
+	dst[offset + i] = bb.getShort(i * stride) & 0xFFFF;
+    }
+  }
 }
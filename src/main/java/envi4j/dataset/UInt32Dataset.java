@@ -0,0 +1,283 @@
+/*
+ * UInt32Dataset.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package envi4j.dataset;
+
+import envi4j.core.Utils;
+import envi4j.header.DataType;
+import envi4j.header.Header;
+import envi4j.storage.Storage;
+
+import java.awt.Rectangle;
+import java.nio.ByteBuffer;
+
+/**
+ * Dataset implementation for {@link DataType#UINT32}.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class UInt32Dataset
+  extends AbstractDataset
+  implements LongDataset {
+
+  /**
+   * Initializes the dataset.
+   *
+   * @param header	the meta-data
+   * @param raw 	the raw data
+   * @param quiet	whether to suppress warnings/errors
+   */
+  public UInt32Dataset(Header header, byte[] raw, boolean quiet) {
+    super(header, raw, quiet);
+  }
+
+  /**
+   * Initializes the dataset.
+   *
+   * @param header	the meta-data
+   * @param storage 	the storage with the raw data
+   * @param quiet	whether to suppress warnings/errors
+   */
+  public UInt32Dataset(Header header, Storage storage, boolean quiet) {
+    super(header, storage, quiet);
+  }
+
+  /**
+   * The data type this dataset handles.
+   *
+   * @return		the data type
+   */
+  @Override
+  public DataType expectedDataType() {
+    return DataType.UINT32;
+  }
+
+  /**
+   * Decodes the value at the specified position in the buffer.
+   *
+   * @param bb		the buffer to decode from, using the byte order of the data
+   * @param index	the position of the first byte of the value
+   * @return		the value
+   */
+  @Override
+  protected double decode(ByteBuffer bb, int index) {
+    return bb.getInt(index) & 0xFFFFFFFFL;
+  }
+
+  /**
+   * Returns the band as matrix.
+   *
+   * @param band	the band to retrieve
+   * @return		the matrix
+   */
+  @Override
+  public long[][] getBand(int band) {
+    return Utils.toMatrix(getBandFlat(band), m_Lines, m_Samples);
+  }
+
+  /**
+   * Returns the band as flat array in row-major order (line -> sample).
+   *
+   * @param band	the band to retrieve
+   * @return		the values
+   */
+  @Override
+  public long[] getBandFlat(int band) {
+    long[]	result;
+
+    result = new long[bandSize()];
+    getBandInto(band, result);
+
+    return result;
+  }
+
+  /**
+   * Fills the supplied array with the band in row-major order (line -> sample).
+   * Decodes the values directly from the storage, one line at a time,
+   * unless the band is available from the band cache.
+   *
+   * @param band	the band to retrieve
+   * @param dst		the array to fill, must have at least lines*samples elements
+   */
+  @Override
+  public void getBandInto(int band, long[] dst) {
+    ByteBuffer	bb;
+    int		stride;
+    int		l;
+    int		i;
+    int		o;
+
+    checkBand(band);
+    checkBuffer(dst.length, bandSize());
+    if (fromBandCache(band, dst))
+      return;
+
+    stride = m_Layout.getSampleStride();
+    o      = 0;
+    for (l = 0; l < m_Lines; l++) {
+      bb = lineView(band, l);
+      for (i = 0; i < m_Samples; i++)
+	dst[o++] = bb.getInt(i * stride) & 0xFFFFFFFFL;
+    }
+
+    toBandCache(band, dst, bandSize());
+  }
+
+  /**
+   * Returns the values of all bands of the specified pixel.
+   *
+   * @param line	the line of the pixel
+   * @param sample	the sample of the pixel
+   * @return		the spectrum
+   */
+  @Override
+  public long[] getSpectrum(int line, int sample) {
+    long[]	result;
+
+    result = new long[m_Bands];
+    getSpectrumInto(line, sample, result);
+
+    return result;
+  }
+
+  /**
+   * Fills the supplied array with the values of all bands of the specified pixel.
+   *
+   * @param line	the line of the pixel
+   * @param sample	the sample of the pixel
+   * @param dst		the array to fill, must have at least bands elements
+   */
+  @Override
+  public void getSpectrumInto(int line, int sample, long[] dst) {
+    ByteBuffer	bb;
+    int		stride;
+    int		b;
+
+    checkBuffer(dst.length, m_Bands);
+    checkPixel(line, sample);
+    bb     = spectrumView(line, sample);
+    stride = spectrumStride(line, sample);
+    for (b = 0; b < m_Bands; b++)
+      dst[b] = bb.getInt(b * stride) & 0xFFFFFFFFL;
+  }
+
+  /**
+   * Returns the spectra of all pixels in the range of lines as flat array
+   * (line -> sample -> band), i.e., the spectrum of pixel (line, sample)
+   * starts at ((line - fromLine) * samples + sample) * bands.
+   *
+   * @param fromLine	the first line (incl)
+   * @param toLine	the last line (excl)
+   * @return		the spectra
+   */
+  @Override
+  public long[] getSpectra(int fromLine, int toLine) {
+    long[]	result;
+    ByteBuffer	bb;
+    int		sampleStride;
+    int		bandStride;
+    int		l;
+    int		s;
+    int		b;
+    int		o;
+
+    result       = new long[spectraSize(fromLine, toLine)];
+    sampleStride = lineBlockSampleStride();
+    bandStride   = lineBlockBandStride();
+    o            = 0;
+    for (l = fromLine; l < toLine; l++) {
+      bb = lineBlock(l);
+      for (s = 0; s < m_Samples; s++) {
+	for (b = 0; b < m_Bands; b++)
+	  result[o++] = bb.getInt(s * sampleStride + b * bandStride) & 0xFFFFFFFFL;
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the region of the band as flat array in row-major order (line -> sample).
+   *
+   * @param band	the band to retrieve
+   * @param line	the first line of the region
+   * @param sample	the first sample of the region
+   * @param height	the number of lines
+   * @param width	the number of samples
+   * @return		the values
+   */
+  @Override
+  public long[] getRegion(int band, int line, int sample, int height, int width) {
+    long[]	result;
+
+    result = new long[regionSize(line, sample, height, width)];
+    getRegionInto(band, line, sample, height, width, result);
+
+    return result;
+  }
+
+  /**
+   * Fills the supplied array with the region of the band in row-major order (line -> sample).
+   * Only reads the bytes that overlap with the region, one line at a time.
+   *
+   * @param band	the band to retrieve
+   * @param line	the first line of the region
+   * @param sample	the first sample of the region
+   * @param height	the number of lines
+   * @param width	the number of samples
+   * @param dst		the array to fill, must have at least height*width elements
+   */
+  @Override
+  public void getRegionInto(int band, int line, int sample, int height, int width, long[] dst) {
+    ByteBuffer	bb;
+    int		stride;
+    int		l;
+    int		i;
+    int		o;
+
+    checkBand(band);
+    checkBuffer(dst.length, regionSize(line, sample, height, width));
+    stride = m_Layout.getSampleStride();
+    o      = 0;
+    for (l = line; l < line + height; l++) {
+      bb = lineView(band, l, sample, width);
+      for (i = 0; i < width; i++)
+	dst[o++] = bb.getInt(i * stride) & 0xFFFFFFFFL;
+    }
+  }
+
+  /**
+   * Returns the region for each of the specified bands.
+   *
+   * @param bands	the bands to retrieve
+   * @param region	the region (x=sample, y=line)
+   * @return		the values, one flat array (line -> sample) per band
+   */
+  @Override
+  public long[][] getSubcube(int[] bands, Rectangle region) {
+    long[][]	result;
+    int		i;
+
+    for (i = 0; i < bands.length; i++)
+      checkBand(bands[i]);
+    regionSize(region.y, region.x, region.height, region.width);
+    result = new long[bands.length][];
+    for (i = 0; i < bands.length; i++)
+      result[i] = getRegion(bands[i], region.y, region.x, region.height, region.width);
+
+    return result;
+  }
+
+  /**
+   * Turns the specified band into a string representation.
+   *
+   * @param band  	the band to convert
+   * @return		the generated string representation
+   */
+  @Override
+  public String toString(int band, int max) {
+    return Utils.arrayToString(getBand(band), max);
+  }
+}
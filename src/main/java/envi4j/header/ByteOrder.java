@@ -52,6 +52,18 @@ public enum ByteOrder
     return m_Description;
   }
 
+  /**
+   * Returns the corresponding byte order for use with NIO buffers.
+   *
+   * @return		the byte order
+   */
+  public java.nio.ByteOrder toNioByteOrder() {
+    if (this == LITTLE_ENDIAN)
+      return java.nio.ByteOrder.LITTLE_ENDIAN;
+    else
+      return java.nio.ByteOrder.BIG_ENDIAN;
+  }
+
   /**
    * Parses the given string (ie data type integer) and returns the associated enum.
    *
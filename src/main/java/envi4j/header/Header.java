@@ -6,11 +6,13 @@
 package envi4j.header;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -49,6 +51,9 @@ public class Header
   /** the interleave type. */
   protected Interleave m_Interleave;
 
+  /** the file the header was read from, null if not read from a file. */
+  protected File m_File;
+
   /**
    * Initializes the header using the supplied information.
    *
@@ -65,6 +70,7 @@ public class Header
     m_DataType   = null;
     m_ByteOrder  = null;
     m_Interleave = null;
+    m_File       = null;
     check(m_Values);
   }
 
@@ -90,7 +96,7 @@ public class Header
     String		key;
     String		value;
 
-    result = new HashMap<>();
+    result = new LinkedHashMap<>();
     lines  = info.split("\n");
     multi  = false;
     key    = null;
@@ -572,6 +578,16 @@ public class Header
     return m_Bands;
   }
 
+  /**
+   * Returns the number of bytes of embedded header information in the
+   * data file, which need to be skipped.
+   *
+   * @return		the offset, 0 if not available
+   */
+  public int getHeaderOffset() {
+    return getInteger(HeaderField.HEADER_OFFSET, 0);
+  }
+
   /**
    * Returns the underlying key/value pairs.
    *
@@ -591,6 +607,116 @@ public class Header
     return result.toString();
   }
 
+  /**
+   * Returns the header in ENVI format, with the fields in their original order.
+   *
+   * @return		the header
+   */
+  public String toENVI() {
+    StringBuilder	result;
+
+    result = new StringBuilder("ENVI\n");
+    for (String key: m_Raw.keySet())
+      result.append(key).append(" = ").append(m_Raw.get(key)).append("\n");
+
+    return result.toString();
+  }
+
+  /**
+   * Checks whether the raw key/value pairs contain the field.
+   *
+   * @param raw		the key/value pairs to check
+   * @param field	the field to look for
+   * @return		true if present
+   */
+  protected static boolean containsField(Map<String,String> raw, HeaderField field) {
+    for (String key: raw.keySet()) {
+      if (HeaderField.fromString(key) == field)
+	return true;
+    }
+    return false;
+  }
+
+  /**
+   * Returns the file the header was read from.
+   *
+   * @return		the file, null if not read from a file
+   * @see		#read(File, boolean)
+   */
+  public File getFile() {
+    return m_File;
+  }
+
+  /**
+   * Returns a copy of the header with the specified fields changed.
+   * Changed fields keep their position, fields not present yet get appended.
+   *
+   * @param values	the fields to change (raw header values), null values remove the field
+   * @return		the new header
+   */
+  public Header derive(Map<HeaderField,String> values) {
+    Map<String,String>	raw;
+    StringBuilder	info;
+    HeaderField		field;
+
+    raw = new LinkedHashMap<>();
+    for (String key: m_Raw.keySet()) {
+      field = HeaderField.fromString(key);
+      if ((field == null) || !values.containsKey(field))
+	raw.put(key, m_Raw.get(key));
+      else if (values.get(field) != null)
+	raw.put(key, values.get(field));
+    }
+    for (HeaderField f: values.keySet()) {
+      if ((values.get(f) != null) && !containsField(raw, f))
+	raw.put(f.getName(), values.get(f));
+    }
+
+    info = new StringBuilder();
+    for (String key: raw.keySet())
+      info.append(key).append(" = ").append(raw.get(key)).append("\n");
+
+    return new Header(info.toString(), m_Quiet);
+  }
+
+  /**
+   * Writes the header to the specified file.
+   *
+   * @param output	the file to write to
+   * @throws IOException	if writing fails
+   * @see		#toENVI()
+   */
+  public void write(File output) throws IOException {
+    Files.writeString(output.toPath(), toENVI());
+  }
+
+  /**
+   * Creates a header with the required fields.
+   *
+   * @param samples	the number of samples
+   * @param lines	the number of lines
+   * @param bands	the number of bands
+   * @param dataType	the data type
+   * @param interleave	the interleave
+   * @param byteOrder	the byte order
+   * @return		the header
+   */
+  public static Header create(int samples, int lines, int bands, DataType dataType, Interleave interleave, ByteOrder byteOrder) {
+    StringBuilder	info;
+
+    info = new StringBuilder();
+    info.append(HeaderField.SAMPLES.getName()).append(" = ").append(samples).append("\n");
+    info.append(HeaderField.LINES.getName()).append(" = ").append(lines).append("\n");
+    info.append(HeaderField.BANDS.getName()).append(" = ").append(bands).append("\n");
+    info.append(HeaderField.HEADER_OFFSET.getName()).append(" = 0\n");
+    info.append(HeaderField.FILE_TYPE.getName()).append(" = ENVI Standard\n");
+    info.append(HeaderField.DATA_TYPE.getName()).append(" = ").append(dataType.getType()).append("\n");
+    info.append(HeaderField.INTERLEAVE.getName()).append(" = ").append(interleave.getType()).append("\n");
+    info.append(HeaderField.BYTE_ORDER.getName()).append(" = ").append(byteOrder.getType()).append("\n");
+
+    return new Header(info.toString(), true);
+  }
+
   /**
    * Reads the header file and returns the generated header information.
    * Uses quiet mode.
@@ -610,8 +736,12 @@ public class Header
    * @return		the header, null if failed to read
    */
   public static Header read(File input, boolean quiet) {
+    Header	result;
+
     try {
-      return new Header(Files.readString(input.toPath()), quiet);
+      result        = new Header(Files.readString(input.toPath()), quiet);
+      result.m_File = input;
+      return result;
     }
     catch (Exception e) {
       if (!quiet) {
@@ -0,0 +1,196 @@
+/*
+ * AbstractLayout.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package envi4j.layout;
+
+import envi4j.header.Interleave;
+import envi4j.storage.Storage;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Ancestor for layouts.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public abstract class AbstractLayout
+  implements Layout {
+
+  /** the number of bands. */
+  protected int m_Bands;
+
+  /** the number of lines. */
+  protected int m_Lines;
+
+  /** the number of samples. */
+  protected int m_Samples;
+
+  /** the pixel size in bytes. */
+  protected int m_PixelSize;
+
+  /**
+   * Initializes the layout.
+   *
+   * @param bands	the number of bands
+   * @param lines	the number of lines
+   * @param samples	the number of samples
+   * @param pixelSize	the size of a pixel in bytes
+   */
+  protected AbstractLayout(int bands, int lines, int samples, int pixelSize) {
+    m_Bands     = bands;
+    m_Lines     = lines;
+    m_Samples   = samples;
+    m_PixelSize = pixelSize;
+  }
+
+  /**
+   * Returns the number of bands.
+   *
+   * @return		the number of bands
+   */
+  @Override
+  public int getBands() {
+    return m_Bands;
+  }
+
+  /**
+   * Returns the number of lines.
+   *
+   * @return		the number of lines
+   */
+  @Override
+  public int getLines() {
+    return m_Lines;
+  }
+
+  /**
+   * Returns the number of samples.
+   *
+   * @return		the number of samples
+   */
+  @Override
+  public int getSamples() {
+    return m_Samples;
+  }
+
+  /**
+   * Returns the size of a pixel in bytes.
+   *
+   * @return		the size
+   */
+  @Override
+  public int getPixelSize() {
+    return m_PixelSize;
+  }
+
+  /**
+   * Returns the total number of bytes.
+   *
+   * @return		the number of bytes
+   */
+  @Override
+  public long length() {
+    return (long) m_Bands * m_Lines * m_Samples * m_PixelSize;
+  }
+
+  /**
+   * Returns the number of bytes of a band.
+   *
+   * @return		the number of bytes
+   */
+  protected int bandLength() {
+    long	result;
+
+    result = (long) m_Lines * m_Samples * m_PixelSize;
+    if (result > Storage.MAX_ARRAY_LENGTH)
+      throw new IllegalStateException("Band too large to fit into an array: " + result);
+
+    return (int) result;
+  }
+
+  /**
+   * Reorders the raw bytes into sequential order (band -> line -> sample).
+   *
+   * @param raw		the raw bytes, in the order of this layout
+   * @param seq		the array for the reordered bytes
+   */
+  @Override
+  public void toSequential(byte[] raw, byte[] seq) {
+    toSequential(raw, seq, 0, m_Lines);
+  }
+
+  /**
+   * Reorders the raw bytes into sequential order (band -> line -> sample),
+   * splitting the work into ranges of lines that get processed by the pool.
+   * The result is identical to {@link #toSequential(byte[], byte[])}.
+   *
+   * @param raw		the raw bytes, in the order of this layout
+   * @param seq		the array for the reordered bytes
+   * @param pool	the pool to use
+   */
+  @Override
+  public void toSequential(byte[] raw, byte[] seq, ForkJoinPool pool) {
+    pool.invoke(new ReorderTask(this, raw, seq, 0, m_Lines));
+  }
+
+  /**
+   * Reorders bytes in sequential order (band -> line -> sample) into the
+   * order of this layout.
+   *
+   * @param seq		the bytes in sequential order
+   * @param raw		the array for the bytes in the order of this layout
+   */
+  @Override
+  public void fromSequential(byte[] seq, byte[] raw) {
+    fromSequential(seq, raw, 0, m_Lines);
+  }
+
+  /**
+   * Reorders bytes in sequential order (band -> line -> sample) into the
+   * order of this layout, splitting the work into ranges of lines that get
+   * processed by the pool.
+   *
+   * @param seq		the bytes in sequential order
+   * @param raw		the array for the bytes in the order of this layout
+   * @param pool	the pool to use
+   */
+  @Override
+  public void fromSequential(byte[] seq, byte[] raw, ForkJoinPool pool) {
+    pool.invoke(new ReorderTask(this, raw, seq, 0, m_Lines, true));
+  }
+
+  /**
+   * Returns a short description of the layout.
+   *
+   * @return		the description
+   */
+  @Override
+  public String toString() {
+    return getInterleave().getType() + ": bands=" + m_Bands + ", lines=" + m_Lines + ", samples=" + m_Samples + ", pixelSize=" + m_PixelSize;
+  }
+
+  /**
+   * Returns the layout for the specified interleave.
+   *
+   * @param interleave	the interleave
+   * @param bands	the number of bands
+   * @param lines	the number of lines
+   * @param samples	the number of samples
+   * @param pixelSize	the size of a pixel in bytes
+   * @return		the layout
+   */
+  public static Layout forInterleave(Interleave interleave, int bands, int lines, int samples, int pixelSize) {
+    switch (interleave) {
+      case BAND_SEQUENTIAL:
+	return new BandSequentialLayout(bands, lines, samples, pixelSize);
+      case BAND_INTERLEAVED_BY_LINE:
+	return new BandInterleavedByLineLayout(bands, lines, samples, pixelSize);
+      case BAND_INTERLEAVED_BY_PIXEL:
+	return new BandInterleavedByPixelLayout(bands, lines, samples, pixelSize);
+      default:
+	throw new IllegalStateException("Unhandled interleave: " + interleave);
+    }
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * BandInterleavedByLineLayout.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package envi4j.layout;
+
+import envi4j.header.Interleave;
+import envi4j.storage.Storage;
+
+/**
+ * Layout for {@link Interleave#BAND_INTERLEAVED_BY_LINE} (line -> band -> sample).
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class BandInterleavedByLineLayout
+  extends AbstractLayout {
+
+  /**
+   * Initializes the layout.
+   *
+   * @param bands	the number of bands
+   * @param lines	the number of lines
+   * @param samples	the number of samples
+   * @param pixelSize	the size of a pixel in bytes
+   */
+  public BandInterleavedByLineLayout(int bands, int lines, int samples, int pixelSize) {
+    super(bands, lines, samples, pixelSize);
+  }
+
+  /**
+   * Returns the interleave that this layout handles.
+   *
+   * @return		the interleave
+   */
+  @Override
+  public Interleave getInterleave() {
+    return Interleave.BAND_INTERLEAVED_BY_LINE;
+  }
+
+  /**
+   * Returns the number of bytes between two consecutive samples of the
+   * same band and line (samples are adjacent).
+   *
+   * @return		the number of bytes
+   */
+  @Override
+  public int getSampleStride() {
+    return m_PixelSize;
+  }
+
+  /**
+   * Returns the number of bytes between the values of two consecutive
+   * bands of the same pixel (a line).
+   *
+   * @return		the number of bytes
+   */
+  @Override
+  public long getBandStride() {
+    return (long) m_Samples * m_PixelSize;
+  }
+
+  /**
+   * Returns the position of the first byte of the specified value.
+   *
+   * @param band	the band
+   * @param line	the line
+   * @param sample	the sample
+   * @return		the position
+   */
+  @Override
+  public long offset(int band, int line, int sample) {
+    return (((long) line * m_Bands + band) * m_Samples + sample) * m_PixelSize;
+  }
+
+  /**
+   * Copies the bytes of the band from the storage into the buffer,
+   * using one read per line.
+   *
+   * @param storage	the storage to read from
+   * @param band	the band to copy
+   * @param dst		the buffer to copy the bytes into
+   */
+  @Override
+  public void copyBand(Storage storage, int band, byte[] dst) {
+    int		lineLen;
+    int		l;
+
+    lineLen = m_Samples * m_PixelSize;
+    for (l = 0; l < m_Lines; l++)
+      storage.read(offset(band, l, 0), dst, l * lineLen, lineLen);
+  }
+
+  /**
+   * Reorders the raw bytes of the specified range of lines into sequential
+   * order (band -> line -> sample). Each line of a band is contiguous,
+   * so whole lines get copied at once.
+   *
+   * @param raw		the raw bytes, in the order of this layout
+   * @param seq		the array for the reordered bytes
+   * @param fromLine	the first line to reorder (incl)
+   * @param toLine	the last line to reorder (excl)
+   */
+  @Override
+  public void toSequential(byte[] raw, byte[] seq, int fromLine, int toLine) {
+    int		lineLen;
+    int		bandLen;
+    int		b;
+    int		l;
+    int		i;
+
+    lineLen = m_Samples * m_PixelSize;
+    bandLen = m_Lines * lineLen;
+    i       = (int) offset(0, fromLine, 0);
+    for (l = fromLine; l < toLine; l++) {
+      for (b = 0; b < m_Bands; b++) {
+	System.arraycopy(raw, i, seq, b * bandLen + l * lineLen, lineLen);
+	i += lineLen;
+      }
+    }
+  }
+
+  /**
+   * Reorders the bytes of the specified range of lines from sequential order
+   * (band -> line -> sample) into the order of this layout, copying whole
+   * lines at once.
+   *
+   * @param seq		the bytes in sequential order
+   * @param raw		the array for the bytes in the order of this layout
+   * @param fromLine	the first line to reorder (incl)
+   * @param toLine	the last line to reorder (excl)
+   */
+  @Override
+  public void fromSequential(byte[] seq, byte[] raw, int fromLine, int toLine) {
+    int		lineLen;
+    int		bandLen;
+    int		b;
+    int		l;
+    int		i;
+
+    lineLen = m_Samples * m_PixelSize;
+    bandLen = m_Lines * lineLen;
+    i       = (int) offset(0, fromLine, 0);
+    for (l = fromLine; l < toLine; l++) {
+      for (b = 0; b < m_Bands; b++) {
+	System.arraycopy(seq, b * bandLen + l * lineLen, raw, i, lineLen);
+	i += lineLen;
+      }
+    }
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * BandInterleavedByPixelLayout.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package envi4j.layout;
+
+import envi4j.header.Interleave;
+import envi4j.storage.Storage;
+
+/**
+ * Layout for {@link Interleave#BAND_INTERLEAVED_BY_PIXEL} (line -> sample -> band).
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class BandInterleavedByPixelLayout
+  extends AbstractLayout {
+
+  /**
+   * Initializes the layout.
+   *
+   * @param bands	the number of bands
+   * @param lines	the number of lines
+   * @param samples	the number of samples
+   * @param pixelSize	the size of a pixel in bytes
+   */
+  public BandInterleavedByPixelLayout(int bands, int lines, int samples, int pixelSize) {
+    super(bands, lines, samples, pixelSize);
+  }
+
+  /**
+   * Returns the interleave that this layout handles.
+   *
+   * @return		the interleave
+   */
+  @Override
+  public Interleave getInterleave() {
+    return Interleave.BAND_INTERLEAVED_BY_PIXEL;
+  }
+
+  /**
+   * Returns the number of bytes between two consecutive samples of the
+   * same band and line (samples are separated by the values of the other bands).
+   *
+   * @return		the number of bytes
+   */
+  @Override
+  public int getSampleStride() {
+    return m_Bands * m_PixelSize;
+  }
+
+  /**
+   * Returns the number of bytes between the values of two consecutive
+   * bands of the same pixel (bands are adjacent).
+   *
+   * @return		the number of bytes
+   */
+  @Override
+  public long getBandStride() {
+    return m_PixelSize;
+  }
+
+  /**
+   * Returns the position of the first byte of the specified value.
+   *
+   * @param band	the band
+   * @param line	the line
+   * @param sample	the sample
+   * @return		the position
+   */
+  @Override
+  public long offset(int band, int line, int sample) {
+    return (((long) line * m_Samples + sample) * m_Bands + band) * m_PixelSize;
+  }
+
+  /**
+   * Copies the bytes of the band from the storage into the buffer.
+   * Reads each line of pixels once and gathers the values of the band.
+   *
+   * @param storage	the storage to read from
+   * @param band	the band to copy
+   * @param dst		the buffer to copy the bytes into
+   */
+  @Override
+  public void copyBand(Storage storage, int band, byte[] dst) {
+    byte[]	line;
+    int		lineLen;
+    int		pixelLen;
+    int		l;
+    int		s;
+
+    lineLen  = m_Samples * m_PixelSize;
+    pixelLen = m_Bands * m_PixelSize;
+    line     = new byte[m_Samples * pixelLen];
+    for (l = 0; l < m_Lines; l++) {
+      storage.read(offset(0, l, 0), line, 0, line.length);
+      for (s = 0; s < m_Samples; s++)
+	System.arraycopy(line, s * pixelLen + band * m_PixelSize, dst, l * lineLen + s * m_PixelSize, m_PixelSize);
+    }
+  }
+
+  /**
+   * Reorders the raw bytes of the specified range of lines into sequential
+   * order (band -> line -> sample). The raw bytes form a (pixels x bands)
+   * matrix, which gets transposed into a (bands x pixels) one.
+   *
+   * @param raw		the raw bytes, in the order of this layout
+   * @param seq		the array for the reordered bytes
+   * @param fromLine	the first line to reorder (incl)
+   * @param toLine	the last line to reorder (excl)
+   * @see		Transposer
+   */
+  @Override
+  public void toSequential(byte[] raw, byte[] seq, int fromLine, int toLine) {
+    Transposer.transpose(raw, 0, seq, 0, m_Lines * m_Samples, m_Bands, m_PixelSize, fromLine * m_Samples, toLine * m_Samples);
+  }
+
+  /**
+   * Reorders the bytes of the specified range of lines from sequential order
+   * (band -> line -> sample) into the order of this layout. The sequential
+   * bytes form a (bands x pixels) matrix, of which the columns of the lines
+   * get transposed into the (pixels x bands) one.
+   *
+   * @param seq		the bytes in sequential order
+   * @param raw		the array for the bytes in the order of this layout
+   * @param fromLine	the first line to reorder (incl)
+   * @param toLine	the last line to reorder (excl)
+   * @see		Transposer
+   */
+  @Override
+  public void fromSequential(byte[] seq, byte[] raw, int fromLine, int toLine) {
+    Transposer.transpose(seq, 0, raw, 0, m_Bands, m_Lines * m_Samples, m_PixelSize, 0, m_Bands, fromLine * m_Samples, toLine * m_Samples);
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * BandSequentialLayout.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package envi4j.layout;
+
+import envi4j.header.Interleave;
+import envi4j.storage.Storage;
+
+/**
+ * Layout for {@link Interleave#BAND_SEQUENTIAL} (band -> line -> sample).
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class BandSequentialLayout
+  extends AbstractLayout {
+
+  /**
+   * Initializes the layout.
+   *
+   * @param bands	the number of bands
+   * @param lines	the number of lines
+   * @param samples	the number of samples
+   * @param pixelSize	the size of a pixel in bytes
+   */
+  public BandSequentialLayout(int bands, int lines, int samples, int pixelSize) {
+    super(bands, lines, samples, pixelSize);
+  }
+
+  /**
+   * Returns the interleave that this layout handles.
+   *
+   * @return		the interleave
+   */
+  @Override
+  public Interleave getInterleave() {
+    return Interleave.BAND_SEQUENTIAL;
+  }
+
+  /**
+   * Returns the number of bytes between two consecutive samples of the
+   * same band and line (samples are adjacent).
+   *
+   * @return		the number of bytes
+   */
+  @Override
+  public int getSampleStride() {
+    return m_PixelSize;
+  }
+
+  /**
+   * Returns the number of bytes between the values of two consecutive
+   * bands of the same pixel (a complete band).
+   *
+   * @return		the number of bytes
+   */
+  @Override
+  public long getBandStride() {
+    return (long) m_Lines * m_Samples * m_PixelSize;
+  }
+
+  /**
+   * Returns the position of the first byte of the specified value.
+   *
+   * @param band	the band
+   * @param line	the line
+   * @param sample	the sample
+   * @return		the position
+   */
+  @Override
+  public long offset(int band, int line, int sample) {
+    return (((long) band * m_Lines + line) * m_Samples + sample) * m_PixelSize;
+  }
+
+  /**
+   * Copies the bytes of the band from the storage into the buffer,
+   * using a single read.
+   *
+   * @param storage	the storage to read from
+   * @param band	the band to copy
+   * @param dst		the buffer to copy the bytes into
+   */
+  @Override
+  public void copyBand(Storage storage, int band, byte[] dst) {
+    storage.read(offset(band, 0, 0), dst, 0, bandLength());
+  }
+
+  /**
+   * Reorders the raw bytes of the specified range of lines into sequential
+   * order (band -> line -> sample). Since the data is already sequential,
+   * this is a plain copy per band.
+   *
+   * @param raw		the raw bytes, in the order of this layout
+   * @param seq		the array for the reordered bytes
+   * @param fromLine	the first line to reorder (incl)
+   * @param toLine	the last line to reorder (excl)
+   */
+  @Override
+  public void toSequential(byte[] raw, byte[] seq, int fromLine, int toLine) {
+    int		pos;
+    int		len;
+    int		b;
+
+    len = (toLine - fromLine) * m_Samples * m_PixelSize;
+    for (b = 0; b < m_Bands; b++) {
+      pos = (int) offset(b, fromLine, 0);
+      System.arraycopy(raw, pos, seq, pos, len);
+    }
+  }
+
+  /**
+   * Reorders the bytes of the specified range of lines from sequential order
+   * (band -> line -> sample) into the order of this layout, which is the same.
+   *
+   * @param seq		the bytes in sequential order
+   * @param raw		the array for the bytes in the order of this layout
+   * @param fromLine	the first line to reorder (incl)
+   * @param toLine	the last line to reorder (excl)
+   */
+  @Override
+  public void fromSequential(byte[] seq, byte[] raw, int fromLine, int toLine) {
+    toSequential(seq, raw, fromLine, toLine);
+  }
+}
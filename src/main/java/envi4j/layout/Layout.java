@@ -0,0 +1,161 @@
+/*
+ * Layout.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package envi4j.layout;
+
+import envi4j.header.Interleave;
+import envi4j.storage.Storage;
+
+import java.io.Serializable;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Interface for classes that map band/line/sample coordinates onto the
+ * byte positions of a specific interleave.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public interface Layout
+  extends Serializable {
+
+  /**
+   * Returns the interleave that this layout handles.
+   *
+   * @return		the interleave
+   */
+  public Interleave getInterleave();
+
+  /**
+   * Returns the number of bands.
+   *
+   * @return		the number of bands
+   */
+  public int getBands();
+
+  /**
+   * Returns the number of lines.
+   *
+   * @return		the number of lines
+   */
+  public int getLines();
+
+  /**
+   * Returns the number of samples.
+   *
+   * @return		the number of samples
+   */
+  public int getSamples();
+
+  /**
+   * Returns the size of a pixel in bytes.
+   *
+   * @return		the size
+   */
+  public int getPixelSize();
+
+  /**
+   * Returns the total number of bytes.
+   *
+   * @return		the number of bytes
+   */
+  public long length();
+
+  /**
+   * Returns the number of bytes between two consecutive samples of the
+   * same band and line.
+   *
+   * @return		the number of bytes
+   */
+  public int getSampleStride();
+
+  /**
+   * Returns the number of bytes between the values of two consecutive
+   * bands of the same pixel.
+   *
+   * @return		the number of bytes
+   */
+  public long getBandStride();
+
+  /**
+   * Returns the position of the first byte of the specified value.
+   *
+   * @param band	the band
+   * @param line	the line
+   * @param sample	the sample
+   * @return		the position
+   */
+  public long offset(int band, int line, int sample);
+
+  /**
+   * Copies the bytes of the band from the storage into the buffer,
+   * using sequential order (line -> sample).
+   *
+   * @param storage	the storage to read from
+   * @param band	the band to copy
+   * @param dst		the buffer to copy the bytes into
+   */
+  public void copyBand(Storage storage, int band, byte[] dst);
+
+  /**
+   * Reorders the raw bytes into sequential order (band -> line -> sample).
+   *
+   * @param raw		the raw bytes, in the order of this layout
+   * @param seq		the array for the reordered bytes
+   */
+  public void toSequential(byte[] raw, byte[] seq);
+
+  /**
+   * Reorders the raw bytes of the specified range of lines into sequential
+   * order (band -> line -> sample).
+   *
+   * @param raw		the raw bytes, in the order of this layout
+   * @param seq		the array for the reordered bytes
+   * @param fromLine	the first line to reorder (incl)
+   * @param toLine	the last line to reorder (excl)
+   */
+  public void toSequential(byte[] raw, byte[] seq, int fromLine, int toLine);
+
+  /**
+   * Reorders the raw bytes into sequential order (band -> line -> sample),
+   * splitting the work into ranges of lines that get processed by the pool.
+   * The result is identical to {@link #toSequential(byte[], byte[])}.
+   *
+   * @param raw		the raw bytes, in the order of this layout
+   * @param seq		the array for the reordered bytes
+   * @param pool	the pool to use
+   */
+  public void toSequential(byte[] raw, byte[] seq, ForkJoinPool pool);
+
+  /**
+   * Reorders bytes in sequential order (band -> line -> sample) into the
+   * order of this layout, i.e., the inverse of {@link #toSequential(byte[], byte[])}.
+   *
+   * @param seq		the bytes in sequential order
+   * @param raw		the array for the bytes in the order of this layout
+   */
+  public void fromSequential(byte[] seq, byte[] raw);
+
+  /**
+   * Reorders the bytes of the specified range of lines from sequential order
+   * (band -> line -> sample) into the order of this layout.
+   *
+   * @param seq		the bytes in sequential order
+   * @param raw		the array for the bytes in the order of this layout
+   * @param fromLine	the first line to reorder (incl)
+   * @param toLine	the last line to reorder (excl)
+   */
+  public void fromSequential(byte[] seq, byte[] raw, int fromLine, int toLine);
+
+  /**
+   * Reorders bytes in sequential order (band -> line -> sample) into the
+   * order of this layout, splitting the work into ranges of lines that get
+   * processed by the pool.
+   *
+   * @param seq		the bytes in sequential order
+   * @param raw		the array for the bytes in the order of this layout
+   * @param pool	the pool to use
+   */
+  public void fromSequential(byte[] seq, byte[] raw, ForkJoinPool pool);
+}
@@ -0,0 +1,97 @@
+/*
+ * ReorderTask.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package envi4j.layout;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Fork-join task that reorders a range of lines into sequential order
+ * (or back into the layout), splitting the range in half until it is
+ * small enough.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ * @see Layout#toSequential(byte[], byte[], int, int)
+ * @see Layout#fromSequential(byte[], byte[], int, int)
+ */
+public class ReorderTask
+  extends RecursiveAction {
+
+  /** the number of bytes below which ranges don't get split any further (1MB). */
+  public final static int MIN_BYTES = 1 << 20;
+
+  /** the layout to use. */
+  protected Layout m_Layout;
+
+  /** the raw bytes. */
+  protected byte[] m_Raw;
+
+  /** the reordered bytes. */
+  protected byte[] m_Sequential;
+
+  /** the first line (incl). */
+  protected int m_FromLine;
+
+  /** the last line (excl). */
+  protected int m_ToLine;
+
+  /** whether to reorder from sequential order into the layout instead. */
+  protected boolean m_Inverse;
+
+  /**
+   * Initializes the task.
+   *
+   * @param layout	the layout to use
+   * @param raw		the raw bytes, in the order of the layout
+   * @param seq		the array for the reordered bytes
+   * @param fromLine	the first line to reorder (incl)
+   * @param toLine	the last line to reorder (excl)
+   */
+  public ReorderTask(Layout layout, byte[] raw, byte[] seq, int fromLine, int toLine) {
+    this(layout, raw, seq, fromLine, toLine, false);
+  }
+
+  /**
+   * Initializes the task.
+   *
+   * @param layout	the layout to use
+   * @param raw		the bytes in the order of the layout
+   * @param seq		the bytes in sequential order
+   * @param fromLine	the first line to reorder (incl)
+   * @param toLine	the last line to reorder (excl)
+   * @param inverse	whether to reorder from sequential order into the layout
+   */
+  public ReorderTask(Layout layout, byte[] raw, byte[] seq, int fromLine, int toLine, boolean inverse) {
+    m_Layout     = layout;
+    m_Raw        = raw;
+    m_Sequential = seq;
+    m_FromLine   = fromLine;
+    m_ToLine     = toLine;
+    m_Inverse    = inverse;
+  }
+
+  /**
+   * Reorders the range of lines, splits it if too large.
+   */
+  @Override
+  protected void compute() {
+    long	lineLen;
+    int		mid;
+
+    lineLen = (long) m_Layout.getBands() * m_Layout.getSamples() * m_Layout.getPixelSize();
+    if ((m_ToLine - m_FromLine < 2) || ((m_ToLine - m_FromLine) * lineLen <= MIN_BYTES)) {
+      if (m_Inverse)
+	m_Layout.fromSequential(m_Sequential, m_Raw, m_FromLine, m_ToLine);
+      else
+	m_Layout.toSequential(m_Raw, m_Sequential, m_FromLine, m_ToLine);
+    }
+    else {
+      mid = (m_FromLine + m_ToLine) >>> 1;
+      invokeAll(
+	new ReorderTask(m_Layout, m_Raw, m_Sequential, m_FromLine, mid, m_Inverse),
+	new ReorderTask(m_Layout, m_Raw, m_Sequential, mid, m_ToLine, m_Inverse));
+    }
+  }
+}
@@ -0,0 +1,235 @@
+/*
+ * Transposer.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package envi4j.layout;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Block-copy transposition of byte matrices whose elements consist of
+ * one or more bytes. Uses cache-blocked tiles and specialised copies for
+ * elements of 1, 2, 4 and 8 bytes.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class Transposer {
+
+  /** the size of the tiles (in elements). */
+  public final static int TILE_SIZE = 64;
+
+  /** for accessing shorts in byte arrays. */
+  protected final static VarHandle SHORT = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.nativeOrder());
+
+  /** for accessing ints in byte arrays. */
+  protected final static VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+  /** for accessing longs in byte arrays. */
+  protected final static VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+  /**
+   * Transposes the row-major matrix of elements (rows x cols) in the source
+   * array into the row-major matrix (cols x rows) in the destination array.
+   *
+   * @param src		the source array
+   * @param srcOffset	the offset in the source array
+   * @param dst		the destination array
+   * @param dstOffset	the offset in the destination array
+   * @param rows	the number of rows in the source matrix
+   * @param cols	the number of columns in the source matrix
+   * @param elemSize	the size of an element in bytes
+   */
+  public static void transpose(byte[] src, int srcOffset, byte[] dst, int dstOffset, int rows, int cols, int elemSize) {
+    transpose(src, srcOffset, dst, dstOffset, rows, cols, elemSize, 0, rows);
+  }
+
+  /**
+   * Transposes the specified range of rows of the row-major matrix of
+   * elements (rows x cols) in the source array into the row-major matrix
+   * (cols x rows) in the destination array.
+   *
+   * @param src		the source array
+   * @param srcOffset	the offset in the source array
+   * @param dst		the destination array
+   * @param dstOffset	the offset in the destination array
+   * @param rows	the number of rows in the source matrix
+   * @param cols	the number of columns in the source matrix
+   * @param elemSize	the size of an element in bytes
+   * @param fromRow	the first row to transpose (incl)
+   * @param toRow	the last row to transpose (excl)
+   */
+  public static void transpose(byte[] src, int srcOffset, byte[] dst, int dstOffset, int rows, int cols, int elemSize, int fromRow, int toRow) {
+    transpose(src, srcOffset, dst, dstOffset, rows, cols, elemSize, fromRow, toRow, 0, cols);
+  }
+
+  /**
+   * Transposes the specified block (range of rows and columns) of the
+   * row-major matrix of elements (rows x cols) in the source array into
+   * the row-major matrix (cols x rows) in the destination array.
+   *
+   * @param src		the source array
+   * @param srcOffset	the offset in the source array
+   * @param dst		the destination array
+   * @param dstOffset	the offset in the destination array
+   * @param rows	the number of rows in the source matrix
+   * @param cols	the number of columns in the source matrix
+   * @param elemSize	the size of an element in bytes
+   * @param fromRow	the first row to transpose (incl)
+   * @param toRow	the last row to transpose (excl)
+   * @param fromCol	the first column to transpose (incl)
+   * @param toCol	the last column to transpose (excl)
+   */
+  public static void transpose(byte[] src, int srcOffset, byte[] dst, int dstOffset, int rows, int cols, int elemSize, int fromRow, int toRow, int fromCol, int toCol) {
+    int		r;
+    int		c;
+    int		rMax;
+    int		cMax;
+
+    for (r = fromRow; r < toRow; r += TILE_SIZE) {
+      rMax = Math.min(r + TILE_SIZE, toRow);
+      for (c = fromCol; c < toCol; c += TILE_SIZE) {
+	cMax = Math.min(c + TILE_SIZE, toCol);
+	switch (elemSize) {
+	  case 1:
+	    transposeTile1(src, srcOffset, dst, dstOffset, rows, cols, r, rMax, c, cMax);
+	    break;
+	  case 2:
+	    transposeTile2(src, srcOffset, dst, dstOffset, rows, cols, r, rMax, c, cMax);
+	    break;
+	  case 4:
+	    transposeTile4(src, srcOffset, dst, dstOffset, rows, cols, r, rMax, c, cMax);
+	    break;
+	  case 8:
+	    transposeTile8(src, srcOffset, dst, dstOffset, rows, cols, r, rMax, c, cMax);
+	    break;
+	  default:
+	    transposeTile(src, srcOffset, dst, dstOffset, rows, cols, elemSize, r, rMax, c, cMax);
+	}
+      }
+    }
+  }
+
+  /**
+   * Transposes a tile of single byte elements.
+   *
+   * @param src		the source array
+   * @param srcOffset	the offset in the source array
+   * @param dst		the destination array
+   * @param dstOffset	the offset in the destination array
+   * @param rows	the number of rows in the source matrix
+   * @param cols	the number of columns in the source matrix
+   * @param r0		the first row of the tile (incl)
+   * @param r1		the last row of the tile (excl)
+   * @param c0		the first column of the tile (incl)
+   * @param c1		the last column of the tile (excl)
+   */
+  protected static void transposeTile1(byte[] src, int srcOffset, byte[] dst, int dstOffset, int rows, int cols, int r0, int r1, int c0, int c1) {
+    int		r;
+    int		c;
+
+    for (c = c0; c < c1; c++) {
+      for (r = r0; r < r1; r++)
+	dst[dstOffset + c * rows + r] = src[srcOffset + r * cols + c];
+    }
+  }
+
+  /**
+   * Transposes a tile of two byte elements.
+   *
+   * @param src		the source array
+   * @param srcOffset	the offset in the source array
+   * @param dst		the destination array
+   * @param dstOffset	the offset in the destination array
+   * @param rows	the number of rows in the source matrix
+   * @param cols	the number of columns in the source matrix
+   * @param r0		the first row of the tile (incl)
+   * @param r1		the last row of the tile (excl)
+   * @param c0		the first column of the tile (incl)
+   * @param c1		the last column of the tile (excl)
+   */
+  protected static void transposeTile2(byte[] src, int srcOffset, byte[] dst, int dstOffset, int rows, int cols, int r0, int r1, int c0, int c1) {
+    int		r;
+    int		c;
+
+    for (c = c0; c < c1; c++) {
+      for (r = r0; r < r1; r++)
+	SHORT.set(dst, dstOffset + (c * rows + r) * 2, (short) SHORT.get(src, srcOffset + (r * cols + c) * 2));
+    }
+  }
+
+  /**
+   * Transposes a tile of four byte elements.
+   *
+   * @param src		the source array
+   * @param srcOffset	the offset in the source array
+   * @param dst		the destination array
+   * @param dstOffset	the offset in the destination array
+   * @param rows	the number of rows in the source matrix
+   * @param cols	the number of columns in the source matrix
+   * @param r0		the first row of the tile (incl)
+   * @param r1		the last row of the tile (excl)
+   * @param c0		the first column of the tile (incl)
+   * @param c1		the last column of the tile (excl)
+   */
+  protected static void transposeTile4(byte[] src, int srcOffset, byte[] dst, int dstOffset, int rows, int cols, int r0, int r1, int c0, int c1) {
+    int		r;
+    int		c;
+
+    for (c = c0; c < c1; c++) {
+      for (r = r0; r < r1; r++)
+	INT.set(dst, dstOffset + (c * rows + r) * 4, (int) INT.get(src, srcOffset + (r * cols + c) * 4));
+    }
+  }
+
+  /**
+   * Transposes a tile of eight byte elements.
+   *
+   * @param src		the source array
+   * @param srcOffset	the offset in the source array
+   * @param dst		the destination array
+   * @param dstOffset	the offset in the destination array
+   * @param rows	the number of rows in the source matrix
+   * @param cols	the number of columns in the source matrix
+   * @param r0		the first row of the tile (incl)
+   * @param r1		the last row of the tile (excl)
+   * @param c0		the first column of the tile (incl)
+   * @param c1		the last column of the tile (excl)
+   */
+  protected static void transposeTile8(byte[] src, int srcOffset, byte[] dst, int dstOffset, int rows, int cols, int r0, int r1, int c0, int c1) {
+    int		r;
+    int		c;
+
+    for (c = c0; c < c1; c++) {
+      for (r = r0; r < r1; r++)
+	LONG.set(dst, dstOffset + (c * rows + r) * 8, (long) LONG.get(src, srcOffset + (r * cols + c) * 8));
+    }
+  }
+
+  /**
+   * Transposes a tile of elements with arbitrary size.
+   *
+   * @param src		the source array
+   * @param srcOffset	the offset in the source array
+   * @param dst		the destination array
+   * @param dstOffset	the offset in the destination array
+   * @param rows	the number of rows in the source matrix
+   * @param cols	the number of columns in the source matrix
+   * @param elemSize	the size of an element in bytes
+   * @param r0		the first row of the tile (incl)
+   * @param r1		the last row of the tile (excl)
+   * @param c0		the first column of the tile (incl)
+   * @param c1		the last column of the tile (excl)
+   */
+  protected static void transposeTile(byte[] src, int srcOffset, byte[] dst, int dstOffset, int rows, int cols, int elemSize, int r0, int r1, int c0, int c1) {
+    int		r;
+    int		c;
+
+    for (c = c0; c < c1; c++) {
+      for (r = r0; r < r1; r++)
+	System.arraycopy(src, srcOffset + (r * cols + c) * elemSize, dst, dstOffset + (c * rows + r) * elemSize, elemSize);
+    }
+  }
+}
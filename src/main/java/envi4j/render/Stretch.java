@@ -0,0 +1,196 @@
+/*
+ * Stretch.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package envi4j.render;
+
+import envi4j.dataset.BandStatistics;
+
+import java.io.Serializable;
+
+/**
+ * Linear contrast stretch, mapping the values between a lower and upper
+ * bound onto 0-255. The bounds are either the min/max of a band, two
+ * percentiles or two fixed values.
+ * <br>
+ * Parses the ENVI "default stretch" header values, e.g.:
+ * <ul>
+ *   <li>2.0% linear</li>
+ *   <li>0.000 1000.000 linear</li>
+ *   <li>linear</li>
+ * </ul>
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class Stretch
+  implements Serializable {
+
+  /** the default lower percentage. */
+  public final static double DEFAULT_LOWER = 2.0;
+
+  /** the default upper percentage. */
+  public final static double DEFAULT_UPPER = 98.0;
+
+  /** the type of stretch. */
+  protected StretchType m_Type;
+
+  /** the lower percentage/value. */
+  protected double m_Lower;
+
+  /** the upper percentage/value. */
+  protected double m_Upper;
+
+  /**
+   * Initializes the stretch.
+   *
+   * @param type	the type of stretch
+   * @param lower	the lower percentage/value, ignored for MIN_MAX
+   * @param upper	the upper percentage/value, ignored for MIN_MAX
+   */
+  public Stretch(StretchType type, double lower, double upper) {
+    if (type == null)
+      throw new IllegalArgumentException("Stretch type cannot be null!");
+    if (lower > upper)
+      throw new IllegalArgumentException("Lower bound is larger than upper one: " + lower + " > " + upper);
+    if ((type == StretchType.PERCENT) && ((lower < 0) || (upper > 100)))
+      throw new IllegalArgumentException("Percentages must be within [0, 100]: " + lower + ", " + upper);
+
+    m_Type  = type;
+    m_Lower = lower;
+    m_Upper = upper;
+  }
+
+  /**
+   * Returns the type of stretch.
+   *
+   * @return		the type
+   */
+  public StretchType getType() {
+    return m_Type;
+  }
+
+  /**
+   * Returns the lower percentage/value.
+   *
+   * @return		the lower bound
+   */
+  public double getLower() {
+    return m_Lower;
+  }
+
+  /**
+   * Returns the upper percentage/value.
+   *
+   * @return		the upper bound
+   */
+  public double getUpper() {
+    return m_Upper;
+  }
+
+  /**
+   * Returns whether the range depends on the statistics of the band.
+   *
+   * @return		true if statistics are required
+   * @see		#range(BandStatistics)
+   */
+  public boolean requiresStatistics() {
+    return (m_Type != StretchType.VALUE);
+  }
+
+  /**
+   * Determines the value range to stretch for the band.
+   *
+   * @param stats	the statistics of the band, can be null if not required
+   * @return		the lower and upper value
+   * @see		#requiresStatistics()
+   */
+  public double[] range(BandStatistics stats) {
+    switch (m_Type) {
+      case MIN_MAX:
+	return new double[]{stats.getMin(), stats.getMax()};
+      case PERCENT:
+	return new double[]{stats.getPercentile(m_Lower), stats.getPercentile(m_Upper)};
+      case VALUE:
+	return new double[]{m_Lower, m_Upper};
+      default:
+	throw new IllegalStateException("Unhandled stretch type: " + m_Type);
+    }
+  }
+
+  /**
+   * Returns the stretch in the format of the ENVI header.
+   *
+   * @return		the string representation
+   */
+  @Override
+  public String toString() {
+    switch (m_Type) {
+      case MIN_MAX:
+	return "linear";
+      case PERCENT:
+	if (m_Lower + m_Upper == 100)
+	  return m_Lower + "% linear";
+	return m_Lower + "% " + m_Upper + "% linear";
+      case VALUE:
+	return m_Lower + " " + m_Upper + " linear";
+      default:
+	throw new IllegalStateException("Unhandled stretch type: " + m_Type);
+    }
+  }
+
+  /**
+   * Returns the default stretch (2%/98% percentiles).
+   *
+   * @return		the stretch
+   */
+  public static Stretch defaultStretch() {
+    return new Stretch(StretchType.PERCENT, DEFAULT_LOWER, DEFAULT_UPPER);
+  }
+
+  /**
+   * Parses the value of the "default stretch" header field. Only linear
+   * stretches are supported.
+   *
+   * @param value	the value to parse
+   * @return		the stretch, null if not a (valid) linear stretch
+   */
+  public static Stretch parse(String value) {
+    String[]	parts;
+    double	lower;
+    double	upper;
+
+    if (value == null)
+      return null;
+
+    parts = value.trim().toLowerCase().split("\\s+");
+    if (!parts[parts.length - 1].equals("linear"))
+      return null;
+
+    try {
+      switch (parts.length) {
+	case 1:
+	  return new Stretch(StretchType.MIN_MAX, 0, 0);
+	case 2:
+	  if (!parts[0].endsWith("%"))
+	    return null;
+	  lower = Double.parseDouble(parts[0].substring(0, parts[0].length() - 1));
+	  return new Stretch(StretchType.PERCENT, lower, 100 - lower);
+	case 3:
+	  if (parts[0].endsWith("%") && parts[1].endsWith("%")) {
+	    lower = Double.parseDouble(parts[0].substring(0, parts[0].length() - 1));
+	    upper = Double.parseDouble(parts[1].substring(0, parts[1].length() - 1));
+	    return new Stretch(StretchType.PERCENT, lower, upper);
+	  }
+	  lower = Double.parseDouble(parts[0]);
+	  upper = Double.parseDouble(parts[1]);
+	  return new Stretch(StretchType.VALUE, lower, upper);
+	default:
+	  return null;
+      }
+    }
+    catch (Exception e) {
+      return null;
+    }
+  }
+}
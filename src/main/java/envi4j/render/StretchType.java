@@ -0,0 +1,20 @@
+/*
+ * StretchType.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package envi4j.render;
+
+/**
+ * The supported types of linear contrast stretches.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public enum StretchType {
+  /** stretches between the minimum and maximum of the band. */
+  MIN_MAX,
+  /** stretches between two percentiles of the band. */
+  PERCENT,
+  /** stretches between two fixed values. */
+  VALUE;
+}
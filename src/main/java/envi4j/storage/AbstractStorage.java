@@ -0,0 +1,90 @@
+/*
+ * AbstractStorage.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package envi4j.storage;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Ancestor for storage backends.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public abstract class AbstractStorage
+  implements Storage {
+
+  /**
+   * Checks whether the range is valid.
+   *
+   * @param pos		the position of the first byte
+   * @param length	the number of bytes
+   */
+  protected void checkRange(long pos, long length) {
+    if ((pos < 0) || (length < 0) || (pos + length > length()))
+      throw new IndexOutOfBoundsException("Invalid range: pos=" + pos + ", length=" + length + ", available=" + length());
+  }
+
+  /**
+   * Returns a buffer with the specified range of bytes, starting at
+   * position 0.
+   * <br>
+   * Default implementation copies the bytes into a new array.
+   *
+   * @param pos		the position of the first byte
+   * @param length	the number of bytes
+   * @return		the buffer
+   */
+  @Override
+  public ByteBuffer view(long pos, int length) {
+    byte[]	result;
+
+    result = new byte[length];
+    read(pos, result, 0, length);
+
+    return ByteBuffer.wrap(result);
+  }
+
+  /**
+   * Returns whether {@link #view(long, int)} returns a view on the
+   * underlying data for the specified range, i.e., without copying.
+   * <br>
+   * Default implementation returns false.
+   *
+   * @param pos		the position of the first byte
+   * @param length	the number of bytes
+   * @return		true if no copy is involved
+   */
+  @Override
+  public boolean isView(long pos, int length) {
+    return false;
+  }
+
+  /**
+   * Returns all the bytes as array.
+   *
+   * @return		the bytes
+   */
+  @Override
+  public byte[] toArray() {
+    byte[]	result;
+
+    if (length() > MAX_ARRAY_LENGTH)
+      throw new IllegalStateException("Too many bytes to fit into an array: " + length());
+
+    result = new byte[(int) length()];
+    read(0, result, 0, result.length);
+
+    return result;
+  }
+
+  /**
+   * Releases any resources held by the storage.
+   * <br>
+   * Default implementation does nothing.
+   */
+  @Override
+  public void close() {
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * ArrayStorage.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package envi4j.storage;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Storage backed by a byte array.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class ArrayStorage
+  extends AbstractStorage {
+
+  /** the underlying bytes. */
+  protected byte[] m_Data;
+
+  /** the offset of the first byte in the array. */
+  protected int m_Offset;
+
+  /**
+   * Initializes the storage.
+   *
+   * @param data	the bytes to use
+   */
+  public ArrayStorage(byte[] data) {
+    this(data, 0);
+  }
+
+  /**
+   * Initializes the storage, skipping the specified number of bytes.
+   *
+   * @param data	the bytes to use
+   * @param offset	the offset of the first byte in the array
+   */
+  public ArrayStorage(byte[] data, int offset) {
+    if (data == null)
+      throw new IllegalArgumentException("Data cannot be null!");
+    if ((offset < 0) || (offset > data.length))
+      throw new IllegalArgumentException("Invalid offset: " + offset);
+    m_Data   = data;
+    m_Offset = offset;
+  }
+
+  /**
+   * Returns the number of bytes available.
+   *
+   * @return		the number of bytes
+   */
+  @Override
+  public long length() {
+    return m_Data.length - m_Offset;
+  }
+
+  /**
+   * Returns the byte at the specified position.
+   *
+   * @param pos		the position of the byte
+   * @return		the byte
+   */
+  @Override
+  public byte get(long pos) {
+    return m_Data[m_Offset + (int) pos];
+  }
+
+  /**
+   * Copies the specified range of bytes into the buffer.
+   *
+   * @param pos		the position of the first byte to read
+   * @param dst		the buffer to copy the bytes into
+   * @param offset	the offset in the buffer
+   * @param length	the number of bytes to copy
+   */
+  @Override
+  public void read(long pos, byte[] dst, int offset, int length) {
+    checkRange(pos, length);
+    System.arraycopy(m_Data, m_Offset + (int) pos, dst, offset, length);
+  }
+
+  /**
+   * Returns a buffer with the specified range of bytes, starting at
+   * position 0. The buffer wraps the underlying array.
+   *
+   * @param pos		the position of the first byte
+   * @param length	the number of bytes
+   * @return		the buffer
+   */
+  @Override
+  public ByteBuffer view(long pos, int length) {
+    checkRange(pos, length);
+    return ByteBuffer.wrap(m_Data, m_Offset + (int) pos, length).slice();
+  }
+
+  /**
+   * Returns whether {@link #view(long, int)} returns a view on the
+   * underlying data for the specified range, which is always the case.
+   *
+   * @param pos		the position of the first byte
+   * @param length	the number of bytes
+   * @return		always true
+   */
+  @Override
+  public boolean isView(long pos, int length) {
+    return true;
+  }
+
+  /**
+   * Returns the underlying array, if there is no offset, otherwise a copy
+   * of the bytes after the offset.
+   *
+   * @return		the bytes
+   */
+  @Override
+  public byte[] toArray() {
+    if (m_Offset == 0)
+      return m_Data;
+    else
+      return super.toArray();
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * ChannelStorage.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package envi4j.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Storage that keeps the data file open and only reads the requested
+ * byte ranges using positional reads. Positions are relative to the offset,
+ * i.e., any bytes before the offset (e.g., an embedded header) get skipped.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class ChannelStorage
+  extends AbstractStorage {
+
+  /** the file to read from. */
+  protected File m_File;
+
+  /** the position in the file where the data starts. */
+  protected long m_Offset;
+
+  /** the number of bytes. */
+  protected long m_Length;
+
+  /** the open channel. */
+  protected transient FileChannel m_Channel;
+
+  /**
+   * Opens the specified file.
+   *
+   * @param file	the file to open
+   * @throws IOException	if opening fails
+   */
+  public ChannelStorage(File file) throws IOException {
+    this(file, 0);
+  }
+
+  /**
+   * Opens the specified file, with the data starting at the offset.
+   *
+   * @param file	the file to open
+   * @param offset	the position in the file where the data starts
+   * @throws IOException	if opening fails
+   */
+  public ChannelStorage(File file, long offset) throws IOException {
+    m_File    = file;
+    m_Offset  = offset;
+    m_Channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    if ((offset < 0) || (offset > m_Channel.size())) {
+      m_Channel.close();
+      throw new IOException("Invalid offset " + offset + " for file of size " + file.length() + ": " + file);
+    }
+    m_Length  = m_Channel.size() - offset;
+  }
+
+  /**
+   * Returns the file that is being read from.
+   *
+   * @return		the file
+   */
+  public File getFile() {
+    return m_File;
+  }
+
+  /**
+   * Returns the channel, (re-)opens it if necessary.
+   *
+   * @return		the channel
+   */
+  protected synchronized FileChannel getChannel() {
+    if (m_Channel == null) {
+      try {
+	m_Channel = FileChannel.open(m_File.toPath(), StandardOpenOption.READ);
+      }
+      catch (IOException e) {
+	throw new IllegalStateException("Failed to open data file: " + m_File, e);
+      }
+    }
+    return m_Channel;
+  }
+
+  /**
+   * Returns the number of bytes available.
+   *
+   * @return		the number of bytes
+   */
+  @Override
+  public long length() {
+    return m_Length;
+  }
+
+  /**
+   * Returns the byte at the specified position.
+   *
+   * @param pos		the position of the byte
+   * @return		the byte
+   */
+  @Override
+  public byte get(long pos) {
+    byte[]	result;
+
+    result = new byte[1];
+    read(pos, result, 0, 1);
+
+    return result[0];
+  }
+
+  /**
+   * Copies the specified range of bytes into the buffer.
+   *
+   * @param pos		the position of the first byte to read
+   * @param dst		the buffer to copy the bytes into
+   * @param offset	the offset in the buffer
+   * @param length	the number of bytes to copy
+   */
+  @Override
+  public void read(long pos, byte[] dst, int offset, int length) {
+    FileChannel	channel;
+    ByteBuffer	buffer;
+    int		read;
+
+    checkRange(pos, length);
+
+    channel = getChannel();
+    buffer  = ByteBuffer.wrap(dst, offset, length);
+    try {
+      while (buffer.hasRemaining()) {
+	read = channel.read(buffer, m_Offset + pos);
+	if (read < 0)
+	  throw new IOException("Premature end of file: " + m_File);
+	pos += read;
+      }
+    }
+    catch (IOException e) {
+      throw new IllegalStateException("Failed to read from data file: " + m_File, e);
+    }
+  }
+
+  /**
+   * Closes the data file.
+   */
+  @Override
+  public synchronized void close() {
+    if (m_Channel != null) {
+      try {
+	m_Channel.close();
+      }
+      catch (IOException e) {
+	// ignored
+      }
+      m_Channel = null;
+    }
+  }
+}
@@ -0,0 +1,38 @@
+/*
+ * ChunkCodec.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package envi4j.storage;
+
+/**
+ * The compression applied to the tiles of {@link ChunkedStorage}.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public enum ChunkCodec {
+
+  NONE("Stores the tiles uncompressed"),
+  DEFLATE("Compresses the tiles using Deflate");
+
+  /** the description. */
+  private String m_Description;
+
+  /**
+   * Initializes the enum item.
+   *
+   * @param description	the description
+   */
+  private ChunkCodec(String description) {
+    m_Description = description;
+  }
+
+  /**
+   * Returns the description.
+   *
+   * @return		the description
+   */
+  public String getDescription() {
+    return m_Description;
+  }
+}
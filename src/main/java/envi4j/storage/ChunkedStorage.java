@@ -0,0 +1,734 @@
+/*
+ * ChunkedStorage.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package envi4j.storage;
+
+import envi4j.header.Interleave;
+import envi4j.layout.AbstractLayout;
+import envi4j.layout.Layout;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Storage backed by a chunk file, in which the data is split into tiles of
+ * (bands x lines x samples) that get compressed independently. Presents the
+ * data in its original interleave, but only decompresses the tiles that a
+ * read touches, keeping the most recently used ones in a cache. The tile
+ * geometry determines which access pattern is the cheapest, e.g., tiles
+ * with all bands suit spectra, tiles with a single band suit band reads.
+ * <br>
+ * File format (big endian): the magic string "ENVICHK" with a version byte;
+ * bands, lines, samples, pixel size, interleave, tile bands, tile lines,
+ * tile samples, codec and number of tiles (ints); the index with file
+ * position (long) and compressed length (int) of each tile; the compressed
+ * tiles. Each tile stores its values in the interleave of the data. Tiles
+ * are ordered by line, then sample, then band.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class ChunkedStorage
+  extends AbstractStorage {
+
+  /** the extension of chunk files. */
+  public final static String EXTENSION = ".chk";
+
+  /** the magic string at the start of the file. */
+  public final static String MAGIC = "ENVICHK";
+
+  /** the version of the file format. */
+  public final static byte VERSION = 1;
+
+  /** the default memory budget for the cache of decompressed tiles (64MB). */
+  public final static long DEFAULT_CACHE_SIZE = 64L * 1024 * 1024;
+
+  /** the file to read from. */
+  protected File m_File;
+
+  /** the interleave of the data. */
+  protected Interleave m_Interleave;
+
+  /** the number of bands. */
+  protected int m_Bands;
+
+  /** the number of lines. */
+  protected int m_Lines;
+
+  /** the number of samples. */
+  protected int m_Samples;
+
+  /** the size of a pixel in bytes. */
+  protected int m_PixelSize;
+
+  /** the bands per tile. */
+  protected int m_TileBands;
+
+  /** the lines per tile. */
+  protected int m_TileLines;
+
+  /** the samples per tile. */
+  protected int m_TileSamples;
+
+  /** the codec. */
+  protected ChunkCodec m_Codec;
+
+  /** the file positions of the tiles. */
+  protected long[] m_Positions;
+
+  /** the compressed lengths of the tiles. */
+  protected int[] m_Lengths;
+
+  /** the maximum number of decompressed tiles to keep. */
+  protected int m_CacheTiles;
+
+  /** the open channel. */
+  protected transient FileChannel m_Channel;
+
+  /** the decompressed tiles. */
+  protected transient Map<Integer,byte[]> m_Cache;
+
+  /**
+   * Opens the specified chunk file.
+   *
+   * @param file	the file to open
+   * @throws IOException	if reading of the index fails
+   */
+  public ChunkedStorage(File file) throws IOException {
+    byte[]	magic;
+    int		interleave;
+    int		codec;
+    int		numTiles;
+    long	dataStart;
+    int		i;
+
+    m_File = file;
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      magic = new byte[MAGIC.length()];
+      in.readFully(magic);
+      if (!MAGIC.equals(new String(magic, StandardCharsets.US_ASCII)))
+	throw new IOException("Not a chunk file: " + file);
+      if (in.readByte() != VERSION)
+	throw new IOException("Unsupported chunk file version: " + file);
+      m_Bands       = in.readInt();
+      m_Lines       = in.readInt();
+      m_Samples     = in.readInt();
+      m_PixelSize   = in.readInt();
+      interleave    = in.readInt();
+      m_TileBands   = in.readInt();
+      m_TileLines   = in.readInt();
+      m_TileSamples = in.readInt();
+      codec         = in.readInt();
+      numTiles      = in.readInt();
+      if ((m_Bands < 1) || (m_Lines < 1) || (m_Samples < 1) || (m_PixelSize < 1))
+	throw new IOException("Invalid dimensions (bands x lines x samples, pixel size): " + m_Bands + "x" + m_Lines + "x" + m_Samples + ", " + m_PixelSize + ": " + file);
+      if ((m_TileBands < 1) || (m_TileBands > m_Bands) || (m_TileLines < 1) || (m_TileLines > m_Lines) || (m_TileSamples < 1) || (m_TileSamples > m_Samples)
+	    || ((long) m_TileBands * m_TileLines * m_TileSamples * m_PixelSize > MAX_ARRAY_LENGTH))
+	throw new IOException("Invalid tile dimensions: " + m_TileBands + "x" + m_TileLines + "x" + m_TileSamples + ": " + file);
+      if ((interleave < 0) || (interleave >= Interleave.values().length))
+	throw new IOException("Invalid interleave: " + interleave + ": " + file);
+      if ((codec < 0) || (codec >= ChunkCodec.values().length))
+	throw new IOException("Invalid codec: " + codec + ": " + file);
+      if ((long) numTiles != (long) numTiles(m_Bands, m_TileBands) * numTiles(m_Lines, m_TileLines) * numTiles(m_Samples, m_TileSamples))
+	throw new IOException("Index does not match tile geometry: " + file);
+      m_Interleave = Interleave.values()[interleave];
+      m_Codec      = ChunkCodec.values()[codec];
+      m_Positions  = new long[numTiles];
+      m_Lengths    = new int[numTiles];
+      for (i = 0; i < m_Positions.length; i++) {
+	m_Positions[i] = in.readLong();
+	m_Lengths[i]   = in.readInt();
+      }
+    }
+
+    dataStart = headerSize(m_Positions.length);
+    for (i = 0; i < m_Positions.length; i++) {
+      if ((m_Positions[i] < dataStart) || (m_Lengths[i] < 0) || (m_Positions[i] + m_Lengths[i] > file.length()))
+	throw new IOException("Invalid index entry for tile #" + i + ": " + file);
+      if ((m_Codec == ChunkCodec.NONE) && (m_Lengths[i] != tileLength(i)))
+	throw new IOException("Invalid length of uncompressed tile #" + i + ", expected " + tileLength(i) + " but found " + m_Lengths[i] + ": " + file);
+    }
+
+    setCacheSize(DEFAULT_CACHE_SIZE);
+    m_Channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+  }
+
+  /**
+   * Opens the specified chunk file and makes sure that it matches the
+   * layout (e.g., as defined by the header of the dataset).
+   *
+   * @param file	the file to open
+   * @param layout	the expected layout of the data
+   * @throws IOException	if reading of the index fails or the file doesn't match the layout
+   */
+  public ChunkedStorage(File file, Layout layout) throws IOException {
+    this(file);
+    if ((layout.getBands() != m_Bands) || (layout.getLines() != m_Lines) || (layout.getSamples() != m_Samples)
+	  || (layout.getPixelSize() != m_PixelSize) || (layout.getInterleave() != m_Interleave)) {
+      close();
+      throw new IOException(
+	"Chunk file does not match the header, expected "
+	  + layout.getBands() + "x" + layout.getLines() + "x" + layout.getSamples() + " (" + layout.getInterleave() + ", pixel size " + layout.getPixelSize() + ") but found "
+	  + m_Bands + "x" + m_Lines + "x" + m_Samples + " (" + m_Interleave + ", pixel size " + m_PixelSize + "): " + file);
+    }
+  }
+
+  /**
+   * Returns the file that is being read from.
+   *
+   * @return		the file
+   */
+  public File getFile() {
+    return m_File;
+  }
+
+  /**
+   * Returns the codec used for the tiles.
+   *
+   * @return		the codec
+   */
+  public ChunkCodec getCodec() {
+    return m_Codec;
+  }
+
+  /**
+   * Returns the tile geometry.
+   *
+   * @return		bands, lines and samples per tile
+   */
+  public int[] getTileSize() {
+    return new int[]{m_TileBands, m_TileLines, m_TileSamples};
+  }
+
+  /**
+   * Sets the memory budget for the decompressed tiles to keep.
+   *
+   * @param bytes	the budget in bytes, at least one tile gets kept
+   */
+  public synchronized void setCacheSize(long bytes) {
+    long	tileLen;
+
+    tileLen      = (long) m_TileBands * m_TileLines * m_TileSamples * m_PixelSize;
+    m_CacheTiles = (int) Math.max(1, Math.min(Integer.MAX_VALUE, bytes / tileLen));
+    m_Cache      = null;
+  }
+
+  /**
+   * Returns the maximum number of decompressed tiles that get kept.
+   *
+   * @return		the number of tiles
+   */
+  public int getCacheTiles() {
+    return m_CacheTiles;
+  }
+
+  /**
+   * Returns the channel, (re-)opens it if necessary.
+   *
+   * @return		the channel
+   */
+  protected synchronized FileChannel getChannel() {
+    if (m_Channel == null) {
+      try {
+	m_Channel = FileChannel.open(m_File.toPath(), StandardOpenOption.READ);
+      }
+      catch (IOException e) {
+	throw new IllegalStateException("Failed to open chunk file: " + m_File, e);
+      }
+    }
+    return m_Channel;
+  }
+
+  /**
+   * Returns the number of bytes available.
+   *
+   * @return		the number of bytes
+   */
+  @Override
+  public long length() {
+    return (long) m_Bands * m_Lines * m_Samples * m_PixelSize;
+  }
+
+  /**
+   * Returns the byte at the specified position.
+   *
+   * @param pos		the position of the byte
+   * @return		the byte
+   */
+  @Override
+  public byte get(long pos) {
+    byte[]	result;
+
+    result = new byte[1];
+    read(pos, result, 0, 1);
+
+    return result[0];
+  }
+
+  /**
+   * Returns the decompressed tile, from the cache if possible. Only the
+   * access to the cache is synchronized, reading and decompressing happens
+   * outside the lock, so parallel readers don't get serialized.
+   *
+   * @param index	the index of the tile
+   * @return		the bytes of the tile
+   */
+  protected byte[] getTile(int index) {
+    byte[]	result;
+    byte[]	cached;
+
+    synchronized (this) {
+      if (m_Cache == null) {
+	m_Cache = new LinkedHashMap<>(16, 0.75f, true) {
+	  @Override
+	  protected boolean removeEldestEntry(Map.Entry<Integer,byte[]> eldest) {
+	    return size() > m_CacheTiles;
+	  }
+	};
+      }
+      result = m_Cache.get(index);
+    }
+    if (result != null)
+      return result;
+
+    result = loadTile(index);
+    synchronized (this) {
+      if (m_Cache != null) {
+	// another thread may have been faster
+	cached = m_Cache.get(index);
+	if (cached != null)
+	  return cached;
+	m_Cache.put(index, result);
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Reads and decompresses the tile.
+   *
+   * @param index	the index of the tile
+   * @return		the bytes of the tile
+   */
+  protected byte[] loadTile(int index) {
+    byte[]		result;
+    ByteBuffer		buffer;
+    Inflater		inflater;
+    FileChannel		channel;
+    long		pos;
+
+    channel = getChannel();
+    buffer  = ByteBuffer.allocate(m_Lengths[index]);
+    pos     = m_Positions[index];
+    try {
+      while (buffer.hasRemaining()) {
+	if (channel.read(buffer, pos + buffer.position()) < 0)
+	  throw new IOException("Premature end of file: " + m_File);
+      }
+      result = new byte[tileLength(index)];
+      switch (m_Codec) {
+	case NONE:
+	  if (buffer.capacity() != result.length)
+	    throw new IOException("Invalid length of uncompressed tile #" + index + ", expected " + result.length + " but found " + buffer.capacity() + ": " + m_File);
+	  System.arraycopy(buffer.array(), 0, result, 0, result.length);
+	  break;
+	case DEFLATE:
+	  inflater = new Inflater();
+	  try {
+	    inflater.setInput(buffer.array());
+	    if ((inflater.inflate(result) != result.length) || !inflater.finished())
+	      throw new IOException("Failed to decompress tile #" + index + ": " + m_File);
+	  }
+	  finally {
+	    inflater.end();
+	  }
+	  break;
+	default:
+	  throw new IllegalStateException("Unhandled codec: " + m_Codec);
+      }
+    }
+    catch (IOException | DataFormatException e) {
+      throw new IllegalStateException("Failed to read tile #" + index + " from chunk file: " + m_File, e);
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the decompressed length of the tile.
+   *
+   * @param index	the index of the tile
+   * @return		the number of bytes
+   */
+  protected int tileLength(int index) {
+    int[]	origin;
+
+    origin = tileOrigin(index);
+    return extent(origin[0], m_TileBands, m_Bands)
+	     * extent(origin[1], m_TileLines, m_Lines)
+	     * extent(origin[2], m_TileSamples, m_Samples)
+	     * m_PixelSize;
+  }
+
+  /**
+   * Returns the first band, line and sample of the tile.
+   *
+   * @param index	the index of the tile
+   * @return		band, line and sample
+   */
+  protected int[] tileOrigin(int index) {
+    int		nb;
+    int		ns;
+
+    nb = numTiles(m_Bands, m_TileBands);
+    ns = numTiles(m_Samples, m_TileSamples);
+    return new int[]{
+      (index % nb) * m_TileBands,
+      (index / (nb * ns)) * m_TileLines,
+      ((index / nb) % ns) * m_TileSamples,
+    };
+  }
+
+  /**
+   * Copies the specified range of bytes into the buffer, decompressing the
+   * tiles that the range touches.
+   *
+   * @param pos		the position of the first byte to read
+   * @param dst		the buffer to copy the bytes into
+   * @param offset	the offset in the buffer
+   * @param length	the number of bytes to copy
+   */
+  @Override
+  public void read(long pos, byte[] dst, int offset, int length) {
+    byte[]	tile;
+    long	elem;
+    int		inPixel;
+    int		b;
+    int		l;
+    int		s;
+    int		nb;
+    int		ns;
+    int		b0;
+    int		l0;
+    int		s0;
+    int		tb;
+    int		ts;
+    int		tl;
+    int		run;
+    int		tileOffset;
+    int		n;
+
+    checkRange(pos, length);
+
+    nb = numTiles(m_Bands, m_TileBands);
+    ns = numTiles(m_Samples, m_TileSamples);
+    while (length > 0) {
+      elem    = pos / m_PixelSize;
+      inPixel = (int) (pos % m_PixelSize);
+      switch (m_Interleave) {
+	case BAND_SEQUENTIAL:
+	  b = (int) (elem / ((long) m_Lines * m_Samples));
+	  l = (int) ((elem / m_Samples) % m_Lines);
+	  s = (int) (elem % m_Samples);
+	  break;
+	case BAND_INTERLEAVED_BY_LINE:
+	  l = (int) (elem / ((long) m_Bands * m_Samples));
+	  b = (int) ((elem / m_Samples) % m_Bands);
+	  s = (int) (elem % m_Samples);
+	  break;
+	case BAND_INTERLEAVED_BY_PIXEL:
+	  l = (int) (elem / ((long) m_Samples * m_Bands));
+	  s = (int) ((elem / m_Bands) % m_Samples);
+	  b = (int) (elem % m_Bands);
+	  break;
+	default:
+	  throw new IllegalStateException("Unhandled interleave: " + m_Interleave);
+      }
+
+      b0   = (b / m_TileBands) * m_TileBands;
+      l0   = (l / m_TileLines) * m_TileLines;
+      s0   = (s / m_TileSamples) * m_TileSamples;
+      tb   = extent(b0, m_TileBands, m_Bands);
+      tl   = extent(l0, m_TileLines, m_Lines);
+      ts   = extent(s0, m_TileSamples, m_Samples);
+      tile = getTile(((l / m_TileLines) * ns + (s / m_TileSamples)) * nb + (b / m_TileBands));
+      switch (m_Interleave) {
+	case BAND_SEQUENTIAL:
+	  tileOffset = ((b - b0) * tl + (l - l0)) * ts + (s - s0);
+	  run        = s0 + ts - s;
+	  break;
+	case BAND_INTERLEAVED_BY_LINE:
+	  tileOffset = ((l - l0) * tb + (b - b0)) * ts + (s - s0);
+	  run        = s0 + ts - s;
+	  break;
+	default:
+	  tileOffset = ((l - l0) * ts + (s - s0)) * tb + (b - b0);
+	  run        = b0 + tb - b;
+	  break;
+      }
+
+      n = Math.min(run * m_PixelSize - inPixel, length);
+      System.arraycopy(tile, tileOffset * m_PixelSize + inPixel, dst, offset, n);
+      pos    += n;
+      offset += n;
+      length -= n;
+    }
+  }
+
+  /**
+   * Closes the chunk file and drops the cached tiles.
+   */
+  @Override
+  public synchronized void close() {
+    m_Cache = null;
+    if (m_Channel != null) {
+      try {
+	m_Channel.close();
+      }
+      catch (IOException e) {
+	// ignored
+      }
+      m_Channel = null;
+    }
+  }
+
+  /**
+   * Returns the size of the file header, including the index.
+   *
+   * @param numTiles	the number of tiles
+   * @return		the size in bytes
+   */
+  protected static long headerSize(int numTiles) {
+    return MAGIC.length() + 1 + 10 * 4 + (long) numTiles * 12;
+  }
+
+  /**
+   * Returns the number of tiles along a dimension.
+   *
+   * @param size	the size of the dimension
+   * @param tileSize	the size of the tiles along the dimension
+   * @return		the number of tiles
+   */
+  protected static int numTiles(int size, int tileSize) {
+    return (size + tileSize - 1) / tileSize;
+  }
+
+  /**
+   * Returns the size of the tile along a dimension, which is smaller for
+   * the last tile if the size isn't a multiple of the tile size.
+   *
+   * @param start	the start of the tile
+   * @param tileSize	the size of the tiles along the dimension
+   * @param size	the size of the dimension
+   * @return		the size of the tile
+   */
+  protected static int extent(int start, int tileSize, int size) {
+    return Math.min(tileSize, size - start);
+  }
+
+  /**
+   * Writes the data from the storage as chunk file. The tiles get assembled
+   * and compressed in batches, in parallel.
+   *
+   * @param storage	the storage with the data
+   * @param layout	the layout of the data
+   * @param output	the chunk file to write
+   * @param tileBands	the bands per tile
+   * @param tileLines	the lines per tile
+   * @param tileSamples	the samples per tile
+   * @param codec	the compression to use
+   * @throws IOException	if writing fails
+   */
+  public static void write(Storage storage, Layout layout, File output, int tileBands, int tileLines, int tileSamples, ChunkCodec codec) throws IOException {
+    ByteBuffer		header;
+    long[]		positions;
+    int[]		lengths;
+    byte[][]		batch;
+    int			nb;
+    int			nl;
+    int			ns;
+    int			numTiles;
+    int			batchSize;
+    long		pos;
+    int			i;
+    int			n;
+
+    if ((tileBands < 1) || (tileLines < 1) || (tileSamples < 1))
+      throw new IllegalArgumentException("Tile dimensions must be at least 1: " + tileBands + "x" + tileLines + "x" + tileSamples);
+    if ((long) tileBands * tileLines * tileSamples * layout.getPixelSize() > MAX_ARRAY_LENGTH)
+      throw new IllegalArgumentException("Tile too large to fit into an array: " + tileBands + "x" + tileLines + "x" + tileSamples);
+
+    tileBands   = Math.min(tileBands, layout.getBands());
+    tileLines   = Math.min(tileLines, layout.getLines());
+    tileSamples = Math.min(tileSamples, layout.getSamples());
+    nb          = numTiles(layout.getBands(), tileBands);
+    nl          = numTiles(layout.getLines(), tileLines);
+    ns          = numTiles(layout.getSamples(), tileSamples);
+    numTiles    = nb * nl * ns;
+    positions   = new long[numTiles];
+    lengths     = new int[numTiles];
+    header      = ByteBuffer.allocate((int) headerSize(numTiles));
+    header.put(MAGIC.getBytes(StandardCharsets.US_ASCII));
+    header.put(VERSION);
+    header.putInt(layout.getBands());
+    header.putInt(layout.getLines());
+    header.putInt(layout.getSamples());
+    header.putInt(layout.getPixelSize());
+    header.putInt(layout.getInterleave().ordinal());
+    header.putInt(tileBands);
+    header.putInt(tileLines);
+    header.putInt(tileSamples);
+    header.putInt(codec.ordinal());
+    header.putInt(numTiles);
+
+    final int fTileBands   = tileBands;
+    final int fTileLines   = tileLines;
+    final int fTileSamples = tileSamples;
+    try (FileChannel channel = FileChannel.open(output.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      pos       = header.capacity();
+      batchSize = Math.max(1, Runtime.getRuntime().availableProcessors() * 4);
+      batch     = new byte[batchSize][];
+      for (i = 0; i < numTiles; i += batchSize) {
+	n = Math.min(batchSize, numTiles - i);
+	final int start = i;
+	final byte[][] fBatch = batch;
+	IntStream.range(0, n).parallel().forEach(t ->
+	  fBatch[t] = compress(readTile(storage, layout, start + t, fTileBands, fTileLines, fTileSamples), codec));
+	for (int t = 0; t < n; t++) {
+	  positions[i + t] = pos;
+	  lengths[i + t]   = batch[t].length;
+	  writeFully(channel, ByteBuffer.wrap(batch[t]), pos);
+	  pos += batch[t].length;
+	  batch[t] = null;
+	}
+      }
+
+      for (i = 0; i < numTiles; i++) {
+	header.putLong(positions[i]);
+	header.putInt(lengths[i]);
+      }
+      header.flip();
+      writeFully(channel, header, 0);
+    }
+  }
+
+  /**
+   * Writes the buffer at the specified position.
+   *
+   * @param channel	the channel to write to
+   * @param buffer	the bytes to write
+   * @param pos		the position in the file
+   * @throws IOException	if writing fails
+   */
+  protected static void writeFully(FileChannel channel, ByteBuffer buffer, long pos) throws IOException {
+    while (buffer.hasRemaining())
+      pos += channel.write(buffer, pos);
+  }
+
+  /**
+   * Assembles the bytes of the tile from the storage, in the interleave of the data.
+   *
+   * @param storage	the storage with the data
+   * @param layout	the layout of the data
+   * @param index	the index of the tile
+   * @param tileBands	the bands per tile
+   * @param tileLines	the lines per tile
+   * @param tileSamples	the samples per tile
+   * @return		the bytes of the tile
+   */
+  protected static byte[] readTile(Storage storage, Layout layout, int index, int tileBands, int tileLines, int tileSamples) {
+    byte[]	result;
+    Layout	tile;
+    int		nb;
+    int		ns;
+    int		b0;
+    int		l0;
+    int		s0;
+    int		b;
+    int		l;
+    int		s;
+
+    nb   = numTiles(layout.getBands(), tileBands);
+    ns   = numTiles(layout.getSamples(), tileSamples);
+    b0   = (index % nb) * tileBands;
+    l0   = (index / (nb * ns)) * tileLines;
+    s0   = ((index / nb) % ns) * tileSamples;
+    tile = AbstractLayout.forInterleave(
+      layout.getInterleave(),
+      extent(b0, tileBands, layout.getBands()),
+      extent(l0, tileLines, layout.getLines()),
+      extent(s0, tileSamples, layout.getSamples()),
+      layout.getPixelSize());
+    result = new byte[(int) tile.length()];
+
+    if (layout.getInterleave() == Interleave.BAND_INTERLEAVED_BY_PIXEL) {
+      for (l = 0; l < tile.getLines(); l++) {
+	for (s = 0; s < tile.getSamples(); s++)
+	  storage.read(layout.offset(b0, l0 + l, s0 + s), result, (int) tile.offset(0, l, s), tile.getBands() * tile.getPixelSize());
+      }
+    }
+    else {
+      for (b = 0; b < tile.getBands(); b++) {
+	for (l = 0; l < tile.getLines(); l++)
+	  storage.read(layout.offset(b0 + b, l0 + l, s0), result, (int) tile.offset(b, l, 0), tile.getSamples() * tile.getPixelSize());
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Compresses the bytes of a tile.
+   *
+   * @param data	the bytes to compress
+   * @param codec	the compression to use
+   * @return		the compressed bytes
+   */
+  protected static byte[] compress(byte[] data, ChunkCodec codec) {
+    Deflater	deflater;
+    byte[]	buffer;
+    byte[]	result;
+    int		n;
+
+    switch (codec) {
+      case NONE:
+	return data;
+      case DEFLATE:
+	deflater = new Deflater();
+	try {
+	  deflater.setInput(data);
+	  deflater.finish();
+	  buffer = new byte[data.length + data.length / 1000 + 64];
+	  n      = 0;
+	  while (!deflater.finished()) {
+	    if (n == buffer.length)
+	      buffer = Arrays.copyOf(buffer, buffer.length * 2);
+	    n += deflater.deflate(buffer, n, buffer.length - n);
+	  }
+	  result = Arrays.copyOf(buffer, n);
+	}
+	finally {
+	  deflater.end();
+	}
+	return result;
+      default:
+	throw new IllegalStateException("Unhandled codec: " + codec);
+    }
+  }
+}
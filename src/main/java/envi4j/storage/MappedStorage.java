@@ -0,0 +1,179 @@
+/*
+ * MappedStorage.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package envi4j.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Storage that memory-maps the data file. Files larger than {@link #WINDOW_SIZE}
+ * get split into multiple mapped windows. Only the pages that get accessed
+ * are loaded by the operating system. Any bytes before the specified offset
+ * (e.g., an embedded header) are not part of the mapping.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class MappedStorage
+  extends AbstractStorage {
+
+  /** the size of a mapped window (1GB). */
+  public final static int WINDOW_SIZE = 1 << 30;
+
+  /** the file that is mapped. */
+  protected File m_File;
+
+  /** the position in the file where the data starts. */
+  protected long m_Offset;
+
+  /** the number of bytes. */
+  protected long m_Length;
+
+  /** the mapped windows. */
+  protected transient MappedByteBuffer[] m_Windows;
+
+  /**
+   * Maps the specified file.
+   *
+   * @param file	the file to map
+   * @throws IOException	if mapping fails
+   */
+  public MappedStorage(File file) throws IOException {
+    this(file, 0);
+  }
+
+  /**
+   * Maps the specified file, starting at the offset.
+   *
+   * @param file	the file to map
+   * @param offset	the position in the file where the data starts
+   * @throws IOException	if mapping fails
+   */
+  public MappedStorage(File file, long offset) throws IOException {
+    int		i;
+    long	pos;
+    long	size;
+
+    m_File   = file;
+    m_Offset = offset;
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      if ((offset < 0) || (offset > channel.size()))
+	throw new IOException("Invalid offset " + offset + " for file of size " + channel.size() + ": " + file);
+      m_Length  = channel.size() - offset;
+      m_Windows = new MappedByteBuffer[(int) ((m_Length + WINDOW_SIZE - 1) / WINDOW_SIZE)];
+      for (i = 0; i < m_Windows.length; i++) {
+	pos          = (long) i * WINDOW_SIZE;
+	size         = Math.min(WINDOW_SIZE, m_Length - pos);
+	m_Windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset + pos, size);
+      }
+    }
+  }
+
+  /**
+   * Returns the file that is mapped.
+   *
+   * @return		the file
+   */
+  public File getFile() {
+    return m_File;
+  }
+
+  /**
+   * Returns the number of bytes available.
+   *
+   * @return		the number of bytes
+   */
+  @Override
+  public long length() {
+    return m_Length;
+  }
+
+  /**
+   * Returns the byte at the specified position.
+   *
+   * @param pos		the position of the byte
+   * @return		the byte
+   */
+  @Override
+  public byte get(long pos) {
+    return m_Windows[(int) (pos / WINDOW_SIZE)].get((int) (pos % WINDOW_SIZE));
+  }
+
+  /**
+   * Copies the specified range of bytes into the buffer.
+   *
+   * @param pos		the position of the first byte to read
+   * @param dst		the buffer to copy the bytes into
+   * @param offset	the offset in the buffer
+   * @param length	the number of bytes to copy
+   */
+  @Override
+  public void read(long pos, byte[] dst, int offset, int length) {
+    MappedByteBuffer	window;
+    int			start;
+    int			len;
+
+    checkRange(pos, length);
+
+    while (length > 0) {
+      window = m_Windows[(int) (pos / WINDOW_SIZE)];
+      start  = (int) (pos % WINDOW_SIZE);
+      len    = Math.min(length, window.limit() - start);
+      window.duplicate().position(start).get(dst, offset, len);
+      pos    += len;
+      offset += len;
+      length -= len;
+    }
+  }
+
+  /**
+   * Returns a buffer with the specified range of bytes, starting at
+   * position 0. The buffer is a view on the mapping, unless the range
+   * spans two windows.
+   *
+   * @param pos		the position of the first byte
+   * @param length	the number of bytes
+   * @return		the buffer
+   */
+  @Override
+  public ByteBuffer view(long pos, int length) {
+    int		start;
+
+    checkRange(pos, length);
+
+    start = (int) (pos % WINDOW_SIZE);
+    if ((long) start + length > WINDOW_SIZE)
+      return super.view(pos, length);
+
+    return m_Windows[(int) (pos / WINDOW_SIZE)].duplicate().position(start).limit(start + length).slice();
+  }
+  /**
+   * Returns whether {@link #view(long, int)} returns a view on the
+   * underlying data for the specified range, i.e., the range doesn't span
+   * two windows.
+   *
+   * @param pos		the position of the first byte
+   * @param length	the number of bytes
+   * @return		true if no copy is involved
+   */
+  @Override
+  public boolean isView(long pos, int length) {
+    return (pos % WINDOW_SIZE) + length <= WINDOW_SIZE;
+  }
+
+
+  /**
+   * Releases the mapped windows. The actual unmapping happens once the
+   * buffers get garbage collected.
+   */
+  @Override
+  public void close() {
+    m_Windows = new MappedByteBuffer[0];
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ * SegmentedStorage.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package envi4j.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * In-memory storage that splits the bytes into segments of
+ * {@link #SEGMENT_SIZE}, allowing for more than 2GB of data.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class SegmentedStorage
+  extends AbstractStorage {
+
+  /** the size of a segment (1GB). */
+  public final static int SEGMENT_SIZE = 1 << 30;
+
+  /** the segments. */
+  protected byte[][] m_Segments;
+
+  /** the number of bytes. */
+  protected long m_Length;
+
+  /**
+   * Initializes the storage with empty segments.
+   *
+   * @param length	the number of bytes
+   */
+  public SegmentedStorage(long length) {
+    int		i;
+
+    if (length < 0)
+      throw new IllegalArgumentException("Length cannot be negative: " + length);
+
+    m_Length   = length;
+    m_Segments = new byte[(int) ((length + SEGMENT_SIZE - 1) / SEGMENT_SIZE)][];
+    for (i = 0; i < m_Segments.length; i++)
+      m_Segments[i] = new byte[(int) Math.min(SEGMENT_SIZE, length - (long) i * SEGMENT_SIZE)];
+  }
+
+  /**
+   * Reads the complete file into memory.
+   *
+   * @param file	the file to read
+   * @throws IOException	if reading fails
+   */
+  public SegmentedStorage(File file) throws IOException {
+    this(file, 0);
+  }
+
+  /**
+   * Reads the file into memory, starting at the offset.
+   *
+   * @param file	the file to read
+   * @param offset	the position in the file where the data starts
+   * @throws IOException	if reading fails
+   */
+  public SegmentedStorage(File file, long offset) throws IOException {
+    this(file.length() - offset);
+
+    ByteBuffer	buffer;
+    long	pos;
+
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      pos = offset;
+      for (byte[] segment: m_Segments) {
+	buffer = ByteBuffer.wrap(segment);
+	while (buffer.hasRemaining()) {
+	  if (channel.read(buffer, pos + buffer.position()) < 0)
+	    throw new IOException("Premature end of file: " + file);
+	}
+	pos += segment.length;
+      }
+    }
+  }
+
+  /**
+   * Returns the number of bytes available.
+   *
+   * @return		the number of bytes
+   */
+  @Override
+  public long length() {
+    return m_Length;
+  }
+
+  /**
+   * Returns the byte at the specified position.
+   *
+   * @param pos		the position of the byte
+   * @return		the byte
+   */
+  @Override
+  public byte get(long pos) {
+    return m_Segments[(int) (pos / SEGMENT_SIZE)][(int) (pos % SEGMENT_SIZE)];
+  }
+
+  /**
+   * Copies the specified range of bytes into the buffer.
+   *
+   * @param pos		the position of the first byte to read
+   * @param dst		the buffer to copy the bytes into
+   * @param offset	the offset in the buffer
+   * @param length	the number of bytes to copy
+   */
+  @Override
+  public void read(long pos, byte[] dst, int offset, int length) {
+    byte[]	segment;
+    int		start;
+    int		len;
+
+    checkRange(pos, length);
+
+    while (length > 0) {
+      segment = m_Segments[(int) (pos / SEGMENT_SIZE)];
+      start   = (int) (pos % SEGMENT_SIZE);
+      len     = Math.min(length, segment.length - start);
+      System.arraycopy(segment, start, dst, offset, len);
+      pos    += len;
+      offset += len;
+      length -= len;
+    }
+  }
+
+  /**
+   * Returns a buffer with the specified range of bytes, starting at
+   * position 0. The buffer wraps the segment, unless the range spans
+   * two segments.
+   *
+   * @param pos		the position of the first byte
+   * @param length	the number of bytes
+   * @return		the buffer
+   */
+  @Override
+  public ByteBuffer view(long pos, int length) {
+    int		start;
+
+    checkRange(pos, length);
+
+    start = (int) (pos % SEGMENT_SIZE);
+    if ((long) start + length > SEGMENT_SIZE)
+      return super.view(pos, length);
+
+    return ByteBuffer.wrap(m_Segments[(int) (pos / SEGMENT_SIZE)], start, length).slice();
+  }
+  /**
+   * Returns whether {@link #view(long, int)} returns a view on the
+   * underlying data for the specified range, i.e., the range doesn't span
+   * two segments.
+   *
+   * @param pos		the position of the first byte
+   * @param length	the number of bytes
+   * @return		true if no copy is involved
+   */
+  @Override
+  public boolean isView(long pos, int length) {
+    return (pos % SEGMENT_SIZE) + length <= SEGMENT_SIZE;
+  }
+
+}
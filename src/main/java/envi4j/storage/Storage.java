@@ -0,0 +1,82 @@
+/*
+ * Storage.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package envi4j.storage;
+
+import java.io.Closeable;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+
+/**
+ * Interface for the storage backends that provide access to the raw bytes
+ * of the data file.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public interface Storage
+  extends Serializable, Closeable {
+
+  /** the maximum length of an array. */
+  public int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+  /**
+   * Returns the number of bytes available.
+   *
+   * @return		the number of bytes
+   */
+  public long length();
+
+  /**
+   * Returns the byte at the specified position.
+   *
+   * @param pos		the position of the byte
+   * @return		the byte
+   */
+  public byte get(long pos);
+
+  /**
+   * Copies the specified range of bytes into the buffer.
+   *
+   * @param pos		the position of the first byte to read
+   * @param dst		the buffer to copy the bytes into
+   * @param offset	the offset in the buffer
+   * @param length	the number of bytes to copy
+   */
+  public void read(long pos, byte[] dst, int offset, int length);
+
+  /**
+   * Returns a buffer with the specified range of bytes, starting at
+   * position 0. If possible, the buffer is a view on the underlying
+   * data rather than a copy, so it must not be modified.
+   *
+   * @param pos		the position of the first byte
+   * @param length	the number of bytes
+   * @return		the buffer
+   */
+  public ByteBuffer view(long pos, int length);
+
+  /**
+   * Returns whether {@link #view(long, int)} returns a view on the
+   * underlying data for the specified range, i.e., without copying.
+   *
+   * @param pos		the position of the first byte
+   * @param length	the number of bytes
+   * @return		true if no copy is involved
+   */
+  public boolean isView(long pos, int length);
+
+  /**
+   * Returns all the bytes as array.
+   *
+   * @return		the bytes
+   */
+  public byte[] toArray();
+
+  /**
+   * Releases any resources held by the storage.
+   */
+  @Override
+  public void close();
+}
@@ -0,0 +1,40 @@
+/*
+ * StorageType.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package envi4j.storage;
+
+/**
+ * Defines how the data file gets accessed.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public enum StorageType {
+
+  ARRAY("Reads the complete file into memory, using segments for files over 2GB"),
+  MAPPED("Memory-maps the file"),
+  LAZY("Keeps the file open and reads only the requested bytes"),
+  CHUNKED("Reads from a compressed chunk file, decompressing only the requested tiles");
+
+  /** the description. */
+  private String m_Description;
+
+  /**
+   * Initializes the enum item.
+   *
+   * @param description	the description
+   */
+  private StorageType(String description) {
+    m_Description = description;
+  }
+
+  /**
+   * Returns the description.
+   *
+   * @return		the description
+   */
+  public String getDescription() {
+    return m_Description;
+  }
+}
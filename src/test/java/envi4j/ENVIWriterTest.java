@@ -0,0 +1,177 @@
+/*
+ * ENVIWriterTest.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package envi4j;
+
+import envi4j.core.FileUtils;
+import envi4j.dataset.AbstractDataset;
+import envi4j.dataset.Float32Dataset;
+import envi4j.header.ByteOrder;
+import envi4j.header.DataType;
+import envi4j.header.Header;
+import envi4j.header.Interleave;
+import envi4j.storage.StorageType;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests writing in orders that differ from the interleave, with a page cache
+ * small enough to force pages to be written out and read back.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class ENVIWriterTest {
+
+  /** the number of bands. */
+  public final static int BANDS = 5;
+
+  /** the number of lines. */
+  public final static int LINES = 70;
+
+  /** the number of samples. */
+  public final static int SAMPLES = 130;
+
+  /** for the files. */
+  @Rule
+  public TemporaryFolder m_Folder = new TemporaryFolder();
+
+  /**
+   * Returns the expected value.
+   *
+   * @param band	the band
+   * @param line	the line
+   * @param sample	the sample
+   * @return		the value
+   */
+  protected static double value(int band, int line, int sample) {
+    return band * 100000 + line * SAMPLES + sample;
+  }
+
+  /**
+   * Writes the data with the specified mode and checks the bands after loading.
+   *
+   * @param interleave	the interleave to write
+   * @param byPixel	whether to write pixels rather than bands
+   * @throws Exception	if writing fails
+   */
+  protected void check(Interleave interleave, boolean byPixel) throws Exception {
+    File		hdr;
+    AbstractDataset	dataset;
+    double[]		values;
+    float[]		expected;
+    int			b;
+    int			l;
+    int			s;
+
+    hdr = new File(m_Folder.getRoot(), interleave.getType() + (byPixel ? "-pixel" : "-band") + ".hdr");
+    try (ENVIWriter writer = new ENVIWriter(hdr, Header.create(SAMPLES, LINES, BANDS, DataType.FLOAT32, interleave, ByteOrder.BIG_ENDIAN))) {
+      writer.setCacheSize(2 * ENVIWriter.PAGE_SIZE);
+      if (byPixel) {
+	values = new double[BANDS];
+	for (l = 0; l < LINES; l++) {
+	  for (s = 0; s < SAMPLES; s++) {
+	    for (b = 0; b < BANDS; b++)
+	      values[b] = value(b, l, s);
+	    writer.writePixel(l, s, values);
+	  }
+	}
+      }
+      else {
+	values = new double[LINES * SAMPLES];
+	for (b = 0; b < BANDS; b++) {
+	  for (l = 0; l < LINES; l++) {
+	    for (s = 0; s < SAMPLES; s++)
+	      values[l * SAMPLES + s] = value(b, l, s);
+	  }
+	  writer.writeBand(b, values);
+	}
+      }
+    }
+
+    dataset = ENVI.load(hdr, false);
+    assertNotNull(dataset);
+    expected = new float[LINES * SAMPLES];
+    for (b = 0; b < BANDS; b++) {
+      for (l = 0; l < LINES; l++) {
+	for (s = 0; s < SAMPLES; s++)
+	  expected[l * SAMPLES + s] = (float) value(b, l, s);
+      }
+      assertArrayEquals(interleave + ", band " + b, expected, ((Float32Dataset) dataset).getBandFlat(b), 0);
+    }
+    dataset.close();
+  }
+
+  /**
+   * Writes bands into every interleave.
+   *
+   * @throws Exception	if writing fails
+   */
+  @Test
+  public void testBands() throws Exception {
+    for (Interleave interleave: Interleave.values())
+      check(interleave, false);
+  }
+
+  /**
+   * Writes pixels into every interleave.
+   *
+   * @throws Exception	if writing fails
+   */
+  @Test
+  public void testPixels() throws Exception {
+    for (Interleave interleave: Interleave.values())
+      check(interleave, true);
+  }
+
+  /**
+   * Checks that saving doesn't overwrite the files the dataset reads from.
+   *
+   * @throws Exception	if writing fails
+   */
+  @Test
+  public void testOverwriteSource() throws Exception {
+    File		hdr;
+    File		other;
+    AbstractDataset	dataset;
+    float[]		expected;
+
+    check(Interleave.BAND_SEQUENTIAL, false);
+    hdr   = new File(m_Folder.getRoot(), Interleave.BAND_SEQUENTIAL.getType() + "-band.hdr");
+    other = new File(m_Folder.getRoot(), "other.hdr");
+    Files.copy(hdr.toPath(), other.toPath());
+    for (StorageType type: new StorageType[]{StorageType.MAPPED, StorageType.LAZY}) {
+      dataset  = ENVI.load(hdr, false, type);
+      expected = ((Float32Dataset) dataset).getBandFlat(BANDS - 1);
+      try {
+	ENVI.save(dataset, hdr);
+	fail(type + ": overwrote the header of the dataset");
+      }
+      catch (IllegalArgumentException e) {
+	// expected
+      }
+      dataset.close();
+
+      // header from elsewhere, but same data file
+      dataset = AbstractDataset.read(Header.read(other), FileUtils.replaceExtension(hdr, ENVIWriter.EXTENSION), false, type);
+      try {
+	ENVI.save(dataset, hdr);
+	fail(type + ": overwrote the data file of the dataset");
+      }
+      catch (IllegalArgumentException e) {
+	// expected
+      }
+      assertArrayEquals(type.toString(), expected, ((Float32Dataset) dataset).getBandFlat(BANDS - 1), 0);
+      dataset.close();
+    }
+  }
+}
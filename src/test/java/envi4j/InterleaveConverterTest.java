@@ -0,0 +1,163 @@
+/*
+ * InterleaveConverterTest.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package envi4j;
+
+import envi4j.dataset.AbstractDataset;
+import envi4j.header.ByteOrder;
+import envi4j.header.DataType;
+import envi4j.header.Header;
+import envi4j.header.Interleave;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests converting between interleaves.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class InterleaveConverterTest {
+
+  /** the number of bands. */
+  public final static int BANDS = 4;
+
+  /** the number of lines. */
+  public final static int LINES = 23;
+
+  /** the number of samples. */
+  public final static int SAMPLES = 17;
+
+  /** for the files. */
+  @Rule
+  public TemporaryFolder m_Folder = new TemporaryFolder();
+
+  /**
+   * Writes a random INT32 dataset in the specified interleave.
+   *
+   * @param interleave	the interleave to write
+   * @return		the .hdr file
+   * @throws Exception	if writing fails
+   */
+  protected File source(Interleave interleave) throws Exception {
+    File	result;
+    Random	rnd;
+    double[]	values;
+    int		b;
+    int		i;
+
+    result = new File(m_Folder.getRoot(), "src-" + interleave.getType() + ".hdr");
+    rnd    = new Random(1);
+    values = new double[LINES * SAMPLES];
+    try (ENVIWriter writer = new ENVIWriter(result, Header.create(SAMPLES, LINES, BANDS, DataType.INT32, interleave, ByteOrder.LITTLE_ENDIAN))) {
+      for (b = 0; b < BANDS; b++) {
+	for (i = 0; i < values.length; i++)
+	  values[i] = rnd.nextInt();
+	writer.writeBand(b, values);
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Converts between all pairs of interleaves and compares the data.
+   *
+   * @param budget	the memory budget of the converter
+   * @param parallelism	the number of threads
+   * @throws Exception	if conversion fails
+   */
+  protected void check(long budget, int parallelism) throws Exception {
+    InterleaveConverter	converter;
+    AbstractDataset	source;
+    AbstractDataset	converted;
+    File		output;
+
+    converter = new InterleaveConverter(budget, parallelism);
+    for (Interleave from: Interleave.values()) {
+      source = ENVI.load(source(from), true);
+      assertNotNull(source);
+      for (Interleave to: Interleave.values()) {
+	output = new File(m_Folder.getRoot(), from.getType() + "-" + to.getType() + ".hdr");
+	converter.convert(source.getHeader().getFile(), output, to);
+	converted = ENVI.load(output, true);
+	assertNotNull(from + " -> " + to, converted);
+	assertEquals(from + " -> " + to, to, converted.getInterleave());
+	assertArrayEquals(from + " -> " + to + ", budget " + budget, source.toSequential(), converted.toSequential());
+	converted.close();
+      }
+      source.close();
+    }
+  }
+
+  /**
+   * Converts with a budget that fits all the data into a single block.
+   *
+   * @throws Exception	if conversion fails
+   */
+  @Test
+  public void testSingleBlock() throws Exception {
+    check(InterleaveConverter.DEFAULT_BUDGET, 0);
+  }
+
+  /**
+   * Converts with budgets smaller than a band, forcing blocks of a single
+   * line and blocks that don't divide the number of lines.
+   *
+   * @throws Exception	if conversion fails
+   */
+  @Test
+  public void testBlocks() throws Exception {
+    check(1, 0);
+    check(3L * 5 * BANDS * SAMPLES * 4, 2);
+  }
+
+  /**
+   * Checks that converting a dataset onto itself gets rejected.
+   *
+   * @throws Exception	if conversion fails
+   */
+  @Test
+  public void testSameFile() throws Exception {
+    InterleaveConverter	converter;
+    AbstractDataset	source;
+    File		hdr;
+    byte[]		expected;
+
+    hdr      = source(Interleave.BAND_SEQUENTIAL);
+    source   = ENVI.load(hdr, true);
+    expected = source.toSequential();
+    source.close();
+
+    converter = new InterleaveConverter();
+    try {
+      converter.convert(hdr, hdr, Interleave.BAND_INTERLEAVED_BY_PIXEL);
+      fail("Converted the dataset onto itself");
+    }
+    catch (IllegalArgumentException e) {
+      // expected
+    }
+    try {
+      converter.convert(hdr, new File(hdr.getParentFile(), "sub/../" + hdr.getName()), Interleave.BAND_INTERLEAVED_BY_LINE);
+      fail("Converted the dataset onto itself");
+    }
+    catch (IllegalArgumentException e) {
+      // expected
+    }
+
+    source = ENVI.load(hdr, true);
+    assertEquals(Interleave.BAND_SEQUENTIAL, source.getInterleave());
+    assertArrayEquals(expected, source.toSequential());
+    source.close();
+  }
+}
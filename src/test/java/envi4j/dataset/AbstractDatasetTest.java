@@ -0,0 +1,164 @@
+/*
+ * AbstractDatasetTest.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package envi4j.dataset;
+
+import envi4j.header.ByteOrder;
+import envi4j.header.DataType;
+import envi4j.header.Header;
+import envi4j.header.Interleave;
+import envi4j.render.Stretch;
+import envi4j.render.StretchType;
+import org.junit.Test;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the index checks of the datasets.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class AbstractDatasetTest {
+
+  /** the number of samples. */
+  public final static int SAMPLES = 4;
+
+  /** the number of lines. */
+  public final static int LINES = 3;
+
+  /** the number of bands. */
+  public final static int BANDS = 2;
+
+  /**
+   * Creates a FLOAT32 dataset whose values are their positions in the file.
+   *
+   * @param interleave	the interleave to use
+   * @return		the dataset
+   */
+  protected Float32Dataset float32(Interleave interleave) {
+    ByteBuffer	bb;
+    int		i;
+
+    bb = ByteBuffer.allocate(SAMPLES * LINES * BANDS * 4);
+    for (i = 0; i < SAMPLES * LINES * BANDS; i++)
+      bb.putFloat(i);
+
+    return new Float32Dataset(Header.create(SAMPLES, LINES, BANDS, DataType.FLOAT32, interleave, ByteOrder.BIG_ENDIAN), bb.array(), true);
+  }
+
+  /**
+   * Checks that the code throws an {@link IndexOutOfBoundsException}.
+   *
+   * @param msg		the message for the failure
+   * @param code	the code to run
+   */
+  protected void assertOutOfBounds(String msg, Runnable code) {
+    try {
+      code.run();
+      fail(msg + ": no exception");
+    }
+    catch (IndexOutOfBoundsException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Checks that invalid band indices get rejected.
+   */
+  @Test
+  public void testInvalidBand() {
+    for (Interleave interleave: Interleave.values()) {
+      Float32Dataset dataset = float32(interleave);
+      for (int band: new int[]{-1, BANDS}) {
+	String msg = interleave + ", band " + band;
+	assertOutOfBounds(msg + ", getBandFlat", () -> dataset.getBandFlat(band));
+	assertOutOfBounds(msg + ", getBandInto", () -> dataset.getBandInto(band, new float[SAMPLES * LINES]));
+	assertOutOfBounds(msg + ", getRegion", () -> dataset.getRegion(band, 0, 0, 1, SAMPLES));
+	assertOutOfBounds(msg + ", getSubcube", () -> dataset.getSubcube(new int[]{0, band}, new Rectangle(0, 0, SAMPLES, 1)));
+	assertOutOfBounds(msg + ", toBand", () -> dataset.toBand(band));
+      }
+      assertArrayEquals(interleave.toString(), dataset.getRegion(BANDS - 1, 1, 0, 1, SAMPLES), dataset.getSubcube(new int[]{BANDS - 1}, new Rectangle(0, 1, SAMPLES, 1))[0], 0);
+    }
+  }
+
+  /**
+   * Checks that invalid pixel coordinates get rejected.
+   */
+  @Test
+  public void testInvalidPixel() {
+    for (Interleave interleave: Interleave.values()) {
+      Float32Dataset dataset = float32(interleave);
+      for (int[] pixel: new int[][]{{0, -1}, {0, SAMPLES}, {-1, 0}, {LINES, 0}, {LINES - 1, SAMPLES}}) {
+	String msg = interleave + ", pixel " + pixel[0] + "/" + pixel[1];
+	assertOutOfBounds(msg + ", getSpectrum", () -> dataset.getSpectrum(pixel[0], pixel[1]));
+	assertOutOfBounds(msg + ", getSpectrumInto", () -> dataset.getSpectrumInto(pixel[0], pixel[1], new float[BANDS]));
+	assertOutOfBounds(msg + ", toPixel", () -> dataset.toPixel(0, pixel[0], pixel[1]));
+      }
+      assertOutOfBounds(interleave + ", toPixel", () -> dataset.toPixel(BANDS, 0, 0));
+    }
+  }
+
+  /**
+   * Checks that the line iterator returns the same values as the regions,
+   * including a partial last block.
+   */
+  @Test
+  public void testLineIterator() {
+    Float32Dataset	dataset;
+    LineIterator	iter;
+    float[][]		values;
+    String		msg;
+    int			l;
+    int			b;
+
+    for (Interleave interleave: Interleave.values()) {
+      dataset = float32(interleave);
+      for (int readAhead: new int[]{1, 2, LINES}) {
+	iter = new LineIterator(dataset, readAhead);
+	for (l = 0; l < LINES; l++) {
+	  values = iter.next();
+	  for (b = 0; b < BANDS; b++) {
+	    msg = interleave + ", read-ahead " + readAhead + ", line " + l + ", band " + b;
+	    assertArrayEquals(msg, dataset.getRegion(b, l, 0, 1, SAMPLES), values[b], 0);
+	  }
+	}
+	assertFalse(interleave + ", read-ahead " + readAhead, iter.hasNext());
+      }
+    }
+  }
+
+  /**
+   * Checks that rendering with fixed values doesn't compute statistics.
+   */
+  @Test
+  public void testValueStretch() {
+    Float32Dataset	dataset;
+    BufferedImage	image;
+
+    dataset = float32(Interleave.BAND_INTERLEAVED_BY_PIXEL);
+    dataset.setStretch(new Stretch(StretchType.VALUE, 0, SAMPLES * LINES * BANDS - 1));
+    image = dataset.toRGB(1, 0, 1);
+    assertNull(dataset.m_Statistics[0]);
+    assertNull(dataset.m_Statistics[1]);
+    // pixel (0,0): band 0 = 0, band 1 = 1
+    assertEquals(0x0B000B, image.getRGB(0, 0) & 0xFFFFFF);
+    dataset.toGray(0);
+    assertNull(dataset.m_Statistics[0]);
+
+    dataset.setStretch(null);
+    dataset.toRGB(1, 0, 1);
+    assertNotNull(dataset.m_Statistics[0]);
+    assertNotNull(dataset.m_Statistics[1]);
+  }
+}
@@ -0,0 +1,266 @@
+/*
+ * BandCacheTest.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package envi4j.dataset;
+
+import envi4j.header.ByteOrder;
+import envi4j.header.DataType;
+import envi4j.header.Header;
+import envi4j.header.Interleave;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests the band cache.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class BandCacheTest {
+
+  /** the number of samples. */
+  public final static int SAMPLES = 13;
+
+  /** the number of lines. */
+  public final static int LINES = 7;
+
+  /** the number of bands. */
+  public final static int BANDS = 3;
+
+  /**
+   * Generates the raw bytes, with every element distinct and non-zero.
+   *
+   * @param size	the size of an element in bytes
+   * @return		the bytes
+   */
+  protected byte[] raw(int size) {
+    ByteBuffer	bb;
+    int		i;
+
+    bb = ByteBuffer.allocate(SAMPLES * LINES * BANDS * 2 * size);
+    for (i = 0; i < SAMPLES * LINES * BANDS * 2; i++) {
+      if (size == 4)
+	bb.putFloat(i + 1);
+      else
+	bb.putDouble(i + 1);
+    }
+
+    return bb.array();
+  }
+
+  /** the size of a FLOAT32 band in bytes. */
+  public final static int BAND_BYTES = SAMPLES * LINES * 4;
+
+  /**
+   * Creates a FLOAT32 dataset.
+   *
+   * @return		the dataset
+   */
+  protected Float32Dataset float32() {
+    return new Float32Dataset(Header.create(SAMPLES, LINES, BANDS, DataType.FLOAT32, Interleave.BAND_SEQUENTIAL, ByteOrder.BIG_ENDIAN), raw(4), true);
+  }
+
+  /**
+   * Checks that the least recently used bands get evicted first.
+   */
+  @Test
+  public void testEvictionOrder() {
+    Float32Dataset	dataset;
+    BandCache		cache;
+
+    dataset = float32();
+    cache   = new BandCache(3 * BAND_BYTES);
+    cache.put(dataset, 0, new float[SAMPLES * LINES]);
+    cache.put(dataset, 1, new float[SAMPLES * LINES]);
+    cache.put(dataset, 2, new float[SAMPLES * LINES]);
+    assertEquals(0, cache.getEvictions());
+    assertEquals(3 * BAND_BYTES, cache.getSize());
+
+    // band 0 becomes the most recently used, i.e., band 1 gets evicted
+    assertNotNull(cache.get(dataset, 0, float[].class));
+    cache.put(dataset, 3, new float[SAMPLES * LINES]);
+    assertEquals(1, cache.getEvictions());
+    assertEquals(3, cache.getCount());
+    assertNull(cache.get(dataset, 1, float[].class));
+    assertNotNull(cache.get(dataset, 0, float[].class));
+    assertNotNull(cache.get(dataset, 2, float[].class));
+    assertNotNull(cache.get(dataset, 3, float[].class));
+  }
+
+  /**
+   * Checks that the byte budget is honored and replacing a band doesn't
+   * count it twice.
+   */
+  @Test
+  public void testBudget() {
+    Float32Dataset	dataset;
+    BandCache		cache;
+
+    dataset = float32();
+    cache   = new BandCache(3 * BAND_BYTES / 2);
+    cache.put(dataset, 0, new float[SAMPLES * LINES]);
+    cache.put(dataset, 0, new float[SAMPLES * LINES]);
+    assertEquals(BAND_BYTES, cache.getSize());
+    assertEquals(0, cache.getEvictions());
+
+    // half a band too large: band 0 has to go
+    cache.put(dataset, 1, new float[SAMPLES * LINES]);
+    assertEquals(BAND_BYTES, cache.getSize());
+    assertEquals(1, cache.getCount());
+    assertEquals(1, cache.getEvictions());
+
+    // the array type is part of the key and the size depends on it
+    cache.put(dataset, 1, new short[SAMPLES * LINES]);
+    assertEquals(BAND_BYTES + SAMPLES * LINES * 2, cache.getSize());
+    assertNull(cache.get(dataset, 1, double[].class));
+  }
+
+  /**
+   * Checks that bands larger than the budget don't get cached and don't
+   * evict anything.
+   */
+  @Test
+  public void testOversizedBand() {
+    Float32Dataset	dataset;
+    BandCache		cache;
+    float[]		expected;
+
+    dataset = float32();
+    cache   = new BandCache(BAND_BYTES - 1);
+    cache.put(dataset, 0, new short[SAMPLES * LINES]);
+    cache.put(dataset, 1, new float[SAMPLES * LINES]);
+    assertEquals(1, cache.getCount());
+    assertEquals(SAMPLES * LINES * 2, cache.getSize());
+    assertEquals(0, cache.getEvictions());
+
+    expected = dataset.getBandFlat(2);
+    dataset.setBandCache(cache);
+    assertArrayEquals(expected, dataset.getBandFlat(2), 0);
+    assertArrayEquals(expected, dataset.getBandFlat(2), 0);
+    assertEquals(2, cache.getMisses());
+    assertEquals(0, cache.getHits());
+  }
+
+  /**
+   * Checks that invalidating removes only the bands of the dataset.
+   */
+  @Test
+  public void testInvalidate() {
+    Float32Dataset	dataset1;
+    Float32Dataset	dataset2;
+    BandCache		cache;
+    int			b;
+
+    dataset1 = float32();
+    dataset2 = float32();
+    cache    = new BandCache(10 * BAND_BYTES);
+    dataset1.setBandCache(cache);
+    dataset2.setBandCache(cache);
+    for (b = 0; b < BANDS; b++) {
+      dataset1.getBandFlat(b);
+      dataset2.getBandFlat(b);
+    }
+    assertEquals(2 * BANDS, cache.getCount());
+
+    cache.invalidate(dataset1);
+    assertEquals(BANDS, cache.getCount());
+    assertEquals(BANDS * BAND_BYTES, cache.getSize());
+    assertNull(cache.get(dataset1, 0, float[].class));
+    assertNotNull(cache.get(dataset2, 0, float[].class));
+
+    // detaching the cache invalidates the dataset as well
+    dataset2.setBandCache(null);
+    assertEquals(0, cache.getCount());
+    assertEquals(0, cache.getSize());
+  }
+
+  /**
+   * Checks the hits/misses/evictions counters when reading bands.
+   */
+  @Test
+  public void testCounters() {
+    Float32Dataset	dataset;
+    BandCache		cache;
+    int			b;
+
+    dataset = float32();
+    cache   = new BandCache(2 * BAND_BYTES);
+    dataset.setBandCache(cache);
+    for (b = 0; b < BANDS; b++)
+      dataset.getBandFlat(b);
+    assertEquals(0, cache.getHits());
+    assertEquals(BANDS, cache.getMisses());
+    assertEquals(BANDS - 2, cache.getEvictions());
+
+    dataset.getBandFlat(BANDS - 1);
+    dataset.getBandFlat(BANDS - 2);
+    dataset.getBandFlat(0);
+    assertEquals(2, cache.getHits());
+    assertEquals(BANDS + 1, cache.getMisses());
+    assertEquals(BANDS - 1, cache.getEvictions());
+
+    cache.clear();
+    assertEquals(0, cache.getHits());
+    assertEquals(0, cache.getMisses());
+    assertEquals(0, cache.getEvictions());
+    assertEquals(0, cache.getCount());
+    assertEquals(0, cache.getSize());
+  }
+
+  /**
+   * Checks that a cache hit returns both parts of complex values.
+   */
+  @Test
+  public void testComplex32Hit() {
+    Complex32Dataset	dataset;
+    BandCache		cache;
+    float[]		expected;
+    float[]		actual;
+    int			b;
+
+    dataset = new Complex32Dataset(Header.create(SAMPLES, LINES, BANDS, DataType.COMPLEX32, Interleave.BAND_INTERLEAVED_BY_LINE, ByteOrder.BIG_ENDIAN), raw(4), true);
+    cache   = new BandCache(1024 * 1024);
+    for (b = 0; b < BANDS; b++) {
+      expected = dataset.getBandFlat(b);
+      dataset.setBandCache(cache);
+      dataset.getBandFlat(b);
+      actual = dataset.getBandFlat(b);
+      dataset.setBandCache(null);
+      assertEquals(2 * SAMPLES * LINES, expected.length);
+      assertArrayEquals("band " + b, expected, actual, 0);
+    }
+    assertEquals(BANDS, cache.getHits());
+  }
+
+  /**
+   * Checks that a cache hit returns both parts of complex values.
+   */
+  @Test
+  public void testComplex64Hit() {
+    Complex64Dataset	dataset;
+    BandCache		cache;
+    double[]		expected;
+    double[]		actual;
+    int			b;
+
+    dataset = new Complex64Dataset(Header.create(SAMPLES, LINES, BANDS, DataType.COMPLEX64, Interleave.BAND_INTERLEAVED_BY_PIXEL, ByteOrder.BIG_ENDIAN), raw(8), true);
+    cache   = new BandCache(1024 * 1024);
+    for (b = 0; b < BANDS; b++) {
+      expected = dataset.getBandFlat(b);
+      dataset.setBandCache(cache);
+      dataset.getBandFlat(b);
+      actual = dataset.getBandFlat(b);
+      dataset.setBandCache(null);
+      assertEquals(2 * SAMPLES * LINES, expected.length);
+      assertArrayEquals("band " + b, expected, actual, 0);
+    }
+    assertEquals(BANDS, cache.getHits());
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * BandStatisticsTest.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package envi4j.dataset;
+
+import envi4j.header.ByteOrder;
+import envi4j.header.DataType;
+import envi4j.header.Header;
+import envi4j.header.Interleave;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the streaming band statistics.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class BandStatisticsTest {
+
+  /**
+   * Creates a single-band FLOAT64 dataset from the values.
+   *
+   * @param values	the values
+   * @param lines	the number of lines
+   * @param samples	the number of samples
+   * @return		the dataset
+   */
+  protected Float64Dataset float64(double[] values, int lines, int samples) {
+    ByteBuffer	bb;
+
+    bb = ByteBuffer.allocate(values.length * 8);
+    for (double value: values)
+      bb.putDouble(value);
+
+    return new Float64Dataset(Header.create(samples, lines, 1, DataType.FLOAT64, Interleave.BAND_SEQUENTIAL, ByteOrder.BIG_ENDIAN), bb.array(), true);
+  }
+
+  /**
+   * Checks that the percentiles stay accurate for the bulk of the values
+   * in the presence of outliers.
+   */
+  @Test
+  public void testPercentilesWithOutliers() {
+    double[]		values;
+    double[]		sorted;
+    BandStatistics	stats;
+    Random		rnd;
+    double		sum;
+    int			i;
+
+    rnd    = new Random(42);
+    values = new double[200 * 300];
+    sum    = 0;
+    for (i = 0; i < values.length; i++) {
+      values[i] = (i % 1000 == 0) ? 1e12 : -5 + 10 * rnd.nextDouble();
+      sum      += values[i];
+    }
+    sorted = values.clone();
+    Arrays.sort(sorted);
+
+    stats = BandStatistics.compute(float64(values, 200, 300), 0, BandStatistics.DEFAULT_BINS);
+    assertEquals(values.length, stats.getCount());
+    assertEquals(sorted[0], stats.getMin(), 0);
+    assertEquals(1e12, stats.getMax(), 0);
+    assertEquals(sum / values.length, stats.getMean(), 1e-6 * Math.abs(sum / values.length));
+    for (double percent: new double[]{2, 25, 50, 75, 98}) {
+      double expected = sorted[(int) (percent / 100.0 * (values.length - 1))];
+      assertEquals("percentile " + percent, expected, stats.getPercentile(percent), 0.01 * Math.abs(expected) + 1e-3);
+    }
+    assertEquals(values.length, Arrays.stream(stats.getHistogram()).sum());
+  }
+
+  /**
+   * Checks that min and max of large integer values don't get rounded to float.
+   */
+  @Test
+  public void testPrecision() {
+    double[]		values;
+    BandStatistics	stats;
+    int			i;
+
+    values = new double[100];
+    for (i = 0; i < values.length; i++)
+      values[i] = (1L << 40) + i;
+
+    stats = BandStatistics.compute(float64(values, 10, 10), 0, BandStatistics.DEFAULT_BINS);
+    assertEquals((1L << 40), stats.getMin(), 0);
+    assertEquals((1L << 40) + 99, stats.getMax(), 0);
+    assertEquals((1L << 40) + 49.5, stats.getMean(), 1e-3);
+  }
+
+  /**
+   * Checks that infinite values and NaNs get counted separately and don't
+   * affect the moments or the percentiles.
+   */
+  @Test
+  public void testNonFinite() {
+    double[]		values;
+    double[]		finite;
+    BandStatistics	stats;
+    Random		rnd;
+    double		sum;
+    double		sumSq;
+    int			n;
+    int			infs;
+    int			nans;
+    int			i;
+
+    rnd    = new Random(7);
+    values = new double[150 * 200];
+    finite = new double[values.length];
+    n      = 0;
+    infs   = 0;
+    nans   = 0;
+    sum    = 0;
+    for (i = 0; i < values.length; i++) {
+      if (i % 100 == 0) {
+	values[i] = Double.POSITIVE_INFINITY;
+	infs++;
+      }
+      else if (i % 150 == 75) {
+	values[i] = Double.NEGATIVE_INFINITY;
+	infs++;
+      }
+      else if (i % 233 == 1) {
+	values[i] = Double.NaN;
+	nans++;
+      }
+      else {
+	values[i]   = 10 + 5 * rnd.nextGaussian();
+	finite[n++] = values[i];
+	sum        += values[i];
+      }
+    }
+    finite = Arrays.copyOf(finite, n);
+    Arrays.sort(finite);
+    sumSq = 0;
+    for (double value: finite)
+      sumSq += (value - sum / n) * (value - sum / n);
+
+    stats = BandStatistics.compute(float64(values, 150, 200), 0, BandStatistics.DEFAULT_BINS);
+    assertEquals(n, stats.getCount());
+    assertEquals(infs, stats.getInfCount());
+    assertEquals(nans, stats.getNaNCount());
+    assertEquals(finite[0], stats.getMin(), 0);
+    assertEquals(finite[n - 1], stats.getMax(), 0);
+    assertEquals(sum / n, stats.getMean(), 1e-9);
+    assertEquals(sumSq / n, stats.getVariance(), 1e-6);
+    for (double percent: new double[]{2, 25, 50, 75, 98}) {
+      double expected = finite[(int) (percent / 100.0 * (n - 1))];
+      assertEquals("percentile " + percent, expected, stats.getPercentile(percent), 0.01 * Math.abs(expected) + 1e-3);
+    }
+    assertEquals(n, Arrays.stream(stats.getHistogram()).sum());
+  }
+}
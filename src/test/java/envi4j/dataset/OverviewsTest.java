@@ -0,0 +1,145 @@
+/*
+ * OverviewsTest.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package envi4j.dataset;
+
+import envi4j.ENVI;
+import envi4j.ENVIWriter;
+import envi4j.core.FileUtils;
+import envi4j.header.ByteOrder;
+import envi4j.header.DataType;
+import envi4j.header.Header;
+import envi4j.header.Interleave;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests generating overviews and attaching them when loading.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class OverviewsTest {
+
+  /** the number of bands. */
+  public final static int BANDS = 2;
+
+  /** the number of lines. */
+  public final static int LINES = 9;
+
+  /** the number of samples. */
+  public final static int SAMPLES = 13;
+
+  /** for the files. */
+  @Rule
+  public TemporaryFolder m_Folder = new TemporaryFolder();
+
+  /**
+   * Writes a FLOAT32 dataset to disk.
+   *
+   * @param hdr		the .hdr file to write to
+   * @throws IOException	if writing fails
+   */
+  protected void write(File hdr) throws IOException {
+    ByteBuffer	bb;
+    int		i;
+
+    bb = ByteBuffer.allocate(BANDS * LINES * SAMPLES * 4);
+    for (i = 0; i < BANDS * LINES * SAMPLES; i++)
+      bb.putFloat(i);
+    ENVIWriter.write(new Float32Dataset(Header.create(SAMPLES, LINES, BANDS, DataType.FLOAT32, Interleave.BAND_SEQUENTIAL, ByteOrder.BIG_ENDIAN), bb.array(), true), hdr);
+  }
+
+  /**
+   * Checks that the overviews get attached when loading the dataset again.
+   *
+   * @throws Exception	if writing fails
+   */
+  @Test
+  public void testAttach() throws Exception {
+    File		hdr;
+    AbstractDataset	dataset;
+    float[]		expected;
+
+    hdr = new File(m_Folder.getRoot(), "data.hdr");
+    write(hdr);
+    dataset = ENVI.load(hdr, true);
+    assertNotNull(dataset);
+    ENVI.buildOverviews(dataset, hdr, new int[]{0, 1}, 2, Resampling.MEAN);
+    expected = dataset.getBandFlat(1, 2);
+    dataset.close();
+
+    dataset = ENVI.load(hdr, true);
+    assertNotNull(dataset);
+    assertTrue(dataset.hasLevel(1, 2));
+    assertArrayEquals(expected, dataset.getBandFlat(1, 2), 0.0f);
+    dataset.close();
+  }
+
+  /**
+   * Checks that overviews which don't match the data file get rejected.
+   *
+   * @throws Exception	if writing fails
+   */
+  @Test
+  public void testStale() throws Exception {
+    File		hdr;
+    File		dat;
+    File		other;
+    AbstractDataset	dataset;
+
+    hdr = new File(m_Folder.getRoot(), "data.hdr");
+    dat = FileUtils.replaceExtension(hdr, ".dat");
+    write(hdr);
+    dataset = ENVI.load(hdr, true);
+    assertNotNull(dataset);
+    ENVI.buildOverviews(dataset, hdr, new int[]{0}, 1, Resampling.NEAREST);
+    dataset.close();
+
+    // modified data file
+    assertTrue(dat.setLastModified(dat.lastModified() + 10000));
+    dataset = ENVI.load(hdr, true);
+    assertNotNull(dataset);
+    assertFalse(dataset.hasLevel(0, 1));
+    dataset.close();
+
+    // different data file
+    other = new File(m_Folder.getRoot(), "other.hdr");
+    write(other);
+    try {
+      Overviews.read(Overviews.sidecar(hdr), FileUtils.replaceExtension(other, ".dat")).close();
+      fail("Overviews for a different data file accepted");
+    }
+    catch (IOException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Checks that the number of values per level doesn't overflow.
+   */
+  @Test
+  public void testSize() {
+    assertEquals(4, Overviews.size(Integer.MAX_VALUE, Integer.MAX_VALUE, 30));
+    try {
+      Overviews.size(Integer.MAX_VALUE, Integer.MAX_VALUE, 1);
+      fail("Overflow not detected");
+    }
+    catch (IllegalStateException e) {
+      // expected
+    }
+  }
+}
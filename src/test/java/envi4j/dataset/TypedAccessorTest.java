@@ -0,0 +1,398 @@
+/*
+ * TypedAccessorTest.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package envi4j.dataset;
+
+import envi4j.ENVI;
+import envi4j.header.ByteOrder;
+import envi4j.header.DataType;
+import envi4j.header.Header;
+import envi4j.header.Interleave;
+import envi4j.storage.ChunkCodec;
+import envi4j.storage.StorageType;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Compares the typed accessors of all the dataset implementations against
+ * values decoded one at a time from the raw bytes, for all data types,
+ * byte orders, interleaves and storage types. Values get compared by their
+ * bits, i.e., integers as longs and floating point values via
+ * {@link Double#doubleToLongBits(double)}.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class TypedAccessorTest {
+
+  /** the number of samples. */
+  public final static int SAMPLES = 13;
+
+  /** the number of lines. */
+  public final static int LINES = 7;
+
+  /** the number of bands. */
+  public final static int BANDS = 5;
+
+  /** for the files. */
+  @Rule
+  public TemporaryFolder m_Folder = new TemporaryFolder();
+
+  /**
+   * Generates random raw bytes, covering the full range of values.
+   *
+   * @param type	the data type
+   * @return		the bytes
+   */
+  protected byte[] raw(DataType type) {
+    byte[]	result;
+    int		i;
+
+    result = new byte[SAMPLES * LINES * BANDS * type.getSize()];
+    new Random(42 + type.ordinal()).nextBytes(result);
+    // extremes: all bits set, only the highest bit set (in either byte order)
+    for (i = 0; i < type.getSize(); i++) {
+      result[i]                         = (byte) 0xFF;
+      result[type.getSize() + i]        = (byte) ((i == 0) ? 0x80 : 0x00);
+      result[2 * type.getSize() + i]    = (byte) ((i == type.getSize() - 1) ? 0x80 : 0x00);
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the number of array elements per value.
+   *
+   * @param type	the data type
+   * @return		the number of elements
+   */
+  protected int elements(DataType type) {
+    if ((type == DataType.COMPLEX32) || (type == DataType.COMPLEX64))
+      return 2;
+    else
+      return 1;
+  }
+
+  /**
+   * Returns the position of the value in the raw bytes.
+   *
+   * @param header	the header describing the bytes
+   * @param band	the band
+   * @param line	the line
+   * @param sample	the sample
+   * @return		the index of the value
+   */
+  protected int index(Header header, int band, int line, int sample) {
+    switch (header.getInterleave()) {
+      case BAND_SEQUENTIAL:
+	return (band * LINES + line) * SAMPLES + sample;
+      case BAND_INTERLEAVED_BY_LINE:
+	return (line * BANDS + band) * SAMPLES + sample;
+      case BAND_INTERLEAVED_BY_PIXEL:
+	return (line * SAMPLES + sample) * BANDS + band;
+      default:
+	throw new IllegalStateException("Unhandled interleave: " + header.getInterleave());
+    }
+  }
+
+  /**
+   * Assembles the bits of an array element from the raw bytes.
+   *
+   * @param raw		the raw bytes
+   * @param header	the header describing the bytes
+   * @param pos		the position of the first byte
+   * @param size	the number of bytes
+   * @return		the bits
+   */
+  protected long bits(byte[] raw, Header header, int pos, int size) {
+    long	result;
+    int		i;
+
+    result = 0;
+    for (i = 0; i < size; i++) {
+      if (header.getByteOrder() == ByteOrder.BIG_ENDIAN)
+	result = (result << 8) | (raw[pos + i] & 0xFF);
+      else
+	result = (result << 8) | (raw[pos + size - 1 - i] & 0xFF);
+    }
+
+    return result;
+  }
+
+  /**
+   * Decodes an array element from the raw bytes.
+   *
+   * @param raw		the raw bytes
+   * @param header	the header describing the bytes
+   * @param band	the band
+   * @param line	the line
+   * @param sample	the sample
+   * @param part	the element of the value (0 = real, 1 = imaginary)
+   * @return		the element, as long or as bits of the double
+   */
+  protected long expected(byte[] raw, Header header, int band, int line, int sample, int part) {
+    DataType	type;
+    int		size;
+    long	bits;
+
+    type = header.getDataType();
+    size = type.getSize() / elements(type);
+    bits = bits(raw, header, index(header, band, line, sample) * type.getSize() + part * size, size);
+    switch (type) {
+      case UINT8:
+      case UINT16:
+      case UINT32:
+      case UINT64:
+      case INT64:
+	return bits;
+      case INT16:
+	return (short) bits;
+      case INT32:
+	return (int) bits;
+      case FLOAT32:
+      case COMPLEX32:
+	return Double.doubleToLongBits(Float.intBitsToFloat((int) bits));
+      case FLOAT64:
+      case COMPLEX64:
+	return Double.doubleToLongBits(Double.longBitsToDouble(bits));
+      default:
+	throw new IllegalStateException("Unhandled data type: " + type);
+    }
+  }
+
+  /**
+   * Decodes the value as used by statistics and rendering.
+   *
+   * @param raw		the raw bytes
+   * @param header	the header describing the bytes
+   * @param band	the band
+   * @param line	the line
+   * @param sample	the sample
+   * @return		the value
+   */
+  protected double expectedValue(byte[] raw, Header header, int band, int line, int sample) {
+    long	value;
+
+    value = expected(raw, header, band, line, sample, 0);
+    switch (header.getDataType()) {
+      case UINT64:
+	return UInt64Dataset.toDouble(value);
+      case FLOAT32:
+      case FLOAT64:
+	return Double.longBitsToDouble(value);
+      case COMPLEX32:
+	return Math.hypot((float) Double.longBitsToDouble(value), (float) Double.longBitsToDouble(expected(raw, header, band, line, sample, 1)));
+      case COMPLEX64:
+	return Math.hypot(Double.longBitsToDouble(value), Double.longBitsToDouble(expected(raw, header, band, line, sample, 1)));
+      default:
+	return value;
+    }
+  }
+
+  /**
+   * Turns the array returned by a typed accessor into bits.
+   *
+   * @param array	the primitive array
+   * @param length	the number of elements to convert
+   * @return		the bits
+   */
+  protected long[] toBits(Object array, int length) {
+    long[]	result;
+    Object	value;
+    int		i;
+
+    result = new long[length];
+    for (i = 0; i < length; i++) {
+      value = Array.get(array, i);
+      if ((value instanceof Float) || (value instanceof Double))
+	result[i] = Double.doubleToLongBits(((Number) value).doubleValue());
+      else
+	result[i] = ((Number) value).longValue();
+    }
+
+    return result;
+  }
+
+  /**
+   * Calls the typed accessor of the dataset.
+   *
+   * @param dataset	the dataset
+   * @param name	the name of the accessor
+   * @param args	the arguments
+   * @return		the return value
+   * @throws Exception	if the call fails
+   */
+  protected Object call(AbstractDataset dataset, String name, Object... args) throws Exception {
+    for (Method method: dataset.getClass().getMethods()) {
+      if (method.getName().equals(name) && (method.getParameterCount() == args.length) && !method.isBridge()) {
+	try {
+	  return method.invoke(dataset, args);
+	}
+	catch (InvocationTargetException e) {
+	  throw (Exception) e.getCause();
+	}
+      }
+    }
+    throw new IllegalArgumentException("Unknown accessor: " + name);
+  }
+
+  /**
+   * Allocates a buffer for the typed accessors, with spare elements.
+   *
+   * @param dataset	the dataset
+   * @param length	the required number of elements
+   * @return		the buffer
+   * @throws Exception	if the type cannot be determined
+   */
+  protected Object buffer(AbstractDataset dataset, int length) throws Exception {
+    return Array.newInstance(dataset.getClass().getMethod("getBandFlat", int.class).getReturnType().getComponentType(), length + 3);
+  }
+
+  /**
+   * Compares all the typed accessors against the reference values.
+   *
+   * @param msg		the message prefix
+   * @param dataset	the dataset to check
+   * @param raw		the raw bytes
+   * @throws Exception	if an accessor fails
+   */
+  protected void check(String msg, AbstractDataset dataset, byte[] raw) throws Exception {
+    Header	header;
+    int		elements;
+    long[]	expected;
+    Object	actual;
+    float[]	line;
+    int		b;
+    int		l;
+    int		s;
+    int		p;
+    int		i;
+
+    header   = dataset.getHeader();
+    elements = elements(header.getDataType());
+
+    // bands
+    for (b = 0; b < BANDS; b++) {
+      expected = new long[LINES * SAMPLES * elements];
+      i        = 0;
+      for (l = 0; l < LINES; l++) {
+	for (s = 0; s < SAMPLES; s++) {
+	  for (p = 0; p < elements; p++)
+	    expected[i++] = expected(raw, header, b, l, s, p);
+	}
+      }
+      actual = buffer(dataset, expected.length);
+      call(dataset, "getBandInto", b, actual);
+      assertArrayEquals(msg + ", band " + b, expected, toBits(actual, expected.length));
+      line = new float[SAMPLES];
+      for (l = 0; l < LINES; l++) {
+	dataset.decodeLine(b, l, line, 0);
+	for (s = 0; s < SAMPLES; s++)
+	  assertEquals(msg + ", line " + l + " of band " + b, (float) expectedValue(raw, header, b, l, s), line[s], 0);
+      }
+    }
+
+    // regions
+    for (b = 0; b < BANDS; b++) {
+      for (int[] region: new int[][]{{0, 0, LINES, SAMPLES}, {1, 3, 4, 9}, {6, 12, 1, 1}, {2, 0, 3, 1}}) {
+	expected = new long[region[2] * region[3] * elements];
+	i        = 0;
+	for (l = 0; l < region[2]; l++) {
+	  for (s = 0; s < region[3]; s++) {
+	    for (p = 0; p < elements; p++)
+	      expected[i++] = expected(raw, header, b, region[0] + l, region[1] + s, p);
+	  }
+	}
+	actual = buffer(dataset, expected.length);
+	call(dataset, "getRegionInto", b, region[0], region[1], region[2], region[3], actual);
+	assertArrayEquals(msg + ", region of band " + b, expected, toBits(actual, expected.length));
+      }
+    }
+
+    // spectra
+    for (l = 0; l < LINES; l++) {
+      for (s = 0; s < SAMPLES; s++) {
+	expected = new long[BANDS * elements];
+	i        = 0;
+	for (b = 0; b < BANDS; b++) {
+	  for (p = 0; p < elements; p++)
+	    expected[i++] = expected(raw, header, b, l, s, p);
+	}
+	actual = buffer(dataset, expected.length);
+	call(dataset, "getSpectrumInto", l, s, actual);
+	assertArrayEquals(msg + ", spectrum " + l + "/" + s, expected, toBits(actual, expected.length));
+      }
+    }
+    for (int[] range: new int[][]{{0, LINES}, {2, 5}, {6, 7}}) {
+      expected = new long[(range[1] - range[0]) * SAMPLES * BANDS * elements];
+      i        = 0;
+      for (l = range[0]; l < range[1]; l++) {
+	for (s = 0; s < SAMPLES; s++) {
+	  for (b = 0; b < BANDS; b++) {
+	    for (p = 0; p < elements; p++)
+	      expected[i++] = expected(raw, header, b, l, s, p);
+	  }
+	}
+      }
+      actual = call(dataset, "getSpectra", range[0], range[1]);
+      assertEquals(msg + ", spectra " + range[0] + "-" + range[1], expected.length, Array.getLength(actual));
+      assertArrayEquals(msg + ", spectra " + range[0] + "-" + range[1], expected, toBits(actual, expected.length));
+    }
+  }
+
+  /**
+   * Checks datasets read from files, using all the storage types.
+   *
+   * @throws Exception	if writing fails or an accessor fails
+   */
+  @Test
+  public void testStorage() throws Exception {
+    byte[]		raw;
+    Header		header;
+    String		prefix;
+    File		hdr;
+    File		chunked;
+    AbstractDataset	dataset;
+
+    for (DataType type: DataType.values()) {
+      raw = raw(type);
+      for (ByteOrder order: ByteOrder.values()) {
+	for (Interleave interleave: Interleave.values()) {
+	  header  = Header.create(SAMPLES, LINES, BANDS, type, interleave, order);
+	  prefix  = type + "-" + order + "-" + interleave.getType();
+	  hdr     = new File(m_Folder.getRoot(), prefix + ".hdr");
+	  chunked = new File(m_Folder.getRoot(), prefix + "-chunked.hdr");
+	  Files.writeString(hdr.toPath(), header.toENVI());
+	  Files.write(new File(m_Folder.getRoot(), prefix + ".dat").toPath(), raw);
+	  for (StorageType storage: StorageType.values()) {
+	    if (storage == StorageType.CHUNKED) {
+	      dataset = ENVI.load(hdr, true, StorageType.ARRAY);
+	      ENVI.saveChunked(dataset, chunked, 2, 3, 4, ChunkCodec.DEFLATE);
+	      dataset.close();
+	      dataset = ENVI.load(chunked, true, storage);
+	    }
+	    else {
+	      dataset = ENVI.load(hdr, true, storage);
+	    }
+	    assertNotNull(prefix + "/" + storage, dataset);
+	    check(prefix + "/" + storage, dataset, raw);
+	    dataset.close();
+	  }
+	}
+      }
+    }
+  }
+}
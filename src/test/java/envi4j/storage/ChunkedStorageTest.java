@@ -0,0 +1,231 @@
+/*
+ * ChunkedStorageTest.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package envi4j.storage;
+
+import envi4j.ENVI;
+import envi4j.ENVIWriter;
+import envi4j.dataset.AbstractDataset;
+import envi4j.header.ByteOrder;
+import envi4j.header.DataType;
+import envi4j.header.Header;
+import envi4j.header.HeaderField;
+import envi4j.header.Interleave;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests reading and writing chunk files.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class ChunkedStorageTest {
+
+  /** for the files. */
+  @Rule
+  public TemporaryFolder m_Folder = new TemporaryFolder();
+
+  /**
+   * Writes a small INT16 dataset and loads it again.
+   *
+   * @param interleave	the interleave to use
+   * @return		the dataset
+   * @throws Exception	if writing fails
+   */
+  protected AbstractDataset source(Interleave interleave) throws Exception {
+    File	hdr;
+    double[]	values;
+    int		b;
+    int		i;
+
+    hdr = new File(m_Folder.getRoot(), "src-" + interleave.getType() + ".hdr");
+    try (ENVIWriter writer = new ENVIWriter(hdr, Header.create(37, 23, 6, DataType.INT16, interleave, ByteOrder.LITTLE_ENDIAN))) {
+      values = new double[23 * 37];
+      for (b = 0; b < 6; b++) {
+	for (i = 0; i < values.length; i++)
+	  values[i] = b * 1000 + i;
+	writer.writeBand(b, values);
+      }
+    }
+
+    return ENVI.load(hdr, false);
+  }
+
+  /**
+   * Checks the round trip for various tile sizes and codecs, reading in parallel.
+   *
+   * @throws Exception	if writing fails
+   */
+  @Test
+  public void testRoundTrip() throws Exception {
+    AbstractDataset	source;
+    AbstractDataset	chunked;
+    File		hdr;
+    byte[]		expected;
+
+    hdr = new File(m_Folder.getRoot(), "chunked.hdr");
+    for (Interleave interleave: Interleave.values()) {
+      source   = source(interleave);
+      expected = source.toSequential();
+      for (int[] tile: new int[][]{{1, 1, 1}, {2, 5, 7}, {6, 23, 37}, {4, 8, 8}}) {
+	for (ChunkCodec codec: ChunkCodec.values()) {
+	  ENVI.saveChunked(source, hdr, tile[0], tile[1], tile[2], codec);
+	  chunked = ENVI.load(hdr, false, StorageType.CHUNKED);
+	  assertNotNull(chunked);
+	  ((ChunkedStorage) chunked.getStorage()).setCacheSize(1);
+	  final AbstractDataset fChunked = chunked;
+	  final byte[] fExpected = expected;
+	  IntStream.range(0, 8).parallel().forEach(i -> assertArrayEquals(interleave + ", " + codec, fExpected, fChunked.toSequential()));
+	  chunked.close();
+	}
+      }
+      source.close();
+    }
+  }
+
+  /**
+   * Checks that a chunk file that doesn't match the header gets rejected.
+   *
+   * @throws Exception	if writing fails
+   */
+  @Test
+  public void testHeaderMismatch() throws Exception {
+    AbstractDataset		source;
+    File			hdr;
+    Map<HeaderField,String>	values;
+
+    source = source(Interleave.BAND_SEQUENTIAL);
+    hdr    = new File(m_Folder.getRoot(), "mismatch.hdr");
+    ENVI.saveChunked(source, hdr, 2, 4, 4, ChunkCodec.DEFLATE);
+
+    values = new HashMap<>();
+    values.put(HeaderField.BANDS, "5");
+    Files.writeString(hdr.toPath(), Header.read(hdr).derive(values).toENVI());
+    assertNull(ENVI.load(hdr, true, StorageType.CHUNKED));
+
+    values.clear();
+    values.put(HeaderField.INTERLEAVE, Interleave.BAND_INTERLEAVED_BY_PIXEL.getType());
+    values.put(HeaderField.BANDS, "6");
+    Files.writeString(hdr.toPath(), Header.read(hdr).derive(values).toENVI());
+    assertNull(ENVI.load(hdr, true, StorageType.CHUNKED));
+    source.close();
+  }
+
+  /**
+   * Checks that the files of the dataset itself don't get overwritten.
+   *
+   * @throws Exception	if writing fails
+   */
+  @Test
+  public void testOverwriteSource() throws Exception {
+    AbstractDataset	source;
+    AbstractDataset	chunked;
+    File		hdr;
+
+    source = source(Interleave.BAND_SEQUENTIAL);
+    try {
+      ENVI.saveChunked(source, source.getHeader().getFile(), 2, 4, 4, ChunkCodec.DEFLATE);
+      fail("Overwrote the header of the dataset");
+    }
+    catch (IllegalArgumentException e) {
+      // expected
+    }
+    assertNotNull(ENVI.load(source.getHeader().getFile(), false));
+
+    hdr = new File(m_Folder.getRoot(), "self.hdr");
+    ENVI.saveChunked(source, hdr, 2, 4, 4, ChunkCodec.DEFLATE);
+    chunked = ENVI.load(hdr, false, StorageType.CHUNKED);
+    try {
+      ENVI.saveChunked(chunked, new File(m_Folder.getRoot(), "other/../self.hdr"), 2, 4, 4, ChunkCodec.NONE);
+      fail("Overwrote the chunk file of the dataset");
+    }
+    catch (IllegalArgumentException e) {
+      // expected
+    }
+    chunked.close();
+    source.close();
+  }
+
+  /**
+   * Changes the length of the first tile in the index of the chunk file.
+   *
+   * @param chk		the chunk file
+   * @param delta	the change in length
+   * @throws Exception	if updating fails
+   */
+  protected void changeLength(File chk, int delta) throws Exception {
+    long	pos;
+    int		length;
+
+    pos = ChunkedStorage.headerSize(0) + 8;
+    try (RandomAccessFile raf = new RandomAccessFile(chk, "rw")) {
+      raf.seek(pos);
+      length = raf.readInt();
+      raf.seek(pos);
+      raf.writeInt(length + delta);
+    }
+  }
+
+  /**
+   * Checks that tiles whose length doesn't match get reported as I/O errors.
+   *
+   * @throws Exception	if writing fails
+   */
+  @Test
+  public void testCorruptTiles() throws Exception {
+    AbstractDataset	source;
+    ChunkedStorage	storage;
+    File		hdr;
+    File		chk;
+
+    source = source(Interleave.BAND_INTERLEAVED_BY_LINE);
+    hdr    = new File(m_Folder.getRoot(), "corrupt.hdr");
+    chk    = new File(m_Folder.getRoot(), "corrupt" + ChunkedStorage.EXTENSION);
+
+    // uncompressed tile too short
+    ENVI.saveChunked(source, hdr, 2, 4, 4, ChunkCodec.NONE);
+    changeLength(chk, -3);
+    try {
+      new ChunkedStorage(chk).close();
+      fail("Accepted uncompressed tile of wrong length");
+    }
+    catch (IOException e) {
+      // expected
+    }
+    assertNull(ENVI.load(hdr, true, StorageType.CHUNKED));
+
+    // compressed tile truncated
+    ENVI.saveChunked(source, hdr, 2, 4, 4, ChunkCodec.DEFLATE);
+    changeLength(chk, -3);
+    storage = new ChunkedStorage(chk);
+    try {
+      storage.read(0, new byte[1], 0, 1);
+      fail("Accepted truncated compressed tile");
+    }
+    catch (IllegalStateException e) {
+      assertTrue(e.getCause() instanceof IOException);
+    }
+    // other tiles are still fine
+    assertEquals(source.getStorage().get(source.getLayout().offset(5, 22, 36)), storage.get(source.getLayout().offset(5, 22, 36)));
+    storage.close();
+    source.close();
+  }
+}